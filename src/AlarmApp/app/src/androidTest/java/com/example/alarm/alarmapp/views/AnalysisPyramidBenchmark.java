@@ -0,0 +1,109 @@
+package com.example.alarm.alarmapp.views;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.alarm.alarmapp.detection.AnalysisPyramid;
+import com.example.alarm.detector.MotionDetector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.OpenCVLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark, which compares the per frame latency and the alarm decisions of all analysis levels
+ * against the full resolution analysis on the same synthetic 720p sequence.
+ * The latency is measured through the view, the decisions come from a detector that gets the analysed frames
+ * with simulated timestamps, because the view stamps frames with the real time.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AnalysisPyramidBenchmark {
+    private static final String TAG = "AnalysisPyramidBench";
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAME_COUNT = 400;
+    //the statistics need some frames to settle, decisions before that are not compared
+    private static final int WARM_UP_FRAMES = 100;
+    private static final int[][] EVENTS = {{200, 260}, {320, 340}};
+    private static final long FRAME_INTERVAL = 250;
+
+    private AlarmCameraView mCameraView;
+    private RecordedSequence mSequence;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mCameraView = new AlarmCameraView(InstrumentationRegistry.getTargetContext(), CameraBridgeViewBase.CAMERA_ID_ANY);
+            }
+        });
+        mCameraView.setAnalysisFps(1000000d);
+        mCameraView.setTimeToCalibrate(0);
+        mSequence = new RecordedSequence(WIDTH, HEIGHT, EVENTS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCameraView.onCameraViewStopped();
+        mSequence.release();
+    }
+
+    @Test
+    public void compareAnalysisLevels() throws Exception {
+        boolean[][] decisions = new boolean[AnalysisPyramid.MAX_LEVEL + 1][];
+        for (int level = 0; level <= AnalysisPyramid.MAX_LEVEL; level++) {
+            long[] nanos = new long[1];
+            decisions[level] = run(level, nanos);
+            Log.i(TAG, String.format("level %d (1/%d): %.3f ms/frame", level, 1 << level, nanos[0] / 1000000d / FRAME_COUNT));
+        }
+
+        for (int level = 0; level <= AnalysisPyramid.MAX_LEVEL; level++) {
+            int agreeing = 0;
+            for (int i = WARM_UP_FRAMES; i < FRAME_COUNT; i++) {
+                if (decisions[level][i] == decisions[0][i]) agreeing++;
+            }
+            double agreement = (double) agreeing / (FRAME_COUNT - WARM_UP_FRAMES);
+            Log.i(TAG, String.format("level %d (1/%d): %.1f%% agreement with full resolution", level, 1 << level, agreement * 100));
+            for (int[] event : EVENTS) {
+                assertTrue("level " + level + " missed the event at frame " + event[0], anyAlarm(decisions[level], event[0], event[1]));
+            }
+        }
+    }
+
+    private boolean[] run(int level, long[] nanos) {
+        boolean[] decisions = new boolean[FRAME_COUNT];
+        MotionDetector detector = new MotionDetector();
+        detector.setTimeToCalibrate(0);
+        detector.start(0);
+        FrameBufferPool pool = mCameraView.getBufferPool();
+        mCameraView.stopAlarm();
+        mCameraView.setAnalysisLevel(level);
+        mCameraView.onCameraViewStarted(WIDTH, HEIGHT);
+        mCameraView.startAlarm();
+        mSequence.rewind();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mSequence.next(i);
+            long startedAt = System.nanoTime();
+            mCameraView.onCameraFrame(mSequence);
+            nanos[0] += System.nanoTime() - startedAt;
+            decisions[i] = detector.process(pool.getAnalysisLuma(), pool.getAnalysisWidth(), pool.getAnalysisHeight(), i * FRAME_INTERVAL);
+        }
+        mCameraView.onCameraViewStopped();
+        return decisions;
+    }
+
+    private static boolean anyAlarm(boolean[] decisions, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (decisions[i]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.alarm.alarmapp.views;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.alarm.alarmapp.detection.AnalysisPyramid;
+import com.example.alarm.alarmapp.detection.BlobExtractor;
+import com.example.alarm.detector.MotionBlobs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark, which extracts the blobs of a noisy 720p motion map with five moving objects and checks
+ * the extraction fits into the 250 ms a frame may take at the designed analysis rate of 4 fps.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BlobExtractorBenchmark {
+    private static final String TAG = "BlobExtractorBench";
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int RUNS = 100;
+    private static final double BUDGET_MS = 250;
+    private static final int OBJECTS = 5;
+
+    private Mat mMotion;
+    private BlobExtractor mExtractor;
+    private MotionBlobs mBlobs;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        //sensor noise below the threshold and a few specks above it, which the morphology removes
+        mMotion = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        Core.randn(mMotion, 8, 4);
+        for (int i = 0; i < 200; i++) {
+            Imgproc.circle(mMotion, new Point((i * 97) % WIDTH, (i * 61) % HEIGHT), 0, new Scalar(200), -1);
+        }
+        for (int i = 0; i < OBJECTS; i++) {
+            Point topLeft = new Point(60 + i * 240, 100 + i * 100);
+            Imgproc.rectangle(mMotion, topLeft, new Point(topLeft.x + 80, topLeft.y + 160), new Scalar(120), -1);
+        }
+        mExtractor = new BlobExtractor();
+        mBlobs = new MotionBlobs(32);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExtractor.release();
+        mMotion.release();
+    }
+
+    @Test
+    public void extract_fullResolution() throws Exception {
+        double[] millis = measure(mMotion);
+        Log.i(TAG, String.format("720p: %.3f ms average, %.3f ms max", millis[0], millis[1]));
+        assertEquals(OBJECTS, mBlobs.getCount());
+        for (int i = 0; i < mBlobs.getCount(); i++) {
+            assertEquals(81 * 161, mBlobs.getWidth(i) * mBlobs.getHeight(i));
+        }
+        assertTrue("over budget: " + millis[1] + " ms", millis[1] < BUDGET_MS);
+    }
+
+    @Test
+    public void extract_analysisLevel() throws Exception {
+        AnalysisPyramid pyramid = new AnalysisPyramid();
+        pyramid.ensureSize(WIDTH, HEIGHT, 2);
+        Mat motion = pyramid.build(mMotion, 2);
+        double[] millis = measure(motion);
+        Log.i(TAG, String.format("level 2: %.3f ms average, %.3f ms max", millis[0], millis[1]));
+        assertEquals(OBJECTS, mBlobs.getCount());
+        pyramid.release();
+    }
+
+    /**
+     * @return the average and the maximum time per extraction in milliseconds
+     */
+    private double[] measure(Mat motion) {
+        double total = 0;
+        double max = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long startedAt = System.nanoTime();
+            mExtractor.extract(motion, mBlobs);
+            double millis = (System.nanoTime() - startedAt) / 1e6;
+            total += millis;
+            max = Math.max(max, millis);
+        }
+        return new double[] {total / RUNS, max};
+    }
+}
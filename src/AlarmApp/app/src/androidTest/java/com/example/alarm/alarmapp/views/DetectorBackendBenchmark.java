@@ -0,0 +1,72 @@
+package com.example.alarm.alarmapp.views;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.alarm.alarmapp.detection.IDetectorBackend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.LatencyHistogram;
+import org.opencv.android.OpenCVLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark, which runs every detector backend on the same synthetic 720p sequence and logs the
+ * processing time per frame each backend reports, to choose a backend per device class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectorBackendBenchmark {
+    private static final String TAG = "DetectorBackendBench";
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAME_COUNT = 300;
+
+    private AlarmCameraView mCameraView;
+    private RecordedSequence mSequence;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mCameraView = new AlarmCameraView(InstrumentationRegistry.getTargetContext(), CameraBridgeViewBase.CAMERA_ID_ANY);
+            }
+        });
+        mCameraView.setAnalysisFps(1000000d);
+        mCameraView.setTimeToCalibrate(0);
+        mSequence = new RecordedSequence(WIDTH, HEIGHT, new int[][] {{150, 200}});
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCameraView.onCameraViewStopped();
+        mSequence.release();
+    }
+
+    @Test
+    public void compareBackends() throws Exception {
+        for (IDetectorBackend.Type type : IDetectorBackend.Type.values()) {
+            mCameraView.stopAlarm();
+            mCameraView.setBackendType(type);
+            LatencyHistogram cost = mCameraView.getBackend().getCost();
+            cost.reset();
+            mCameraView.onCameraViewStarted(WIDTH, HEIGHT);
+            mCameraView.startAlarm();
+            mSequence.rewind();
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                mSequence.next(i);
+                mCameraView.onCameraFrame(mSequence);
+            }
+            Log.i(TAG, type + ": " + cost);
+            assertEquals(type + " did not report every frame", FRAME_COUNT, cost.getCount());
+        }
+        mCameraView.stopAlarm();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.alarm.alarmapp.views;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.alarm.alarmapp.detection.BlobExtractor;
+import com.example.alarm.alarmapp.detection.FlowConfirmation;
+import com.example.alarm.detector.MotionBlobs;
+import com.example.alarm.detector.MotionDetector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark, which compares the plain absolute difference detector with the detector confirmed by the
+ * sparse optical flow, on synthetic scenes at the analysis resolution of a 720p preview: an object moving through the
+ * scene, a shaking camera and a flickering light. The plain detector alarms on all three, the flow only confirms the
+ * object. The processing time per frame of both is logged, the flow has to fit into the 250 ms of a frame at 4 fps.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FlowConfirmationBenchmark {
+    private static final String TAG = "FlowConfirmationBench";
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 180;
+    private static final int QUIET_FRAMES = 40;
+    private static final int EVENT_FRAMES = 8;
+    private static final long FRAME_INTERVAL = 250;
+    private static final double BUDGET_MS = 250;
+
+    private enum Scene {
+        OBJECT, SHAKE, FLICKER
+    }
+
+    private Mat mScene;
+    private Mat mObject;
+    private Mat mFrame;
+    private Mat mNoise;
+    private Mat mMotion;
+    private byte[] mLuma;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        //a textured scene larger than the frame, so a shaking camera sees different parts of it
+        mScene = new Mat(HEIGHT + 16, WIDTH + 16, CvType.CV_8UC1);
+        Core.randu(mScene, 0, 256);
+        Imgproc.GaussianBlur(mScene, mScene, new Size(5, 5), 0);
+        mObject = new Mat(40, 24, CvType.CV_8UC1);
+        Core.randu(mObject, 0, 256);
+        Imgproc.GaussianBlur(mObject, mObject, new Size(3, 3), 0);
+        mFrame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        mNoise = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        mMotion = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        mLuma = new byte[WIDTH * HEIGHT];
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mScene.release();
+        mObject.release();
+        mFrame.release();
+        mNoise.release();
+        mMotion.release();
+    }
+
+    /**
+     * Renders the frame of the scene, the event starts after the quiet frames.
+     */
+    private void render(Scene scene, int f) {
+        final int event = f - QUIET_FRAMES;
+        int offsetX = 8, offsetY = 8;
+        if (scene == Scene.SHAKE && event >= 0) {
+            offsetX += event % 2 == 0 ? 4 : -4;
+            offsetY += event % 3 == 0 ? 3 : -2;
+        }
+        Mat view = mScene.submat(new Rect(offsetX, offsetY, WIDTH, HEIGHT));
+        view.copyTo(mFrame);
+        view.release();
+        if (scene == Scene.OBJECT && event >= 0) {
+            Mat object = mFrame.submat(new Rect(60 + 6 * event, 70, mObject.cols(), mObject.rows()));
+            mObject.copyTo(object);
+            object.release();
+        }
+        if (scene == Scene.FLICKER && event >= 0 && event % 2 == 0) {
+            Mat light = mFrame.submat(new Rect(140, 40, 60, 60));
+            Core.add(light, new Scalar(70), light);
+            light.release();
+        }
+        //sensor noise
+        Core.randn(mNoise, 0, 2);
+        Core.add(mFrame, mNoise, mFrame);
+    }
+
+    /**
+     * @return the alarms of the plain detector, the alarms confirmed by the flow and the average and the maximum time
+     *         per frame of both in milliseconds
+     */
+    private double[] run(Scene scene) {
+        MotionDetector detector = new MotionDetector();
+        detector.setTimeToCalibrate(QUIET_FRAMES * FRAME_INTERVAL / 2);
+        detector.start(0);
+        BlobExtractor extractor = new BlobExtractor();
+        MotionBlobs blobs = new MotionBlobs(32);
+        FlowConfirmation flow = new FlowConfirmation();
+        int alarms = 0, confirmed = 0;
+        double detectorTotal = 0, detectorMax = 0, flowTotal = 0, flowMax = 0;
+        for (int f = 0; f < QUIET_FRAMES + EVENT_FRAMES; f++) {
+            render(scene, f);
+            long startedAt = System.nanoTime();
+            mFrame.get(0, 0, mLuma);
+            boolean alarm = detector.process(mLuma, WIDTH, HEIGHT, f * FRAME_INTERVAL);
+            double detectorMillis = (System.nanoTime() - startedAt) / 1e6;
+
+            startedAt = System.nanoTime();
+            mMotion.put(0, 0, detector.getDiff());
+            extractor.extract(mMotion, blobs);
+            boolean flowAlarm = flow.process(mFrame, blobs, alarm);
+            double flowMillis = (System.nanoTime() - startedAt) / 1e6;
+            if (f < QUIET_FRAMES) continue;
+            if (alarm) alarms++;
+            if (flowAlarm) confirmed++;
+            assertTrue(flow.getTrackedCount() <= flow.getFeatureBudget());
+            detectorTotal += detectorMillis;
+            detectorMax = Math.max(detectorMax, detectorMillis);
+            flowTotal += detectorMillis + flowMillis;
+            flowMax = Math.max(flowMax, detectorMillis + flowMillis);
+        }
+        extractor.release();
+        flow.release();
+        double[] result = {alarms, confirmed, detectorTotal / EVENT_FRAMES, detectorMax, flowTotal / EVENT_FRAMES, flowMax};
+        Log.i(TAG, String.format(Locale.US, "%s: abs diff %d alarms in %.3f ms avg %.3f ms max, with flow %d alarms in %.3f ms avg %.3f ms max",
+                scene, alarms, result[2], result[3], confirmed, result[4], result[5]));
+        return result;
+    }
+
+    @Test
+    public void compare_movingObject() throws Exception {
+        double[] result = run(Scene.OBJECT);
+        assertTrue("missed by the detector", result[0] > 0);
+        assertTrue("not confirmed by the flow", result[1] > 0);
+        assertTrue("over budget: " + result[5] + " ms", result[5] < BUDGET_MS);
+    }
+
+    @Test
+    public void compare_cameraShake() throws Exception {
+        double[] result = run(Scene.SHAKE);
+        assertTrue("the detector ignores the shake", result[0] > 0);
+        assertEquals(0, result[1], 0);
+        assertTrue("over budget: " + result[5] + " ms", result[5] < BUDGET_MS);
+    }
+
+    @Test
+    public void compare_flickeringLight() throws Exception {
+        double[] result = run(Scene.FLICKER);
+        assertTrue("the detector ignores the flicker", result[0] > 0);
+        assertEquals(0, result[1], 0);
+    }
+}
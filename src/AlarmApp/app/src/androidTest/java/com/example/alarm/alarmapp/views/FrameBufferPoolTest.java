@@ -0,0 +1,189 @@
+package com.example.alarm.alarmapp.views;
+
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.alarm.detector.MotionDetector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test, which makes sure the frame processing of the AlarmCameraView doesn't reallocate the buffers of its
+ * pool in steady state and, measured by the runtime, allocates no java objects for frames without an alarm.
+ * Native memory OpenCV allocates internally is not measured.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameBufferPoolTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FRAME_COUNT = 10000;
+
+    private AlarmCameraView mCameraView;
+    private SyntheticFrame mFrame;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        //views have to be created on a looper thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mCameraView = new AlarmCameraView(InstrumentationRegistry.getTargetContext(), CameraBridgeViewBase.CAMERA_ID_ANY);
+            }
+        });
+        //analyse every frame
+        mCameraView.setAnalysisFps(1000000d);
+        mFrame = new SyntheticFrame(WIDTH, HEIGHT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCameraView.onCameraViewStopped();
+        mFrame.release();
+    }
+
+    @Test
+    public void steadyStateProcessing_constructsNoPoolMats() throws Exception {
+        mCameraView.onCameraViewStarted(WIDTH, HEIGHT);
+        mCameraView.startAlarm();
+        FrameBufferPool pool = mCameraView.getBufferPool();
+        int allocationsAfterStart = pool.getAllocationCount();
+
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mFrame.next();
+            mCameraView.onCameraFrame(mFrame);
+        }
+
+        assertEquals(allocationsAfterStart, pool.getAllocationCount());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void steadyStateProcessing_allocatesNoJavaObjects() throws Exception {
+        //no blob extraction, the contours OpenCV finds are new objects
+        mCameraView.setTimeToCalibrate(100);
+        mCameraView.setWarmStartEnabled(false);
+        mCameraView.onCameraViewStarted(WIDTH, HEIGHT);
+        mCameraView.startAlarm();
+        //the calibration ends in real time, saving the profile afterwards allocates
+        while (mCameraView.getCurrState() != MotionDetector.State.RUNNING) {
+            mFrame.next();
+            mCameraView.onCameraFrame(mFrame);
+        }
+        for (int i = 0; i < 100; i++) {
+            mFrame.next();
+            mCameraView.onCameraFrame(mFrame);
+        }
+
+        //counts the allocations of this thread, the frames of an alarm post it and are excluded
+        Debug.startAllocCounting();
+        int allocations = 0;
+        try {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                mFrame.next();
+                Debug.resetThreadAllocCount();
+                mCameraView.onCameraFrame(mFrame);
+                final int frameAllocations = Debug.getThreadAllocCount();
+                if (!mCameraView.getDetector().isAlarm()) allocations += frameAllocations;
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        assertEquals(0, allocations);
+    }
+
+    @Test
+    public void resolutionChange_reallocatesOnce() throws Exception {
+        mCameraView.onCameraViewStarted(WIDTH / 2, HEIGHT / 2);
+        mCameraView.startAlarm();
+        FrameBufferPool pool = mCameraView.getBufferPool();
+
+        mFrame.next();
+        mCameraView.onCameraFrame(mFrame);
+        int allocationsAfterResize = pool.getAllocationCount();
+        assertEquals(WIDTH, pool.getWidth());
+        assertEquals(HEIGHT, pool.getHeight());
+
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mFrame.next();
+            mCameraView.onCameraFrame(mFrame);
+        }
+
+        assertEquals(allocationsAfterResize, pool.getAllocationCount());
+    }
+
+    @Test
+    public void levelChange_keepsFrameBuffers() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool();
+        try {
+            pool.ensureSize(WIDTH, HEIGHT, 2);
+            Mat redDiff = pool.getRedDiff();
+            Mat overlay = pool.getOverlay();
+            int allocations = pool.getAllocationCount();
+
+            //level 1 is already built for level 2, only the diff is new
+            assertTrue(pool.ensureSize(WIDTH, HEIGHT, 1));
+            assertEquals(allocations + 1, pool.getAllocationCount());
+            assertEquals(WIDTH / 2, pool.getAnalysisWidth());
+            assertEquals(HEIGHT / 2, pool.getAnalysisHeight());
+            //the full resolution level shares the overlay diff
+            pool.ensureSize(WIDTH, HEIGHT, 0);
+            assertEquals(allocations + 1, pool.getAllocationCount());
+            assertEquals(WIDTH, pool.getDiff().cols());
+            //level 3 adds its pyramid level and diff
+            pool.ensureSize(WIDTH, HEIGHT, 3);
+            assertEquals(allocations + 3, pool.getAllocationCount());
+
+            assertSame(redDiff, pool.getRedDiff());
+            assertSame(overlay, pool.getOverlay());
+            pool.toAnalysisFrame(mFrame.gray());
+            pool.updateRedDiff();
+        } finally {
+            pool.release();
+        }
+    }
+
+    /**
+     * A frame with random noise that reuses its buffers like the real camera frames do.
+     */
+    private static class SyntheticFrame implements CameraBridgeViewBase.CvCameraViewFrame {
+        private final Mat mGray;
+        private final Mat mRgba;
+
+        SyntheticFrame(int width, int height) {
+            mGray = new Mat(height, width, CvType.CV_8UC1);
+            mRgba = new Mat(height, width, CvType.CV_8UC4);
+        }
+
+        void next() {
+            Core.randu(mGray, 0, 255);
+        }
+
+        void release() {
+            mGray.release();
+            mRgba.release();
+        }
+
+        @Override
+        public Mat rgba() {
+            return mRgba;
+        }
+
+        @Override
+        public Mat gray() {
+            return mGray;
+        }
+    }
+}
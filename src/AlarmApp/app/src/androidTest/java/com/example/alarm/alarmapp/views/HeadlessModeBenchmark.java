@@ -0,0 +1,98 @@
+package com.example.alarm.alarmapp.views;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.Mat;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark, which measures the cpu time per preview frame of the render modes and extrapolates the
+ * savings of the headless and thumbnail mode to an hour at 30 fps. The frames go through the view and, if the view
+ * returns one, through the bitmap conversion of the CameraBridgeViewBase. Drawing the bitmap on the canvas is not
+ * included, so the real savings are higher. The battery drain can only be compared on a device, MainActivity logs it
+ * for each render mode when switching modes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HeadlessModeBenchmark {
+    private static final String TAG = "HeadlessModeBench";
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAME_COUNT = 300;
+    private static final int PREVIEW_FPS = 30;
+
+    private AlarmCameraView mCameraView;
+    private RecordedSequence mSequence;
+    private Bitmap mBitmap;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mCameraView = new AlarmCameraView(InstrumentationRegistry.getTargetContext(), CameraBridgeViewBase.CAMERA_ID_ANY);
+            }
+        });
+        mCameraView.setTimeToCalibrate(0);
+        mSequence = new RecordedSequence(WIDTH, HEIGHT, new int[][] {{100, 200}});
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCameraView.onCameraViewStopped();
+        mSequence.release();
+        mBitmap.recycle();
+    }
+
+    @Test
+    public void compareRenderModes() throws Exception {
+        double previewNanos = measure(AlarmCameraView.RenderMode.PREVIEW);
+        double headlessNanos = measure(AlarmCameraView.RenderMode.HEADLESS);
+        //a thumbnail is one preview frame per second, the other frames cost as much as in headless mode
+        double thumbnailNanos = headlessNanos + (previewNanos - headlessNanos) / PREVIEW_FPS;
+
+        Log.i(TAG, String.format("preview: %.3f ms/frame, headless: %.3f ms/frame", previewNanos / 1e6, headlessNanos / 1e6));
+        Log.i(TAG, String.format("savings per hour at %d fps: headless %.0f cpu s, thumbnail %.0f cpu s", PREVIEW_FPS,
+                cpuSecondsPerHour(previewNanos - headlessNanos), cpuSecondsPerHour(previewNanos - thumbnailNanos)));
+        assertTrue("headless mode is not cheaper", headlessNanos < previewNanos);
+    }
+
+    private static double cpuSecondsPerHour(double nanosPerFrame) {
+        return nanosPerFrame * PREVIEW_FPS * 3600 / 1e9;
+    }
+
+    /**
+     * @return the average cpu time per frame in nanoseconds
+     */
+    private double measure(AlarmCameraView.RenderMode renderMode) {
+        mCameraView.stopAlarm();
+        mCameraView.setRenderMode(renderMode);
+        mCameraView.setAnalysisFps(PREVIEW_FPS);
+        mCameraView.onCameraViewStarted(WIDTH, HEIGHT);
+        mCameraView.startAlarm();
+        mSequence.rewind();
+        long cpuNanos = 0;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mSequence.next(i);
+            long startedAt = Debug.threadCpuTimeNanos();
+            Mat modified = mCameraView.onCameraFrame(mSequence);
+            if (modified != null) Utils.matToBitmap(modified, mBitmap);
+            cpuNanos += Debug.threadCpuTimeNanos() - startedAt;
+        }
+        mCameraView.onCameraViewStopped();
+        return (double) cpuNanos / FRAME_COUNT;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.alarm.alarmapp.views;
+
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * A deterministic sequence of a textured static scene with sensor noise and a bright object moving through it
+ * during the given events.
+ */
+class RecordedSequence implements CameraBridgeViewBase.CvCameraViewFrame {
+    private final int[][] mEvents;
+    private final Mat mBackground;
+    private final Mat mNoise;
+    private final Mat mGray;
+    private final Mat mRgba;
+    private final Scalar mObjectColor = new Scalar(230);
+
+    /**
+     * @param events pairs of the first and the last frame index + 1 the object moves through the scene
+     */
+    RecordedSequence(int width, int height, int[][] events) {
+        mEvents = events;
+        mBackground = new Mat(height, width, CvType.CV_8UC1);
+        mNoise = new Mat(height, width, CvType.CV_8UC1);
+        mGray = new Mat(height, width, CvType.CV_8UC1);
+        mRgba = new Mat(height, width, CvType.CV_8UC4);
+        Core.setRNGSeed(42);
+        Core.randu(mBackground, 0, 200);
+        Imgproc.GaussianBlur(mBackground, mBackground, new Size(9, 9), 0);
+    }
+
+    void rewind() {
+        Core.setRNGSeed(4242);
+    }
+
+    void next(int index) {
+        Core.randn(mNoise, 8, 3);
+        Core.add(mBackground, mNoise, mGray);
+        for (int[] event : mEvents) {
+            if (index >= event[0] && index < event[1]) {
+                int x = (index - event[0]) * (mGray.cols() - 160) / (event[1] - event[0]);
+                Imgproc.rectangle(mGray, new Point(x, 280), new Point(x + 160, 480), mObjectColor, -1);
+            }
+        }
+    }
+
+    void release() {
+        mBackground.release();
+        mNoise.release();
+        mGray.release();
+        mRgba.release();
+    }
+
+    @Override
+    public Mat rgba() {
+        return mRgba;
+    }
+
+    @Override
+    public Mat gray() {
+        return mGray;
+    }
+}
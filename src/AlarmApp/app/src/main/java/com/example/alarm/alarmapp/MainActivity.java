@@ -16,16 +16,25 @@ import android.view.SurfaceView;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
+import android.widget.CompoundButton;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.ToggleButton;
 
+import com.example.alarm.alarmapp.detection.IDetectorBackend;
 import com.example.alarm.alarmapp.views.AlarmCameraView;
+import com.example.alarm.alarmapp.views.TelemetryLogger;
+import com.example.alarm.detector.BlobAlarmRule;
+import com.example.alarm.detector.BlobTracker;
+import com.example.alarm.detector.replay.FrameRecording;
 
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * This is the MainActivity. It handles all the ui related stuff like buttons and controls the AlarmCameraView.
  */
@@ -33,11 +42,21 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
     private static final String TAG = "MainActivity";
 
     private static final int TIMEOUT_START = 10000;
+    //with a saved calibration profile the detector only verifies it, so the user only needs a moment to step back
+    private static final int TIMEOUT_WARM_START = 2000;
+    private static final int RESOURCES_UPDATE_INTERVAL = 10000;
+    private static final int TELEMETRY_DRAIN_INTERVAL = 500;
+    //the share of one core the analysis may take
+    private static final double ANALYSIS_DUTY_CYCLE = 0.25d;
+    //an alarm needs a coherent region of motion of at least 0.1% of the frame
+    private static final BlobAlarmRule BLOB_RULE = new BlobAlarmRule(0.001d, 1, 0.001d);
+    private static final int MAX_TRACKS = 16;
 
     private AlarmCameraView mCameraView;
     private ToggleButton mTbtnStartStop;
-    private Switch mSwSound;
-    private TextView mTvAlarmTriggered, mTvState;
+    private Switch mSwSound, mSwRecord;
+    private Button mBtnRenderMode, mBtnDetector;
+    private TextView mTvAlarmTriggered, mTvState, mTvResources;
     private boolean mHasPermission = false;
 
     private Runnable mRunnableStartTimer = new Runnable() {
@@ -47,6 +66,25 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
         }
     };
 
+    private Runnable mRunnableUpdateResources = new Runnable() {
+        @Override
+        public void run() {
+            ResourceMeter.Measurement measurement = mResourceMeter.measure();
+            mTvResources.setText(String.format(getString(R.string.resources_val), measurement.getCpuSecondsPerHour(), measurement.getBatteryPercentPerHour()));
+            mUiHandler.postDelayed(this, RESOURCES_UPDATE_INTERVAL);
+        }
+    };
+
+    private Runnable mRunnableDrainTelemetry = new Runnable() {
+        @Override
+        public void run() {
+            mCameraView.getTelemetry().drain(mTelemetryLogger);
+            mUiHandler.postDelayed(this, TELEMETRY_DRAIN_INTERVAL);
+        }
+    };
+
+    private TelemetryLogger mTelemetryLogger;
+    private ResourceMeter mResourceMeter;
     private MediaPlayer mAlarmPlayer;
     private Handler mUiHandler;
 
@@ -105,13 +143,35 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
         mCameraView = (AlarmCameraView) findViewById(R.id.cameraView);
         mTvAlarmTriggered = (TextView) findViewById(R.id.tvAlarmTriggered);
         mTvState = (TextView) findViewById(R.id.tvState);
+        mTvResources = (TextView) findViewById(R.id.tvResources);
+        mBtnRenderMode = (Button) findViewById(R.id.btnRenderMode);
+        mBtnDetector = (Button) findViewById(R.id.btnDetector);
         mSwSound = (Switch) findViewById(R.id.swAlarmSound);
+        mSwRecord = (Switch) findViewById(R.id.swRecord);
         mTbtnStartStop = (ToggleButton) findViewById(R.id.tbtnStartStop);
 
         mTbtnStartStop.setOnClickListener(this);
+        mBtnRenderMode.setOnClickListener(this);
+        mBtnDetector.setOnClickListener(this);
+        mSwRecord.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                if (isChecked) startRecording();
+                else mCameraView.stopRecording();
+            }
+        });
 
         mCameraView.setVisibility(SurfaceView.VISIBLE);
         mCameraView.setAlarmListener(this);
+        mCameraView.setGovernorTarget(ANALYSIS_DUTY_CYCLE);
+        mCameraView.setBlobRule(BLOB_RULE);
+        //and something that moves through the scene for a few frames
+        mCameraView.setTracker(new BlobTracker(MAX_TRACKS));
+
+        mTelemetryLogger = new TelemetryLogger(this);
+        mResourceMeter = new ResourceMeter(this);
+        setRenderMode(AlarmCameraView.RenderMode.PREVIEW);
+        mBtnDetector.setText(String.format(getString(R.string.detector_val), mCameraView.getBackend().getType().toString()));
     }
 
     @Override
@@ -136,7 +196,7 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
                 switch (cmd) {
                     case BUTTON_START_STOP:
                         mState = State.WAITING_TO_START;
-                        mUiHandler.postDelayed(mRunnableStartTimer, TIMEOUT_START);
+                        mUiHandler.postDelayed(mRunnableStartTimer, mCameraView.canWarmStart() ? TIMEOUT_WARM_START : TIMEOUT_START);
                         break;
                     default:
                         Log.e(TAG, "invalid command in " + mState + ": " + cmd);
@@ -183,6 +243,10 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
                         mState = State.IDLE;
                         mCameraView.stopAlarm();
                         break;
+                    case CALIBRATING:
+                        //the detector calibrates again after the analysis resolution changed
+                        mState = State.CALIBRATING;
+                        break;
                     case ALARM:
                         if(mSwSound.isChecked()) playAlarmSound();
                         mTvAlarmTriggered.setText("ALAAAAAARM!");
@@ -205,6 +269,8 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
         mTvState.setText(String.format(getString(R.string.state_val), mState.toString()));
         //set start stop button to correct rendering for the current state
         mTbtnStartStop.setChecked(mState == State.RUNNING || mState == State.CALIBRATING || mState == State.WAITING_TO_START);
+        //the detector can only be switched while the alarm is stopped
+        mBtnDetector.setEnabled(mState == State.IDLE);
     }
 
     //region lifecycle
@@ -232,7 +298,11 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
     protected void onPause() {
         super.onPause();
         if (mHasPermission) {
+            mUiHandler.removeCallbacks(mRunnableUpdateResources);
+            mUiHandler.removeCallbacks(mRunnableDrainTelemetry);
             if (mCameraView != null) {
+                //disabling the view stops the recording
+                mSwRecord.setChecked(false);
                 mCameraView.disableView();
                 onCommand(Command.ON_PAUSE);
             }
@@ -241,6 +311,37 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
 
     //endregion
 
+    /**
+     * Records the preview frames to the app specific external directory, they can be pulled with adb and replayed.
+     */
+    private void startRecording() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) dir = getFilesDir();
+        File file = new File(dir, "recording_" + System.currentTimeMillis() + FrameRecording.FILE_EXTENSION);
+        try {
+            mCameraView.startRecording(file);
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Could not start recording", e);
+            mSwRecord.setChecked(false);
+        }
+    }
+
+    /**
+     * Switches how much of the camera frames is drawn. Without a preview the screen is dimmed as far as possible,
+     * nobody looks at a phone mounted as a sentry. The resource usage of the previous mode is logged for comparison.
+     */
+    private void setRenderMode(AlarmCameraView.RenderMode renderMode) {
+        if (mResourceMeter.isStarted()) Log.i(TAG, "Resources in render mode " + mCameraView.getRenderMode() + ": " + mResourceMeter.measure());
+        mCameraView.setRenderMode(renderMode);
+        mResourceMeter.start();
+        mBtnRenderMode.setText(String.format(getString(R.string.render_mode_val), renderMode.toString()));
+
+        WindowManager.LayoutParams layoutParams = getWindow().getAttributes();
+        layoutParams.screenBrightness = renderMode == AlarmCameraView.RenderMode.PREVIEW
+                ? WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE : 0.01f;
+        getWindow().setAttributes(layoutParams);
+    }
+
     private void playAlarmSound() {
         if(!mAlarmPlayer.isPlaying()){
             mAlarmPlayer.seekTo(0);
@@ -256,6 +357,10 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
                 {
                     Log.i(TAG, "OpenCV loaded successfully");
                     mCameraView.enableView();
+                    mUiHandler.removeCallbacks(mRunnableUpdateResources);
+                    mUiHandler.postDelayed(mRunnableUpdateResources, RESOURCES_UPDATE_INTERVAL);
+                    mUiHandler.removeCallbacks(mRunnableDrainTelemetry);
+                    mUiHandler.postDelayed(mRunnableDrainTelemetry, TELEMETRY_DRAIN_INTERVAL);
 
                 } break;
                 default:
@@ -277,6 +382,16 @@ public class MainActivity extends AppCompatActivity implements Handler.Callback,
             case R.id.tbtnStartStop:
                 onCommand(Command.BUTTON_START_STOP);
                 break;
+            case R.id.btnRenderMode:
+                AlarmCameraView.RenderMode[] renderModes = AlarmCameraView.RenderMode.values();
+                setRenderMode(renderModes[(mCameraView.getRenderMode().ordinal() + 1) % renderModes.length]);
+                break;
+            case R.id.btnDetector:
+                IDetectorBackend.Type[] types = IDetectorBackend.Type.values();
+                IDetectorBackend.Type type = types[(mCameraView.getBackend().getType().ordinal() + 1) % types.length];
+                mCameraView.setBackendType(type);
+                mBtnDetector.setText(String.format(getString(R.string.detector_val), type.toString()));
+                break;
         }
     }
 }
@@ -0,0 +1,130 @@
+package com.example.alarm.alarmapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Measures the cpu time of the app and the battery drain since it was started, so the modes can be compared per hour.
+ * The battery is only meaningful while the phone is not charging.
+ */
+public class ResourceMeter {
+    private final Context mContext;
+    private long mStartedAt = -1;
+    private long mStartCpuTime;
+    private double mStartBatteryPercent;
+    private long mStartCharge;
+
+    /**
+     * A measurement over the time since the meter was started.
+     */
+    public static class Measurement {
+        private final long mElapsed;
+        private final long mCpuTime;
+        private final double mBatteryPercent;
+        private final long mCharge;
+        private final boolean mCharging;
+
+        Measurement(long elapsed, long cpuTime, double batteryPercent, long charge, boolean charging) {
+            mElapsed = elapsed;
+            mCpuTime = cpuTime;
+            mBatteryPercent = batteryPercent;
+            mCharge = charge;
+            mCharging = charging;
+        }
+
+        /**
+         * @return the measured time in milliseconds
+         */
+        public long getElapsed() {
+            return mElapsed;
+        }
+
+        /**
+         * @return the cpu time the app used per hour in seconds, can exceed 3600 on multiple cores
+         */
+        public double getCpuSecondsPerHour() {
+            return mElapsed == 0 ? 0 : mCpuTime / 1000d * 3600000d / mElapsed;
+        }
+
+        /**
+         * @return the drained battery in percent per hour
+         */
+        public double getBatteryPercentPerHour() {
+            return mElapsed == 0 ? 0 : mBatteryPercent * 3600000d / mElapsed;
+        }
+
+        /**
+         * @return the drained charge in mAh per hour, -1 if the device doesn't report the charge counter
+         */
+        public double getChargeMilliAmpHoursPerHour() {
+            return mCharge < 0 || mElapsed == 0 ? -1 : mCharge / 1000d * 3600000d / mElapsed;
+        }
+
+        public boolean isCharging() {
+            return mCharging;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f s: cpu %.0f s/h, battery %.2f %%/h, %.1f mAh/h%s", mElapsed / 1000d,
+                    getCpuSecondsPerHour(), getBatteryPercentPerHour(), getChargeMilliAmpHoursPerHour(), mCharging ? " (charging)" : "");
+        }
+    }
+
+    public ResourceMeter(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public void start() {
+        mStartedAt = SystemClock.elapsedRealtime();
+        mStartCpuTime = Process.getElapsedCpuTime();
+        mStartBatteryPercent = getBatteryPercent(getBatteryStatus());
+        mStartCharge = getCharge();
+    }
+
+    public boolean isStarted() {
+        return mStartedAt != -1;
+    }
+
+    /**
+     * @return the usage since {@link #start()}, which has to be called first
+     */
+    public Measurement measure() {
+        if (!isStarted()) throw new IllegalStateException("the meter has not been started");
+        Intent batteryStatus = getBatteryStatus();
+        long charge = getCharge();
+        return new Measurement(SystemClock.elapsedRealtime() - mStartedAt,
+                Process.getElapsedCpuTime() - mStartCpuTime,
+                mStartBatteryPercent - getBatteryPercent(batteryStatus),
+                charge < 0 || mStartCharge < 0 ? -1 : mStartCharge - charge,
+                batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0);
+    }
+
+    private Intent getBatteryStatus() {
+        //the battery broadcast is sticky, so it can be read without registering a receiver
+        return mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+    }
+
+    private static double getBatteryPercent(Intent batteryStatus) {
+        if (batteryStatus == null) return 0;
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level < 0 || scale <= 0 ? 0 : level * 100d / scale;
+    }
+
+    /**
+     * @return the remaining charge in uAh, -1 if it is not available
+     */
+    private long getCharge() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return -1;
+        BatteryManager batteryManager = (BatteryManager) mContext.getSystemService(Context.BATTERY_SERVICE);
+        if (batteryManager == null) return -1;
+        int charge = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+        return charge <= 0 || charge == Integer.MIN_VALUE ? -1 : charge;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.alarm.alarmapp.detection;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * A gaussian pyramid of a single channel frame with preallocated levels.
+ * Level 0 is the frame itself, every further level halves the resolution, so level 3 has 1/8 of the width and height.
+ */
+public class AnalysisPyramid {
+    public static final int MAX_LEVEL = 3;
+
+    private final Mat[] mLevels = new Mat[MAX_LEVEL + 1];
+    private int mLevelCount = 0;
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private int mAllocationCount = 0;
+
+    /**
+     * Makes sure the levels up to the given one exist for frames of the given size.
+     * For frames of the same size only the missing levels are allocated.
+     * @return true if levels had to be allocated
+     */
+    public boolean ensureSize(int width, int height, int maxLevel) {
+        if (maxLevel < 0 || maxLevel > MAX_LEVEL) throw new IllegalArgumentException("level has to be in [0, " + MAX_LEVEL + "]: " + maxLevel);
+        if (width == mWidth && height == mHeight) {
+            if (maxLevel < mLevelCount) return false;
+        } else {
+            release();
+            mWidth = width;
+            mHeight = height;
+        }
+        //level 0 is the frame itself
+        for (int level = Math.max(1, mLevelCount); level <= maxLevel; level++) {
+            mLevels[level] = new Mat(getLevelHeight(level), getLevelWidth(level), CvType.CV_8UC1);
+            mAllocationCount++;
+        }
+        mLevelCount = maxLevel + 1;
+        return true;
+    }
+
+    /**
+     * Builds the pyramid for the given frame up to the given level.
+     * Level 0 only references the frame, so it is only valid as long as the frame is.
+     * @return the mat of the requested level
+     */
+    public Mat build(Mat frame, int level) {
+        if (level >= mLevelCount) throw new IllegalArgumentException("level " + level + " is not allocated");
+        mLevels[0] = frame;
+        for (int i = 1; i <= level; i++) {
+            Imgproc.pyrDown(mLevels[i - 1], mLevels[i]);
+        }
+        return mLevels[level];
+    }
+
+    public Mat getLevel(int level) {
+        return mLevels[level];
+    }
+
+    public int getLevelWidth(int level) {
+        return getLevelSize(mWidth, level);
+    }
+
+    public int getLevelHeight(int level) {
+        return getLevelSize(mHeight, level);
+    }
+
+    /**
+     * @return the width or height of the given level of a frame with the given width or height
+     */
+    public static int getLevelSize(int size, int level) {
+        for (int i = 0; i < level; i++) size = (size + 1) / 2;
+        return size;
+    }
+
+    public int getAllocationCount() {
+        return mAllocationCount;
+    }
+
+    public void release() {
+        //level 0 is owned by the caller
+        mLevels[0] = null;
+        for (int level = 1; level < mLevels.length; level++) {
+            if (mLevels[level] != null) mLevels[level].release();
+            mLevels[level] = null;
+        }
+        mLevelCount = 0;
+        mWidth = -1;
+        mHeight = -1;
+    }
+}
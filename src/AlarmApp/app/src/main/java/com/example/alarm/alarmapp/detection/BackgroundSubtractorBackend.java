@@ -0,0 +1,175 @@
+package com.example.alarm.alarmapp.detection;
+
+import com.example.alarm.detector.MotionDetector;
+
+import org.opencv.android.LatencyHistogram;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.BackgroundSubtractor;
+import org.opencv.video.Video;
+
+/**
+ * Detects movement as the foreground of an OpenCV background model. Unlike the differencing, the model remembers
+ * the background, so a slow walker stays foreground, and a flicker of the whole frame is learned as part of it.
+ * The alarm triggers if the foreground covers more than a fraction of the frame.
+ * The model is learned during the calibration and keeps adapting afterwards.
+ */
+public class BackgroundSubtractorBackend implements IDetectorBackend {
+    //the model spans this many analysed frames, two minutes at the designed analysis rate of 4 fps
+    private static final int HISTORY = 500;
+    private static final double MOG2_VAR_THRESHOLD = 16d;
+    private static final double KNN_DIST2_THRESHOLD = 400d;
+
+    private final Type mType;
+    private final LatencyHistogram mCost = new LatencyHistogram();
+    private long mTimeToCalibrate = 10000;
+    private double mAlarmFraction = 0.01d;
+    //frames with foreground above this fraction of the alarm fraction count as suspicious
+    private double mSuspicionThreshold = 0.5d;
+    private boolean mMotionOutputEnabled = true;
+
+    private volatile MotionDetector.State mState = MotionDetector.State.IDLE;
+    private volatile long mCalibratingStartedAt = 0;
+    private volatile boolean mResetRequested = false;
+    private MotionDetector.IMotionDetectorListener mListener = null;
+
+    private BackgroundSubtractor mSubtractor = null;
+    private Mat mForeground = null;
+    private Mat mKernel = null;
+    private boolean mHasMotion = false;
+    private boolean mSuspicious = false;
+    private double mLastFraction = 0;
+
+    /**
+     * @param type {@link Type#MOG2} or {@link Type#KNN}
+     */
+    public BackgroundSubtractorBackend(Type type) {
+        if (type != Type.MOG2 && type != Type.KNN) throw new IllegalArgumentException("not a background model: " + type);
+        mType = type;
+    }
+
+    @Override
+    public Type getType() {
+        return mType;
+    }
+
+    @Override
+    public void setListener(MotionDetector.IMotionDetectorListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void setTimeToCalibrate(long timeToCalibrate) {
+        mTimeToCalibrate = timeToCalibrate;
+    }
+
+    @Override
+    public void setMotionOutputEnabled(boolean motionOutputEnabled) {
+        mMotionOutputEnabled = motionOutputEnabled;
+    }
+
+    /**
+     * @param alarmFraction the fraction of the frame the foreground has to cover to trigger the alarm
+     */
+    public void setAlarmFraction(double alarmFraction) {
+        mAlarmFraction = alarmFraction;
+    }
+
+    @Override
+    public void start(long timestamp) {
+        mResetRequested = true;
+        mCalibratingStartedAt = timestamp;
+        mState = MotionDetector.State.CALIBRATING;
+        if (mListener != null) mListener.onCalibrating();
+    }
+
+    @Override
+    public void stop() {
+        mResetRequested = true;
+        mCalibratingStartedAt = 0;
+        mState = MotionDetector.State.IDLE;
+    }
+
+    @Override
+    public MotionDetector.State getState() {
+        return mState;
+    }
+
+    @Override
+    public boolean process(IAnalysisFrame frame, long timestamp) {
+        mHasMotion = false;
+        mSuspicious = false;
+        if (mResetRequested) {
+            mResetRequested = false;
+            //a new model, the old one is freed by its finalizer
+            mSubtractor = null;
+        }
+        if (mState == MotionDetector.State.IDLE) return false;
+        final long startedAt = System.nanoTime();
+
+        if (mState == MotionDetector.State.CALIBRATING && timestamp - mCalibratingStartedAt >= mTimeToCalibrate) {
+            mState = MotionDetector.State.RUNNING;
+            if (mListener != null) mListener.onRun();
+        }
+
+        if (mSubtractor == null) mSubtractor = createSubtractor();
+        if (mForeground == null) {
+            //allocated by the model, it also adapts the model to new frame sizes
+            mForeground = new Mat();
+            mKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
+        }
+        //the learning rate is chosen by the model from its history
+        mSubtractor.apply(frame.gray(), mForeground, -1);
+        //isolated foreground pixels are noise
+        Imgproc.morphologyEx(mForeground, mForeground, Imgproc.MORPH_OPEN, mKernel);
+        mLastFraction = (double) Core.countNonZero(mForeground) / (frame.width() * frame.height());
+        mHasMotion = mMotionOutputEnabled;
+
+        mSuspicious = mLastFraction > mAlarmFraction * mSuspicionThreshold;
+        final boolean alarm = mLastFraction > mAlarmFraction && mState == MotionDetector.State.RUNNING;
+        mCost.recordNanos(System.nanoTime() - startedAt);
+        if (alarm && mListener != null) mListener.onAlarm();
+        return alarm;
+    }
+
+    private BackgroundSubtractor createSubtractor() {
+        if (mType == Type.MOG2) return Video.createBackgroundSubtractorMOG2(HISTORY, MOG2_VAR_THRESHOLD, false);
+        return Video.createBackgroundSubtractorKNN(HISTORY, KNN_DIST2_THRESHOLD, false);
+    }
+
+    @Override
+    public boolean isSuspicious() {
+        return mSuspicious;
+    }
+
+    @Override
+    public boolean getMotion(Mat dst) {
+        if (!mHasMotion) return false;
+        mForeground.copyTo(dst);
+        return true;
+    }
+
+    /**
+     * @return the fraction of the last frame that was foreground
+     */
+    public double getLastFraction() {
+        return mLastFraction;
+    }
+
+    @Override
+    public LatencyHistogram getCost() {
+        return mCost;
+    }
+
+    @Override
+    public void release() {
+        mSubtractor = null;
+        if (mForeground != null) mForeground.release();
+        if (mKernel != null) mKernel.release();
+        mForeground = null;
+        mKernel = null;
+        mHasMotion = false;
+    }
+}
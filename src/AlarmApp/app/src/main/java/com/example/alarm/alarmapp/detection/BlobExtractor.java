@@ -0,0 +1,114 @@
+package com.example.alarm.alarmapp.detection;
+
+import com.example.alarm.detector.MotionBlobs;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the blobs of a motion map: the map is thresholded, specks are removed and gaps closed by morphology,
+ * and the outer contours of the remaining regions become the blobs.
+ * The mats are reused between frames, only the contours found by OpenCV are new objects, they are released right away.
+ * Area and centroid are those of the contour polygon, computed from its points without further allocations.
+ */
+public class BlobExtractor {
+    private int mThreshold = 30;
+    private double mMinArea = 4;
+
+    private Mat mBinary = null;
+    private Mat mKernel = null;
+    private Mat mHierarchy = null;
+    private final List<MatOfPoint> mContours = new ArrayList<>();
+    private int[] mPoints = new int[256];
+
+    /**
+     * @param threshold the motion value a pixel has to exceed to be part of a blob
+     */
+    public void setThreshold(int threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * @param minArea the area in pixels of the motion map a contour needs to become a blob
+     */
+    public void setMinArea(double minArea) {
+        mMinArea = minArea;
+    }
+
+    /**
+     * Replaces the blobs with the ones of the given motion map.
+     * @param motion a single channel motion map, 0 for no motion up to 255
+     */
+    public void extract(Mat motion, MotionBlobs blobs) {
+        if (mBinary == null) {
+            mBinary = new Mat();
+            mHierarchy = new Mat();
+            mKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
+        }
+        Imgproc.threshold(motion, mBinary, mThreshold, 255, Imgproc.THRESH_BINARY);
+        Imgproc.morphologyEx(mBinary, mBinary, Imgproc.MORPH_OPEN, mKernel);
+        Imgproc.morphologyEx(mBinary, mBinary, Imgproc.MORPH_CLOSE, mKernel);
+        Imgproc.findContours(mBinary, mContours, mHierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+        blobs.clear(motion.cols(), motion.rows());
+        for (int c = 0; c < mContours.size(); c++) {
+            MatOfPoint contour = mContours.get(c);
+            addBlob(contour, blobs);
+            contour.release();
+        }
+        mContours.clear();
+    }
+
+    private void addBlob(MatOfPoint contour, MotionBlobs blobs) {
+        final int points = contour.rows();
+        if (mPoints.length < 2 * points) mPoints = new int[4 * points];
+        contour.get(0, 0, mPoints);
+        int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE, right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+        //shoelace formula for the area and the centroid of the polygon
+        double doubleArea = 0, cx = 0, cy = 0;
+        for (int i = 0, j = points - 1; i < points; j = i++) {
+            final int xi = mPoints[2 * i], yi = mPoints[2 * i + 1];
+            final int xj = mPoints[2 * j], yj = mPoints[2 * j + 1];
+            left = Math.min(left, xi);
+            top = Math.min(top, yi);
+            right = Math.max(right, xi);
+            bottom = Math.max(bottom, yi);
+            final double cross = (double) xj * yi - (double) xi * yj;
+            doubleArea += cross;
+            cx += (xj + xi) * cross;
+            cy += (yj + yi) * cross;
+        }
+        final int width = right - left + 1;
+        final int height = bottom - top + 1;
+        //the polygon runs through the pixel centers, thin blobs have no area, their box is used instead
+        final double area = doubleArea == 0 ? width * height : Math.abs(doubleArea) / 2;
+        if (area < mMinArea) return;
+        if (doubleArea != 0) {
+            cx /= 3 * doubleArea;
+            cy /= 3 * doubleArea;
+        } else {
+            cx = left + (width - 1) / 2d;
+            cy = top + (height - 1) / 2d;
+        }
+        blobs.add(left, top, width, height, area, cx, cy);
+    }
+
+    /**
+     * Releases the native buffers, the extractor can be used again afterwards.
+     */
+    public void release() {
+        if (mBinary != null) {
+            mBinary.release();
+            mHierarchy.release();
+            mKernel.release();
+        }
+        mBinary = null;
+        mHierarchy = null;
+        mKernel = null;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.alarm.alarmapp.detection;
+
+import com.example.alarm.detector.CascadeDetector;
+import com.example.alarm.detector.MotionDetector;
+
+import org.opencv.android.LatencyHistogram;
+import org.opencv.core.Mat;
+
+/**
+ * Runs the {@link CascadeDetector}: the trigger stage on the analysis level, the confirmation stage on a finer level
+ * of the same pyramid, which is only copied out of the frame when the confirmation runs.
+ */
+public class CascadeBackend implements IDetectorBackend {
+    private final CascadeDetector mCascade = new CascadeDetector();
+    private final LatencyHistogram mCost = new LatencyHistogram();
+    //the full resolution
+    private int mConfirmLevel = 0;
+
+    public CascadeBackend() {
+        //the overlay shows the trigger stage, it has the resolution of the analysis level
+        mCascade.getConfirmation().setDiffOutputEnabled(false);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.CASCADE;
+    }
+
+    @Override
+    public void setListener(MotionDetector.IMotionDetectorListener listener) {
+        mCascade.setListener(listener);
+    }
+
+    @Override
+    public void setTimeToCalibrate(long timeToCalibrate) {
+        mCascade.setTimeToCalibrate(timeToCalibrate);
+    }
+
+    @Override
+    public void setMotionOutputEnabled(boolean motionOutputEnabled) {
+        mCascade.getTrigger().setDiffOutputEnabled(motionOutputEnabled);
+    }
+
+    /**
+     * @param confirmLevel the pyramid level the confirmation stage analyses, at most the analysis level
+     */
+    public void setConfirmLevel(int confirmLevel) {
+        if (confirmLevel < 0 || confirmLevel > AnalysisPyramid.MAX_LEVEL) throw new IllegalArgumentException("invalid level: " + confirmLevel);
+        mConfirmLevel = confirmLevel;
+    }
+
+    public CascadeDetector getCascade() {
+        return mCascade;
+    }
+
+    @Override
+    public void start(long timestamp) {
+        mCascade.start(timestamp);
+    }
+
+    @Override
+    public void stop() {
+        mCascade.stop();
+    }
+
+    @Override
+    public MotionDetector.State getState() {
+        return mCascade.getState();
+    }
+
+    @Override
+    public boolean process(IAnalysisFrame frame, long timestamp) {
+        final long startedAt = System.nanoTime();
+        boolean alarm = false;
+        if (mCascade.trigger(frame.luma(), frame.width(), frame.height(), timestamp)) {
+            //the analysis level may be finer than the confirmation level, e.g. when the governor chose it
+            final int level = Math.min(mConfirmLevel, frame.level());
+            alarm = mCascade.confirm(frame.luma(level), frame.width(level), frame.height(level), timestamp);
+        }
+        mCost.recordNanos(System.nanoTime() - startedAt);
+        return alarm;
+    }
+
+    @Override
+    public boolean isSuspicious() {
+        return mCascade.isTriggered();
+    }
+
+    @Override
+    public boolean getMotion(Mat dst) {
+        MotionDetector trigger = mCascade.getTrigger();
+        if (!trigger.hasDiff()) return false;
+        dst.put(0, 0, trigger.getDiff());
+        return true;
+    }
+
+    @Override
+    public LatencyHistogram getCost() {
+        return mCost;
+    }
+
+    @Override
+    public void release() {
+        //the stages only hold java memory
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.alarm.alarmapp.detection;
+
+import com.example.alarm.detector.MotionDetector;
+
+import org.opencv.android.LatencyHistogram;
+import org.opencv.core.Mat;
+
+/**
+ * Runs the {@link MotionDetector} on the luma plane of the frames.
+ */
+public class DifferencingBackend implements IDetectorBackend {
+    private final MotionDetector mDetector;
+    private final LatencyHistogram mCost = new LatencyHistogram();
+
+    public DifferencingBackend(MotionDetector detector) {
+        mDetector = detector;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.DIFFERENCING;
+    }
+
+    @Override
+    public void setListener(MotionDetector.IMotionDetectorListener listener) {
+        mDetector.setListener(listener);
+    }
+
+    @Override
+    public void setTimeToCalibrate(long timeToCalibrate) {
+        mDetector.setTimeToCalibrate(timeToCalibrate);
+    }
+
+    @Override
+    public void setMotionOutputEnabled(boolean motionOutputEnabled) {
+        mDetector.setDiffOutputEnabled(motionOutputEnabled);
+    }
+
+    @Override
+    public void start(long timestamp) {
+        mDetector.start(timestamp);
+    }
+
+    @Override
+    public void stop() {
+        mDetector.stop();
+    }
+
+    @Override
+    public MotionDetector.State getState() {
+        return mDetector.getState();
+    }
+
+    @Override
+    public boolean process(IAnalysisFrame frame, long timestamp) {
+        final long startedAt = System.nanoTime();
+        boolean alarm = mDetector.process(frame.luma(), frame.width(), frame.height(), timestamp);
+        mCost.recordNanos(System.nanoTime() - startedAt);
+        return alarm;
+    }
+
+    @Override
+    public boolean isSuspicious() {
+        return mDetector.isSuspicious();
+    }
+
+    @Override
+    public boolean getMotion(Mat dst) {
+        if (!mDetector.hasDiff()) return false;
+        dst.put(0, 0, mDetector.getDiff());
+        return true;
+    }
+
+    @Override
+    public LatencyHistogram getCost() {
+        return mCost;
+    }
+
+    @Override
+    public void release() {
+        //the detector only holds java memory
+    }
+}
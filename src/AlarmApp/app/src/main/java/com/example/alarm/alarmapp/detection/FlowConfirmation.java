@@ -0,0 +1,292 @@
+package com.example.alarm.alarmapp.detection;
+
+import com.example.alarm.detector.MotionBlobs;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.features2d.GFTTDetector;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.SparsePyrLKOpticalFlow;
+
+import java.util.Arrays;
+
+/**
+ * Confirms suspected motion by sparse optical flow. Corners inside the blobs of the motion map are tracked from the
+ * previous analysed frame to the current one, together with the strongest corners of the whole frame as a reference
+ * for the motion of the camera. The motion is confirmed if enough corners in the blobs move against the reference,
+ * and they move in a common direction like an object does.
+ * Camera shake moves the reference along with the blobs, and a change of the lighting doesn't move the corners at all,
+ * so neither is confirmed.
+ * The number of tracked corners is bounded by the feature budget, which bounds the cost of the flow.
+ */
+public class FlowConfirmation {
+    //the smallest number of tracked reference corners, whose median is trusted as the motion of the camera
+    private static final int MIN_REFERENCE = 4;
+    private static final int KEY_POINT_CHANNELS = 7;
+    private static final Scalar OUTSIDE = new Scalar(0);
+    private static final Scalar INSIDE = new Scalar(255);
+
+    private int mFeatureBudget = 48;
+    private double mMinFlow = 1d;
+    private int mMinMovingFeatures = 4;
+    private double mMinCoherence = 0.5d;
+
+    private GFTTDetector mRegionDetector = null;
+    private GFTTDetector mReferenceDetector = null;
+    private SparsePyrLKOpticalFlow mFlow = null;
+    private Mat mPrev = null;
+    private Mat mMask = null;
+    private MatOfKeyPoint mKeyPoints = null;
+    private MatOfPoint2f mPrevPoints = null;
+    private MatOfPoint2f mNextPoints = null;
+    private MatOfByte mStatus = null;
+    private MatOfFloat mError = null;
+    private boolean mHasPrev = false;
+    private final Point mTopLeft = new Point();
+    private final Point mBottomRight = new Point();
+
+    private float[] mKeyPointBuffer = new float[0];
+    private float[] mPoints = new float[0];
+    private float[] mNextBuffer = new float[0];
+    private byte[] mStatusBuffer = new byte[0];
+    private double[] mReferenceX = new double[0];
+    private double[] mReferenceY = new double[0];
+
+    private int mTrackedCount = 0;
+    private int mMovingCount = 0;
+    private double mCameraFlowX = 0;
+    private double mCameraFlowY = 0;
+    private double mCoherence = 0;
+    private boolean mConfirmed = false;
+
+    /**
+     * @param featureBudget the maximum number of corners tracked per frame, a quarter of them is used as the reference
+     */
+    public void setFeatureBudget(int featureBudget) {
+        if (featureBudget < 2 * MIN_REFERENCE) throw new IllegalArgumentException("the budget has to be at least " + 2 * MIN_REFERENCE + ": " + featureBudget);
+        mFeatureBudget = featureBudget;
+        if (mRegionDetector != null) {
+            mRegionDetector.setMaxFeatures(getRegionBudget());
+            mReferenceDetector.setMaxFeatures(getReferenceBudget());
+        }
+    }
+
+    public int getFeatureBudget() {
+        return mFeatureBudget;
+    }
+
+    private int getReferenceBudget() {
+        return mFeatureBudget / 4;
+    }
+
+    private int getRegionBudget() {
+        return mFeatureBudget - getReferenceBudget();
+    }
+
+    /**
+     * @param minFlow the distance in pixels of the analysed frame a corner has to move against the reference
+     */
+    public void setMinFlow(double minFlow) {
+        mMinFlow = minFlow;
+    }
+
+    /**
+     * @param minMovingFeatures the number of moving corners in the blobs needed to confirm the motion
+     */
+    public void setMinMovingFeatures(int minMovingFeatures) {
+        if (minMovingFeatures < 1) throw new IllegalArgumentException("at least one corner has to move: " + minMovingFeatures);
+        mMinMovingFeatures = minMovingFeatures;
+    }
+
+    /**
+     * @param minCoherence the length of the mean of the directions of the moving corners, 1 if they all move the same
+     *                     way, about 0 if they move in random directions
+     */
+    public void setMinCoherence(double minCoherence) {
+        mMinCoherence = minCoherence;
+    }
+
+    /**
+     * Analyses the next frame. The frame is kept as the previous frame even if nothing is suspected, so the flow
+     * always spans a single analysed frame.
+     * @param gray the analysed frame
+     * @param blobs the blobs of the motion between the previous and this frame
+     * @param suspected false to skip the flow, e.g. if the detector didn't trigger
+     * @return true if the flow confirms the motion
+     */
+    public boolean process(Mat gray, MotionBlobs blobs, boolean suspected) {
+        if (mPrev == null) create();
+        mConfirmed = false;
+        mTrackedCount = 0;
+        mMovingCount = 0;
+        if (mPrev.cols() != gray.cols() || mPrev.rows() != gray.rows()) mHasPrev = false;
+        if (suspected && mHasPrev && blobs.getCount() > 0) mConfirmed = confirm(gray, blobs);
+        gray.copyTo(mPrev);
+        mHasPrev = true;
+        return mConfirmed;
+    }
+
+    private void create() {
+        mRegionDetector = GFTTDetector.create(getRegionBudget(), 0.01d, 3d, 3, false, 0.04d);
+        mReferenceDetector = GFTTDetector.create(getReferenceBudget(), 0.01d, 3d, 3, false, 0.04d);
+        mFlow = SparsePyrLKOpticalFlow.create();
+        mPrev = new Mat();
+        mMask = new Mat();
+        mKeyPoints = new MatOfKeyPoint();
+        mPrevPoints = new MatOfPoint2f();
+        mNextPoints = new MatOfPoint2f();
+        mStatus = new MatOfByte();
+        mError = new MatOfFloat();
+    }
+
+    private boolean confirm(Mat gray, MotionBlobs blobs) {
+        //the corners of the previous frame inside the blobs, then the strongest ones of the whole frame
+        mMask.create(mPrev.rows(), mPrev.cols(), CvType.CV_8UC1);
+        mMask.setTo(OUTSIDE);
+        for (int i = 0; i < blobs.getCount(); i++) {
+            mTopLeft.x = blobs.getLeft(i);
+            mTopLeft.y = blobs.getTop(i);
+            mBottomRight.x = blobs.getLeft(i) + blobs.getWidth(i) - 1;
+            mBottomRight.y = blobs.getTop(i) + blobs.getHeight(i) - 1;
+            Imgproc.rectangle(mMask, mTopLeft, mBottomRight, INSIDE, -1);
+        }
+        ensureCapacity(mFeatureBudget);
+        mRegionDetector.detect(mPrev, mKeyPoints, mMask);
+        final int regionCount = copyPoints(0);
+        if (regionCount < mMinMovingFeatures) return false;
+        mReferenceDetector.detect(mPrev, mKeyPoints);
+        final int count = regionCount + copyPoints(regionCount);
+
+        //the buffers may be longer than needed, put and get only copy as much as the mats hold
+        mPrevPoints.alloc(count);
+        mPrevPoints.put(0, 0, mPoints);
+        mFlow.calc(mPrev, gray, mPrevPoints, mNextPoints, mStatus, mError);
+        mNextPoints.get(0, 0, mNextBuffer);
+        mStatus.get(0, 0, mStatusBuffer);
+
+        //the motion of the camera is the median flow of the reference
+        int references = 0;
+        for (int i = regionCount; i < count; i++) {
+            if (mStatusBuffer[i] == 0) continue;
+            mReferenceX[references] = mNextBuffer[2 * i] - mPoints[2 * i];
+            mReferenceY[references] = mNextBuffer[2 * i + 1] - mPoints[2 * i + 1];
+            references++;
+        }
+        mCameraFlowX = references < MIN_REFERENCE ? 0 : median(mReferenceX, references);
+        mCameraFlowY = references < MIN_REFERENCE ? 0 : median(mReferenceY, references);
+
+        double directionX = 0, directionY = 0;
+        for (int i = 0; i < regionCount; i++) {
+            if (mStatusBuffer[i] == 0) continue;
+            mTrackedCount++;
+            final double dx = mNextBuffer[2 * i] - mPoints[2 * i] - mCameraFlowX;
+            final double dy = mNextBuffer[2 * i + 1] - mPoints[2 * i + 1] - mCameraFlowY;
+            final double flow = Math.sqrt(dx * dx + dy * dy);
+            if (flow < mMinFlow) continue;
+            mMovingCount++;
+            directionX += dx / flow;
+            directionY += dy / flow;
+        }
+        mCoherence = mMovingCount == 0 ? 0 : Math.sqrt(directionX * directionX + directionY * directionY) / mMovingCount;
+        return mMovingCount >= mMinMovingFeatures && mCoherence >= mMinCoherence;
+    }
+
+    private void ensureCapacity(int points) {
+        if (mPoints.length >= 2 * points) return;
+        mKeyPointBuffer = new float[KEY_POINT_CHANNELS * points];
+        mPoints = new float[2 * points];
+        mNextBuffer = new float[2 * points];
+        mStatusBuffer = new byte[points];
+        mReferenceX = new double[points];
+        mReferenceY = new double[points];
+    }
+
+    /**
+     * Copies the positions of the detected corners into the point buffer.
+     * @return the number of copied corners
+     */
+    private int copyPoints(int offset) {
+        final int count = Math.min(mKeyPoints.rows(), mFeatureBudget - offset);
+        if (count <= 0) return 0;
+        mKeyPoints.get(0, 0, mKeyPointBuffer);
+        for (int i = 0; i < count; i++) {
+            mPoints[2 * (offset + i)] = mKeyPointBuffer[KEY_POINT_CHANNELS * i];
+            mPoints[2 * (offset + i) + 1] = mKeyPointBuffer[KEY_POINT_CHANNELS * i + 1];
+        }
+        return count;
+    }
+
+    private static double median(double[] values, int count) {
+        Arrays.sort(values, 0, count);
+        return count % 2 == 1 ? values[count / 2] : (values[count / 2 - 1] + values[count / 2]) / 2;
+    }
+
+    /**
+     * Forgets the previous frame, e.g. when the detection restarts.
+     */
+    public void reset() {
+        mHasPrev = false;
+    }
+
+    /**
+     * @return the number of corners in the blobs that were tracked in the last frame
+     */
+    public int getTrackedCount() {
+        return mTrackedCount;
+    }
+
+    /**
+     * @return the number of tracked corners in the blobs that moved against the reference in the last frame
+     */
+    public int getMovingCount() {
+        return mMovingCount;
+    }
+
+    public double getCameraFlowX() {
+        return mCameraFlowX;
+    }
+
+    public double getCameraFlowY() {
+        return mCameraFlowY;
+    }
+
+    public double getCoherence() {
+        return mCoherence;
+    }
+
+    public boolean isConfirmed() {
+        return mConfirmed;
+    }
+
+    /**
+     * Releases the native buffers, the stage can be used again afterwards.
+     */
+    public void release() {
+        if (mPrev != null) {
+            mPrev.release();
+            mMask.release();
+            mKeyPoints.release();
+            mPrevPoints.release();
+            mNextPoints.release();
+            mStatus.release();
+            mError.release();
+        }
+        mPrev = null;
+        mMask = null;
+        mKeyPoints = null;
+        mPrevPoints = null;
+        mNextPoints = null;
+        mStatus = null;
+        mError = null;
+        mRegionDetector = null;
+        mReferenceDetector = null;
+        mFlow = null;
+        mHasPrev = false;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.alarm.alarmapp.detection;
+
+import org.opencv.core.Mat;
+
+/**
+ * A camera frame downscaled to the analysis resolution. Like the camera frames of OpenCV, the representations are
+ * only produced when a detector backend asks for them.
+ */
+public interface IAnalysisFrame {
+    /**
+     * @return the single channel frame, only valid until the next frame
+     */
+    Mat gray();
+
+    /**
+     * @return the luma plane of the frame, {@link #width()} * {@link #height()} bytes, only valid until the next frame
+     */
+    byte[] luma();
+
+    int width();
+
+    int height();
+
+    /**
+     * @return the pyramid level the frame is analysed at, see {@link AnalysisPyramid}
+     */
+    int level();
+
+    /**
+     * @param level a level up to {@link #level()}, 0 is the full resolution
+     * @return the luma plane of the same frame at a finer level, only valid until the next frame
+     */
+    byte[] luma(int level);
+
+    int width(int level);
+
+    int height(int level);
+}
@@ -0,0 +1,74 @@
+package com.example.alarm.alarmapp.detection;
+
+import com.example.alarm.detector.MotionDetector;
+
+import org.opencv.android.LatencyHistogram;
+import org.opencv.core.Mat;
+
+/**
+ * An algorithm the camera view can detect movement with. All backends share the life cycle of the
+ * {@link MotionDetector}: they calibrate after {@link #start(long)} and trigger the alarm once running.
+ * Every backend measures its own processing time per frame, so the backends can be compared on a device.
+ */
+public interface IDetectorBackend {
+    enum Type {
+        /** the difference to the previous frame compared with its moving average, see {@link MotionDetector} */
+        DIFFERENCING,
+        /** the foreground of an OpenCV gaussian mixture background model */
+        MOG2,
+        /** the foreground of an OpenCV k nearest neighbours background model */
+        KNN,
+        /** the differencing at the analysis level, confirmed per region at the full resolution, see {@link com.example.alarm.detector.CascadeDetector} */
+        CASCADE
+    }
+
+    Type getType();
+
+    void setListener(MotionDetector.IMotionDetectorListener listener);
+
+    void setTimeToCalibrate(long timeToCalibrate);
+
+    /**
+     * @param motionOutputEnabled false if the per pixel motion is not needed, e.g. because nothing is drawn
+     */
+    void setMotionOutputEnabled(boolean motionOutputEnabled);
+
+    /**
+     * Starts the calibration.
+     * @param timestamp the current time on the clock the frames are stamped with
+     */
+    void start(long timestamp);
+
+    void stop();
+
+    MotionDetector.State getState();
+
+    /**
+     * Analyses the next frame.
+     * @param timestamp the time the frame was taken at in milliseconds
+     * @return true if the frame triggered the alarm
+     */
+    boolean process(IAnalysisFrame frame, long timestamp);
+
+    /**
+     * @return true if the last frame looked like the start of a movement, even if it didn't trigger the alarm
+     */
+    boolean isSuspicious();
+
+    /**
+     * Copies the per pixel motion of the last frame, 0 for none up to 255.
+     * @param dst a single channel mat of the analysis resolution
+     * @return false if there is no motion output for the last frame
+     */
+    boolean getMotion(Mat dst);
+
+    /**
+     * @return the processing time per frame
+     */
+    LatencyHistogram getCost();
+
+    /**
+     * Releases the native memory, the backend can be started again afterwards.
+     */
+    void release();
+}
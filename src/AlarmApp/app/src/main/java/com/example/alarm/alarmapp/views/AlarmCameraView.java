@@ -3,54 +3,166 @@ package com.example.alarm.alarmapp.views;
 import android.content.Context;
 import android.hardware.Camera;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 
-import com.example.alarm.alarmapp.R;
+import com.example.alarm.alarmapp.detection.AnalysisPyramid;
+import com.example.alarm.alarmapp.detection.BackgroundSubtractorBackend;
+import com.example.alarm.alarmapp.detection.BlobExtractor;
+import com.example.alarm.alarmapp.detection.CascadeBackend;
+import com.example.alarm.alarmapp.detection.DifferencingBackend;
+import com.example.alarm.alarmapp.detection.FlowConfirmation;
+import com.example.alarm.alarmapp.detection.IAnalysisFrame;
+import com.example.alarm.alarmapp.detection.IDetectorBackend;
+import com.example.alarm.detector.AnalysisGovernor;
+import com.example.alarm.detector.BlobAlarmRule;
+import com.example.alarm.detector.BlobTracker;
+import com.example.alarm.detector.CalibrationProfile;
+import com.example.alarm.detector.DetectionScheduler;
+import com.example.alarm.detector.IlluminationNormalizer;
+import com.example.alarm.detector.MotionDetector;
+import com.example.alarm.detector.MotionGrid;
+import com.example.alarm.detector.MotionBlobs;
+import com.example.alarm.detector.MotionMask;
+import com.example.alarm.detector.ShakeCompensator;
+import com.example.alarm.detector.Telemetry;
 
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.JavaCameraView;
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 
 /**
  * A camera view that has a movement detection.
+ * The view only adapts the camera frames for the selected {@link IDetectorBackend}, which does the actual detection.
+ * The default backend is the {@link MotionDetector}.
  */
 public class AlarmCameraView extends JavaCameraView implements CameraBridgeViewBase.CvCameraViewListener2 {
     private static final String TAG = AlarmCameraView.class.getName();
+    private static final long THUMBNAIL_INTERVAL = 1000;
+    private static final int GRID_COLS = 8;
+    private static final int GRID_ROWS = 6;
+    private static final int MAX_BLOBS = 32;
+    //the largest tremor the detector compensates, in pixels of the analysed frame
+    private static final int MAX_SHAKE = 8;
+    private static final Scalar BLOB_COLOR = new Scalar(0, 255, 0);
+    private static final Scalar TRACK_COLOR = new Scalar(255, 255, 0);
+
+    /**
+     * How much of the camera frames is drawn, the detection runs the same in all modes.
+     */
+    public enum RenderMode {
+        /** every frame is drawn with the diff overlay */
+        PREVIEW,
+        /** one frame per second is drawn */
+        THUMBNAIL,
+        /** nothing is drawn, the frames are neither converted nor overlaid */
+        HEADLESS
+    }
 
-    private int mTimeToCalibrate = 10000;
-    private double mAlarmThreshold = 6d;
     private int mProcessFps = 4;
-    private double mAverageOver = 100d / mProcessFps;
-
-    private long mCalibratingStartedAt = 0;
-
+    //the pyramid level the frames are analysed at, 2 is a quarter of the preview resolution
+    private volatile int mAnalysisLevel = 2;
+    //adapts the analysis level and rate to the device, null to keep them fixed
+    private volatile AnalysisGovernor mGovernor = null;
+
+    private volatile RenderMode mRenderMode = RenderMode.PREVIEW;
+    private long mLastRenderedAt = -1;
+    //the diff of the last analysed frame is only turned into the red overlay once a frame is drawn
+    private boolean mRedDiffPending = false;
     private boolean mAreCameraParamsSet = false;
-    private State mState = State.IDLE;
     private IAlarmCameraListener mAlarmListener = null;
-    private Mat mLastMat = null;
-    private Mat mEmptyGrayMap = null;
-
-    private double mMovingAbsDiffAvg = -1d;
-    private double mMovingDiffAvg = -1d;
-    private double mMaxDiff = 0;
+    private final FrameBufferPool mBufferPool = new FrameBufferPool();
+    private final DetectionScheduler mScheduler = new DetectionScheduler(mProcessFps);
+    private final MotionDetector mDetector = new MotionDetector();
+    //created when they are selected first, indexed by their type
+    private final IDetectorBackend[] mBackends = new IDetectorBackend[IDetectorBackend.Type.values().length];
+    private volatile IDetectorBackend mBackend;
+    private long mTimeToCalibrate = mDetector.getTimeToCalibrate();
+    //the values of the analysed frames are formatted by whoever drains the telemetry, never on the camera thread
+    private final Telemetry mTelemetry = new Telemetry(Log.isLoggable(TelemetryLogger.TAG, Log.VERBOSE) ? Telemetry.Level.FRAMES : Telemetry.Level.EVENTS, 256);
+    private volatile FrameRecorder mRecorder = null;
+    private MaskStore mMaskStore;
+    private ProfileStore mProfileStore;
+    //re-arms the differencing backend with the saved profile of the camera instead of a full calibration
+    private volatile boolean mWarmStartEnabled = true;
+    //the blobs are only extracted if there is a rule or a tracker for them
+    private volatile BlobAlarmRule mBlobRule = null;
+    private volatile BlobTracker mTracker = null;
+    private volatile FlowConfirmation mFlowConfirmation = null;
+    private final BlobExtractor mBlobExtractor = new BlobExtractor();
+    private final MotionBlobs mBlobs = new MotionBlobs(MAX_BLOBS);
+    private final Point mBlobTopLeft = new Point();
+    private final Point mBlobBottomRight = new Point();
+    //the level and the size of the frame the backend is processing, a profile created meanwhile belongs to them,
+    //not to be confused with the preview size in mFrameWidth and mFrameHeight, which the recording uses
+    private int mAnalysedLevel = -1;
+    private int mAnalysedWidth = -1;
+    private int mAnalysedHeight = -1;
 
     public AlarmCameraView(Context context, int cameraId) {
         super(context, cameraId);
-        this.setCvCameraViewListener(this);
+        init();
     }
 
     public AlarmCameraView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init();
+    }
+
+    private void init() {
         this.setCvCameraViewListener(this);
+        mDetector.setTelemetry(mTelemetry);
+        //score the motion per region, so a small intruder is not diluted by the rest of the frame
+        mDetector.setGrid(new MotionGrid(GRID_COLS, GRID_ROWS));
+        //a phone on a windowsill vibrates, the previous frame is aligned before the frames are differenced
+        mDetector.setShakeCompensator(new ShakeCompensator(MAX_SHAKE));
+        //and a lamp switched on changes the whole frame, which is no motion
+        mDetector.setIlluminationNormalizer(new IlluminationNormalizer());
+        mMaskStore = new MaskStore(getContext());
+        mProfileStore = new ProfileStore(getContext());
+        mDetector.setMask(mMaskStore.load(mCameraIndex));
+        mBackend = new DifferencingBackend(mDetector);
+        mBackend.setListener(mDetectorListener);
+        mBackends[IDetectorBackend.Type.DIFFERENCING.ordinal()] = mBackend;
     }
 
+    private final MotionDetector.IMotionDetectorListener mDetectorListener = new MotionDetector.IMotionDetectorListener() {
+        @Override
+        public void onCalibrating() {
+            onCalibratingInternal();
+        }
+
+        @Override
+        public void onRun() {
+            Log.d(TAG, "State: " + mBackend.getState());
+            //called on the camera thread, between two frames of the detector
+            if (mBackend.getType() == IDetectorBackend.Type.DIFFERENCING) {
+                CalibrationProfile profile = mDetector.createProfile(mAnalysedLevel);
+                if (profile != null && profile.getWidth() == mAnalysedWidth && profile.getHeight() == mAnalysedHeight) {
+                    mProfileStore.save(mCameraIndex, profile);
+                } else if (profile != null) {
+                    Log.w(TAG, "Not saving the profile of " + profile.getWidth() + "x" + profile.getHeight() + ", the frame of level "
+                            + mAnalysedLevel + " is " + mAnalysedWidth + "x" + mAnalysedHeight);
+                }
+            }
+            onRunInternal();
+        }
+
+        @Override
+        public void onAlarm() {
+            //the alarm is raised by onCameraFrame, after the blobs were checked
+        }
+    };
+
     public interface IAlarmCameraListener {
         void onAlarm();
         void onCalibrating();
@@ -88,27 +200,273 @@ public class AlarmCameraView extends JavaCameraView implements CameraBridgeViewB
         });
     }
 
-    public enum State {
-        IDLE, CALIBRATING, RUNNING
+    public MotionDetector.State getCurrState() {
+        return mBackend.getState();
     }
 
-    public State getCurrState() {
-        return mState;
+    public void startAlarm() {
+        mScheduler.reset();
+        final BlobTracker tracker = mTracker;
+        if (tracker != null) tracker.reset();
+        final FlowConfirmation flowConfirmation = mFlowConfirmation;
+        if (flowConfirmation != null) flowConfirmation.reset();
+        CalibrationProfile profile = canWarmStart() ? mProfileStore.load(mCameraIndex) : null;
+        if (profile != null && !fitsFrames(profile)) {
+            Log.w(TAG, "The profile of " + profile.getWidth() + "x" + profile.getHeight() + " at level " + profile.getAnalysisLevel()
+                    + " doesn't fit the frames of " + mBufferPool.getWidth() + "x" + mBufferPool.getHeight() + ", calibrating");
+            profile = null;
+        }
+        if (profile != null) {
+            //the statistics only apply to the resolution they were calibrated at
+            mAnalysisLevel = profile.getAnalysisLevel();
+            final AnalysisGovernor governor = mGovernor;
+            if (governor != null) governor.reset(mAnalysisLevel, mScheduler.getAnalysisFps());
+            mDetector.start(SystemClock.elapsedRealtime(), profile);
+        } else {
+            mBackend.start(SystemClock.elapsedRealtime());
+        }
+        Log.d(TAG, "State: " + mBackend.getState() + (profile != null ? ", warm start" : ""));
     }
 
-    public void startAlarm() {
-        mCalibratingStartedAt = System.currentTimeMillis();
-        mState = State.CALIBRATING;
-        Log.d(TAG, "State: " + mState);
-        onCalibratingInternal();
+    /**
+     * @return true if the size of the profile is the one its level has for the current frames, or if there are none yet,
+     * in which case the detector checks the first frame
+     */
+    private boolean fitsFrames(CalibrationProfile profile) {
+        if (mBufferPool.getWidth() < 0) return true;
+        return AnalysisPyramid.getLevelSize(mBufferPool.getWidth(), profile.getAnalysisLevel()) == profile.getWidth()
+                && AnalysisPyramid.getLevelSize(mBufferPool.getHeight(), profile.getAnalysisLevel()) == profile.getHeight();
+    }
+
+    /**
+     * @return true if the next start can restore a saved calibration profile, the detector still verifies it
+     */
+    public boolean canWarmStart() {
+        return mWarmStartEnabled && mBackend.getType() == IDetectorBackend.Type.DIFFERENCING && mProfileStore.contains(mCameraIndex);
+    }
+
+    public void setWarmStartEnabled(boolean warmStartEnabled) {
+        mWarmStartEnabled = warmStartEnabled;
+    }
+
+    /**
+     * Deletes the saved calibration profile of the camera, the next start calibrates fully.
+     */
+    public void clearProfile() {
+        mProfileStore.save(mCameraIndex, null);
     }
 
     public void stopAlarm() {
-        mCalibratingStartedAt = 0;
-        mMovingAbsDiffAvg = -1;
-        mMaxDiff = 0;
+        mBackend.stop();
+        mScheduler.reset();
+    }
+
+    /**
+     * Selects the algorithm the movement is detected with. The alarm has to be stopped.
+     */
+    public void setBackendType(IDetectorBackend.Type type) {
+        if (mBackend.getState() != MotionDetector.State.IDLE) throw new IllegalStateException("the alarm is running");
+        IDetectorBackend backend = mBackends[type.ordinal()];
+        if (backend == null) {
+            //the differencing backend always exists, it wraps the detector
+            backend = type == IDetectorBackend.Type.CASCADE ? new CascadeBackend() : new BackgroundSubtractorBackend(type);
+            backend.setListener(mDetectorListener);
+            backend.setTimeToCalibrate(mTimeToCalibrate);
+            mBackends[type.ordinal()] = backend;
+        }
+        mBackend = backend;
+    }
+
+    public IDetectorBackend getBackend() {
+        return mBackend;
+    }
+
+    /**
+     * Sets the rate the frames are analysed at, independent of the rate the camera delivers preview frames.
+     */
+    public void setAnalysisFps(double analysisFps) {
+        mScheduler.setAnalysisFps(analysisFps);
+    }
+
+    public void setSchedulerMode(DetectionScheduler.Mode mode) {
+        mScheduler.setMode(mode);
+    }
+
+    public DetectionScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Sets the resolution the frames are analysed at, the preview keeps the full resolution.
+     * @param analysisLevel the pyramid level, 0 is the full resolution and every level halves it, up to {@link AnalysisPyramid#MAX_LEVEL}
+     */
+    public void setAnalysisLevel(int analysisLevel) {
+        if (analysisLevel < 0 || analysisLevel > AnalysisPyramid.MAX_LEVEL) throw new IllegalArgumentException("invalid analysis level: " + analysisLevel);
+        mAnalysisLevel = analysisLevel;
+    }
+
+    public int getAnalysisLevel() {
+        return mAnalysisLevel;
+    }
+
+    /**
+     * Lets the analysis level and rate follow the processing time, so the analysis takes the given share of one core.
+     * The governor starts at the current level and never exceeds the current analysis rate.
+     * The level only changes while the backend is calibrating, its statistics don't apply to another resolution,
+     * while it is running only the rate follows the processing time.
+     * @param targetDutyCycle e.g. 0.25 for 25% of one core, 0 to keep the level and rate fixed
+     */
+    public void setGovernorTarget(double targetDutyCycle) {
+        if (targetDutyCycle == 0) {
+            mGovernor = null;
+            return;
+        }
+        AnalysisGovernor governor = new AnalysisGovernor();
+        governor.setTargetDutyCycle(targetDutyCycle);
+        final double fps = mScheduler.getAnalysisFps();
+        governor.setFpsRange(Math.min(1d, fps), fps);
+        governor.reset(mAnalysisLevel, fps);
+        mGovernor = governor;
+    }
+
+    /**
+     * @return the governor of the analysis level and rate, null if they are fixed
+     */
+    public AnalysisGovernor getGovernor() {
+        return mGovernor;
+    }
+
+    public void setRenderMode(RenderMode renderMode) {
+        mRenderMode = renderMode;
+        mLastRenderedAt = -1;
+    }
+
+    /**
+     * @return true if the per pixel motion of the frame at the given time is needed, for the blobs or the drawn overlay
+     */
+    private boolean isMotionOutputNeeded(long now) {
+        return isBlobExtractionNeeded() || isRenderDue(now);
+    }
+
+    private boolean isBlobExtractionNeeded() {
+        return mBlobRule != null || mTracker != null || mFlowConfirmation != null;
+    }
+
+    /**
+     * Extracts the blobs of the motion of every analysed frame. An alarm of the detector is only raised if the
+     * blobs of the frame satisfy the rule, e.g. so diffuse noise can't trigger it.
+     * @param blobRule the rule for the blobs, null to neither extract nor check them
+     */
+    public void setBlobRule(BlobAlarmRule blobRule) {
+        mBlobRule = blobRule;
+    }
+
+    public BlobAlarmRule getBlobRule() {
+        return mBlobRule;
+    }
+
+    /**
+     * Follows the blobs of the analysed frames. An alarm of the detector is only raised if a confirmed track was
+     * matched in the same frame, so only something moving through the scene triggers it, not flicker in place.
+     * @param tracker the tracker for the blobs, null to raise alarms without tracks
+     */
+    public void setTracker(BlobTracker tracker) {
+        mTracker = tracker;
+    }
+
+    /**
+     * @return the tracker, its tracks are only to be read on the camera thread
+     */
+    public BlobTracker getTracker() {
+        return mTracker;
+    }
+
+    /**
+     * Tracks corners in the blobs of the analysed frames. An alarm of the detector is only raised if their flow
+     * confirms an object moving, not camera shake or flickering light. The flow only runs for frames that would
+     * raise the alarm otherwise, its cost is bounded by the feature budget of the stage.
+     * Its native buffers are released when the camera view stops.
+     * @param flowConfirmation the confirmation stage, null to raise alarms without it
+     */
+    public void setFlowConfirmation(FlowConfirmation flowConfirmation) {
+        mFlowConfirmation = flowConfirmation;
+    }
+
+    public FlowConfirmation getFlowConfirmation() {
+        return mFlowConfirmation;
+    }
+
+    /**
+     * @return the blobs of the last analysed frame, only to be read on the camera thread
+     */
+    public MotionBlobs getBlobs() {
+        return mBlobs;
+    }
+
+    public RenderMode getRenderMode() {
+        return mRenderMode;
+    }
+
+    public void setTimeToCalibrate(int timeToCalibrate) {
+        mTimeToCalibrate = timeToCalibrate;
+        for (IDetectorBackend backend : mBackends) {
+            if (backend != null) backend.setTimeToCalibrate(timeToCalibrate);
+        }
+    }
+
+    /**
+     * @return the values of the analysed frames, they have to be drained regularly
+     */
+    public Telemetry getTelemetry() {
+        return mTelemetry;
+    }
+
+    /**
+     * Restricts the detection to the regions the mask includes and stores it for the camera of this view.
+     * The mask must not be changed afterwards, set a new one instead.
+     * @param mask the mask or null to detect in the whole frame
+     */
+    public void setMask(MotionMask mask) {
+        mDetector.setMask(mask);
+        mMaskStore.save(mCameraIndex, mask);
+    }
+
+    public MotionMask getMask() {
+        return mDetector.getMask();
+    }
+
+    @Override
+    public void setCameraIndex(int cameraIndex) {
+        super.setCameraIndex(cameraIndex);
+        //every camera has its own mask
+        mDetector.setMask(mMaskStore.load(cameraIndex));
+    }
 
-        mState = State.IDLE;
+    /**
+     * @return the detector of the {@link IDetectorBackend.Type#DIFFERENCING} backend
+     */
+    public MotionDetector getDetector() {
+        return mDetector;
+    }
+
+    /**
+     * Starts recording the preview frames to the given file, replacing a running recording.
+     * The camera has to be started, because the recording needs the preview size.
+     */
+    public void startRecording(File file) throws IOException {
+        if (mFrameWidth == 0 || mFrameHeight == 0) throw new IllegalStateException("the camera has not been started");
+        stopRecording();
+        mRecorder = new FrameRecorder(file, mFrameWidth, mFrameHeight);
+    }
+
+    public void stopRecording() {
+        FrameRecorder recorder = mRecorder;
+        mRecorder = null;
+        if (recorder != null) recorder.stop();
+    }
+
+    public boolean isRecording() {
+        return mRecorder != null;
     }
 
     public void setAlarmListener(IAlarmCameraListener alarmListener) {
@@ -127,95 +485,158 @@ public class AlarmCameraView extends JavaCameraView implements CameraBridgeViewB
             params.setFocusMode(Camera.Parameters.FOCUS_MODE_FIXED);
             mCamera.setParameters(params);
         }
+        FrameRecorder recorder = mRecorder;
+        if (recorder != null) recorder.record(frame, SystemClock.elapsedRealtime());
         super.onPreviewFrame(frame, arg1);
     }
 
     @Override
     public void onCameraViewStarted(int width, int height) {
-        mEmptyGrayMap = new Mat(height, width, CvType.CV_8UC1);
+        mBufferPool.ensureSize(width, height, mAnalysisLevel);
     }
 
     @Override
     public void onCameraViewStopped() {
-        if (mEmptyGrayMap != null) mEmptyGrayMap.release();
-        mEmptyGrayMap = null;
-        if (mLastMat != null) mLastMat.release();
-        mLastMat = null;
+        Log.i(TAG, "Frame latency: " + getFrameLatency() + ", dropped " + getDroppedFrameCount() + " of " + getReceivedFrameCount() + " frames");
+        Log.i(TAG, "Processing: " + getProcessingTime() + ", render wait: " + getRenderWaitTime() + ", render: " + getRenderTime()
+                + ", skipped " + getSkippedRenderFrameCount() + " frames");
+        for (IDetectorBackend backend : mBackends) {
+            if (backend == null) continue;
+            Log.i(TAG, "Detector " + backend.getType() + ": " + backend.getCost());
+            backend.release();
+        }
+        mBlobExtractor.release();
+        final FlowConfirmation flowConfirmation = mFlowConfirmation;
+        if (flowConfirmation != null) flowConfirmation.release();
+        stopRecording();
+        mBufferPool.release();
     }
 
     @Override
     public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
-        Mat screenMat = inputFrame.rgba();
+        final long now = SystemClock.elapsedRealtime();
+        final IDetectorBackend backend = mBackend;
+        if (backend.getState() == MotionDetector.State.IDLE) return shouldRender(now) ? inputFrame.rgba() : null;
+
+        //the gray mat is owned by the frame and must not be released here
+        Mat grayMat = inputFrame.gray();
+        mBufferPool.ensureSize(grayMat.cols(), grayMat.rows(), mAnalysisLevel);
+        //frames in between the analysed ones only get the last overlay drawn on them
+        if (!mScheduler.shouldProcess(now)) return shouldRender(now) ? drawOverlay(grayMat) : null;
+        final long processingStartedAt = System.nanoTime();
+
+        //hand the downscaled frame to the detector
+        final IAnalysisFrame frame = mBufferPool.toAnalysisFrame(grayMat);
+        mAnalysedLevel = frame.level();
+        mAnalysedWidth = frame.width();
+        mAnalysedHeight = frame.height();
+        backend.setMotionOutputEnabled(isMotionOutputNeeded(now));
+        boolean alarm = backend.process(frame, now);
+        if (backend.isSuspicious()) mScheduler.onSuspicion(now);
+
+        final boolean hasMotion = backend.getMotion(mBufferPool.getDiff());
+        if (hasMotion) mRedDiffPending = true;
+        final BlobAlarmRule blobRule = mBlobRule;
+        final BlobTracker tracker = mTracker;
+        final FlowConfirmation flowConfirmation = mFlowConfirmation;
+        if (blobRule != null || tracker != null || flowConfirmation != null) {
+            if (hasMotion) mBlobExtractor.extract(mBufferPool.getDiff(), mBlobs);
+            else mBlobs.clear(mBufferPool.getAnalysisWidth(), mBufferPool.getAnalysisHeight());
+            if (blobRule != null) alarm &= blobRule.matches(mBlobs);
+            //the tracks have to follow every analysed frame, not only the ones that passed the rule
+            if (tracker != null && !tracker.update(mBlobs)) alarm = false;
+            //the flow runs last, only for frames that passed the cheaper checks
+            if (flowConfirmation != null && !flowConfirmation.process(frame.gray(), mBlobs, alarm)) alarm = false;
+        }
+        if (alarm) {
+            Log.d(TAG, "Alarm Triggered: " + new Date().toGMTString());
+            onAlarmInternal();
+        }
+        final double processingTime = (System.nanoTime() - processingStartedAt) / 1000000d;
+        mScheduler.onFrameProcessed(processingTime);
+        final AnalysisGovernor governor = mGovernor;
+        //the statistics of an armed backend only apply to its resolution, only the rate may change then
+        if (governor != null) governor.setLevelLocked(backend.getState() == MotionDetector.State.RUNNING);
+        if (governor != null && governor.onFrameProcessed(processingTime)) {
+            //the buffers are resized with the next frame
+            mAnalysisLevel = governor.getAnalysisLevel();
+            mScheduler.setAnalysisFps(governor.getAnalysisFps());
+            Log.i(TAG, "Governor: " + governor);
+        }
 
-        if (mState == State.RUNNING || mState == State.CALIBRATING) {
-            if (mState == State.CALIBRATING) {
+        return shouldRender(now) ? drawOverlay(grayMat) : null;
+    }
 
-                if (System.currentTimeMillis() - mCalibratingStartedAt >= mTimeToCalibrate) {
-                    mState = State.RUNNING;
-                    onRunInternal();
-                    Log.d(TAG, "State: " + mState);
-                }
-            }
+    /**
+     * @return true if the frame at the given time should be drawn in the current render mode, counts it as drawn
+     */
+    private boolean shouldRender(long now) {
+        if (!isRenderDue(now)) return false;
+        mLastRenderedAt = now;
+        return true;
+    }
 
-            if (mLastMat != null) {
-                //calculate trigger values
-                Mat grayMat = inputFrame.gray();
-                Mat diff = new Mat(grayMat.size(), grayMat.type());
-                Core.absdiff(grayMat, mLastMat, diff);
-                final double diffD = Core.mean(diff).val[0];
-                if (mMovingAbsDiffAvg == -1d) mMovingAbsDiffAvg = diffD;
-                else {
-                    mMovingAbsDiffAvg = (mMovingAbsDiffAvg * (mAverageOver - 1) + diffD) / mAverageOver;
-                }
-                if (mMovingDiffAvg == -1d) mMovingDiffAvg = 0;
-                else {
-                    mMovingDiffAvg = (mMovingDiffAvg * (mAverageOver - 1) + Math.abs(diffD - mMovingAbsDiffAvg)) / mAverageOver;
-                }
+    /**
+     * @return true if the frame at the given time would be drawn in the current render mode
+     */
+    private boolean isRenderDue(long now) {
+        switch (mRenderMode) {
+            case HEADLESS:
+                return false;
+            case THUMBNAIL:
+                return mLastRenderedAt == -1 || now - mLastRenderedAt >= THUMBNAIL_INTERVAL;
+            default:
+                return true;
+        }
+    }
 
-                if (mMaxDiff < diffD) {
-                    mMaxDiff = diffD;
-                }
-                double absCurrAlarmThreshold = (mMovingDiffAvg * mAlarmThreshold) + mMovingAbsDiffAvg;
-                boolean alarmTriggered = diffD > absCurrAlarmThreshold;
-                if (alarmTriggered) Log.d(TAG, "Alarm Triggered: " + new Date().toGMTString());
-
-                Log.v(TAG,
-                    String.format("onProcessedFrame:\t%s\t%s\t%s\t%s\t%s",
-                        String.format(getContext().getString(R.string.curr_alarm_threshold_val), absCurrAlarmThreshold),
-                        String.format(getContext().getString(R.string.moving_diff_abs_avg_val), mMovingAbsDiffAvg),
-                        String.format(getContext().getString(R.string.moving_diff_avg_val), mMovingDiffAvg),
-                        String.format(getContext().getString(R.string.max_diff_val), mMaxDiff),
-                        String.format(getContext().getString(R.string.AbsDiff_val), diffD)
-                    )
-                );
-                if (alarmTriggered && mState == State.RUNNING) onAlarmInternal();
-
-                //draw changes on screenMat
-                ArrayList<Mat> mergeMats = new ArrayList<>(3);
-                mergeMats.add(diff);
-                mergeMats.add(mEmptyGrayMap);
-                mergeMats.add(mEmptyGrayMap);
-
-                //create buffer for red diff (rgb mat)
-                Mat matRedDiff = new Mat(diff.size(), screenMat.type());
-                //merge two empty single channel mats and the diff mat as different channels into rgb mat
-                Core.merge(mergeMats, matRedDiff);
-                //create buffer for gray image in rgb mat
-                Mat grayRgbMat = new Mat(screenMat.size(), screenMat.type());
-                //convert gray single channel mat to rgb mat
-                Imgproc.cvtColor(grayMat, grayRgbMat, Imgproc.COLOR_GRAY2RGB);
-                //add the gray and red overlay together
-                Core.add(grayRgbMat, matRedDiff, screenMat);
-
-                //release resources
-                grayRgbMat.release();
-                grayMat.release();
-                matRedDiff.release();
-                diff.release();
-                mLastMat.release();
-            }
-            mLastMat = inputFrame.gray();
+    /**
+     * Draws the red diff of the last analysed frame on top of the given gray frame.
+     * @return the mat holding the result
+     */
+    private Mat drawOverlay(Mat grayMat) {
+        if (mRedDiffPending) {
+            mBufferPool.updateRedDiff();
+            mRedDiffPending = false;
         }
-        return screenMat;
+        //convert gray single channel mat to rgb mat
+        Imgproc.cvtColor(grayMat, mBufferPool.getGrayRgb(), Imgproc.COLOR_GRAY2RGB);
+        //add the gray and red overlay together
+        Core.add(mBufferPool.getGrayRgb(), mBufferPool.getRedDiff(), mBufferPool.getOverlay());
+        if (isBlobExtractionNeeded()) drawBlobs(mBufferPool.getOverlay());
+        return mBufferPool.getOverlay();
+    }
+
+    /**
+     * Draws the bounding boxes of the blobs of the last analysed frame and of the confirmed tracks, scaled to the frame.
+     */
+    private void drawBlobs(Mat frame) {
+        if (mBlobs.getMapWidth() == 0) return;
+        final double scale = (double) frame.cols() / mBlobs.getMapWidth();
+        for (int i = 0; i < mBlobs.getCount(); i++) {
+            mBlobTopLeft.x = mBlobs.getLeft(i) * scale;
+            mBlobTopLeft.y = mBlobs.getTop(i) * scale;
+            mBlobBottomRight.x = (mBlobs.getLeft(i) + mBlobs.getWidth(i)) * scale;
+            mBlobBottomRight.y = (mBlobs.getTop(i) + mBlobs.getHeight(i)) * scale;
+            Imgproc.rectangle(frame, mBlobTopLeft, mBlobBottomRight, BLOB_COLOR, 2);
+        }
+        final BlobTracker tracker = mTracker;
+        if (tracker == null) return;
+        //the confirmed tracks, their positions are fractions of the frame
+        for (int t = 0; t < tracker.getCapacity(); t++) {
+            if (!tracker.isConfirmed(t)) continue;
+            mBlobTopLeft.x = tracker.getLeft(t) * frame.cols();
+            mBlobTopLeft.y = tracker.getTop(t) * frame.rows();
+            mBlobBottomRight.x = tracker.getRight(t) * frame.cols();
+            mBlobBottomRight.y = tracker.getBottom(t) * frame.rows();
+            Imgproc.rectangle(frame, mBlobTopLeft, mBlobBottomRight, TRACK_COLOR, 2);
+        }
+    }
+
+    /**
+     * @return the pool holding the working buffers for the frame processing
+     */
+    FrameBufferPool getBufferPool() {
+        return mBufferPool;
     }
 }
@@ -0,0 +1,275 @@
+package com.example.alarm.alarmapp.views;
+
+import com.example.alarm.alarmapp.detection.AnalysisPyramid;
+import com.example.alarm.alarmapp.detection.IAnalysisFrame;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds all working buffers that are needed to process a single camera frame.
+ * The buffers are keyed by the frame size and the analysis level and only reallocated when one of them changes,
+ * so processing a frame in steady state constructs no mats. A change of the level only reallocates the analysis buffers. Scratch memory OpenCV functions allocate internally,
+ * e.g. the contours of the blob extraction, is not covered by the pool.
+ * The frame buffers have the full frame size, the analysis buffers the size of the analysed pyramid level.
+ */
+public class FrameBufferPool {
+    private static final Scalar ZERO = new Scalar(0);
+
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private int mAnalysisLevel = -1;
+    private int mAllocationCount = 0;
+
+    private final AnalysisPyramid mPyramid = new AnalysisPyramid();
+    private Size mFrameSize = null;
+
+    //analysis buffers
+    private int mAnalysisWidth = -1;
+    private int mAnalysisHeight = -1;
+    private byte[] mAnalysisLuma = null;
+    private Mat mAnalysisGray = null;
+    private boolean mHasAnalysisLuma = false;
+    private final AnalysisFrame mAnalysisFrame = new AnalysisFrame();
+    //the luma planes of the finer levels, allocated when they are asked for
+    private final byte[][] mLevelLumas = new byte[AnalysisPyramid.MAX_LEVEL][];
+    private Mat mDiff = null;
+
+    //frame buffers
+    private Mat mOverlayDiff = null;
+    private Mat mEmptyGray = null;
+    private Mat mRedDiff = null;
+    private Mat mGrayRgb = null;
+    private Mat mOverlay = null;
+
+    private final List<Mat> mMergeMats = new ArrayList<>(3);
+
+    /**
+     * Makes sure all buffers fit frames of the given size. Buffers are only reallocated if the size changed,
+     * if only the analysis level changed the full resolution frame buffers are kept.
+     * @param width the width of the frames that will be processed
+     * @param height the height of the frames that will be processed
+     * @param analysisLevel the pyramid level the frames are analysed at, see {@link AnalysisPyramid}
+     * @return true if the buffers had to be reallocated, the last frame is invalid in that case
+     */
+    public boolean ensureSize(int width, int height, int analysisLevel) {
+        if (width == mWidth && height == mHeight) {
+            if (analysisLevel == mAnalysisLevel) return false;
+            ensureAnalysisLevel(analysisLevel);
+            return true;
+        }
+        release();
+        mWidth = width;
+        mHeight = height;
+        mFrameSize = new Size(width, height);
+
+        mOverlayDiff = allocate(height, width, CvType.CV_8UC1);
+        mEmptyGray = allocate(height, width, CvType.CV_8UC1);
+        mEmptyGray.setTo(ZERO);
+        mRedDiff = allocate(height, width, CvType.CV_8UC3);
+        mRedDiff.setTo(ZERO);
+        mGrayRgb = allocate(height, width, CvType.CV_8UC3);
+        mOverlay = allocate(height, width, CvType.CV_8UC3);
+
+        mMergeMats.add(mOverlayDiff);
+        mMergeMats.add(mEmptyGray);
+        mMergeMats.add(mEmptyGray);
+        ensureAnalysisLevel(analysisLevel);
+        return true;
+    }
+
+    /**
+     * Reallocates the analysis buffers for the given level, the frame buffers have to exist already.
+     */
+    private void ensureAnalysisLevel(int analysisLevel) {
+        mPyramid.ensureSize(mWidth, mHeight, analysisLevel);
+        //the full resolution diff is the overlay diff, it stays with the frame buffers
+        if (mDiff != mOverlayDiff) release(mDiff);
+        mAnalysisLevel = analysisLevel;
+        mAnalysisWidth = mPyramid.getLevelWidth(analysisLevel);
+        mAnalysisHeight = mPyramid.getLevelHeight(analysisLevel);
+        mAnalysisLuma = new byte[mAnalysisWidth * mAnalysisHeight];
+        mAnalysisGray = null;
+        mHasAnalysisLuma = false;
+        //the diff can be used directly for the overlay if it has the full resolution
+        mDiff = analysisLevel == 0 ? mOverlayDiff : allocate(mAnalysisHeight, mAnalysisWidth, CvType.CV_8UC1);
+    }
+
+    /**
+     * Releases all native buffers. The pool can be reused afterwards by calling {@link #ensureSize(int, int, int)}.
+     */
+    public void release() {
+        mMergeMats.clear();
+        mPyramid.release();
+        if (mOverlayDiff != mDiff) release(mOverlayDiff);
+        mOverlayDiff = null;
+        mDiff = release(mDiff);
+        mAnalysisLuma = null;
+        mAnalysisGray = null;
+        mHasAnalysisLuma = false;
+        for (int level = 0; level < mLevelLumas.length; level++) mLevelLumas[level] = null;
+        mEmptyGray = release(mEmptyGray);
+        mRedDiff = release(mRedDiff);
+        mGrayRgb = release(mGrayRgb);
+        mOverlay = release(mOverlay);
+        mWidth = -1;
+        mHeight = -1;
+        mAnalysisLevel = -1;
+        mAnalysisWidth = -1;
+        mAnalysisHeight = -1;
+    }
+
+    /**
+     * Downscales the given full resolution gray frame to the analysis level and copies it into the luma buffer.
+     * @return the luma plane of the downscaled frame, {@link #getAnalysisWidth()} * {@link #getAnalysisHeight()} bytes
+     */
+    public byte[] toAnalysisLuma(Mat gray) {
+        return toAnalysisFrame(gray).luma();
+    }
+
+    /**
+     * Downscales the given full resolution gray frame to the analysis level.
+     * The luma plane is only copied if it is asked for.
+     * @return the downscaled frame, valid until the next call
+     */
+    public IAnalysisFrame toAnalysisFrame(Mat gray) {
+        mAnalysisGray = mPyramid.build(gray, mAnalysisLevel);
+        mHasAnalysisLuma = false;
+        return mAnalysisFrame;
+    }
+
+    private class AnalysisFrame implements IAnalysisFrame {
+        @Override
+        public Mat gray() {
+            return mAnalysisGray;
+        }
+
+        @Override
+        public byte[] luma() {
+            if (!mHasAnalysisLuma) {
+                mAnalysisGray.get(0, 0, mAnalysisLuma);
+                mHasAnalysisLuma = true;
+            }
+            return mAnalysisLuma;
+        }
+
+        @Override
+        public int width() {
+            return mAnalysisWidth;
+        }
+
+        @Override
+        public int height() {
+            return mAnalysisHeight;
+        }
+
+        @Override
+        public int level() {
+            return mAnalysisLevel;
+        }
+
+        @Override
+        public byte[] luma(int level) {
+            if (level == mAnalysisLevel) return luma();
+            if (level < 0 || level > mAnalysisLevel) throw new IllegalArgumentException("level " + level + " is not built");
+            if (mLevelLumas[level] == null) mLevelLumas[level] = new byte[width(level) * height(level)];
+            mPyramid.getLevel(level).get(0, 0, mLevelLumas[level]);
+            return mLevelLumas[level];
+        }
+
+        @Override
+        public int width(int level) {
+            return mPyramid.getLevelWidth(level);
+        }
+
+        @Override
+        public int height(int level) {
+            return mPyramid.getLevelHeight(level);
+        }
+    }
+
+    /**
+     * Renders the given analysis level diff into the full resolution red diff overlay.
+     */
+    public void updateRedDiff(byte[] diff) {
+        mDiff.put(0, 0, diff);
+        updateRedDiff();
+    }
+
+    /**
+     * Renders the analysis level diff, see {@link #getDiff()}, into the full resolution red diff overlay.
+     */
+    public void updateRedDiff() {
+        if (mOverlayDiff != mDiff) Imgproc.resize(mDiff, mOverlayDiff, mFrameSize, 0, 0, Imgproc.INTER_NEAREST);
+        //merge the diff and two empty single channel mats as different channels into a rgb mat
+        Core.merge(mMergeMats, mRedDiff);
+    }
+
+    /**
+     * @return the luma plane of the last frame passed to {@link #toAnalysisLuma(Mat)}, or of the last analysis frame
+     * whose luma plane was asked for
+     */
+    public byte[] getAnalysisLuma() {
+        return mAnalysisLuma;
+    }
+
+    public Mat getDiff() {
+        return mDiff;
+    }
+
+    public Mat getRedDiff() {
+        return mRedDiff;
+    }
+
+    public Mat getGrayRgb() {
+        return mGrayRgb;
+    }
+
+    public Mat getOverlay() {
+        return mOverlay;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getAnalysisLevel() {
+        return mAnalysisLevel;
+    }
+
+    public int getAnalysisWidth() {
+        return mAnalysisWidth;
+    }
+
+    public int getAnalysisHeight() {
+        return mAnalysisHeight;
+    }
+
+    /**
+     * @return the number of mats this pool constructed since it was created, mats constructed elsewhere aren't counted
+     */
+    public int getAllocationCount() {
+        return mAllocationCount + mPyramid.getAllocationCount();
+    }
+
+    private Mat allocate(int rows, int cols, int type) {
+        mAllocationCount++;
+        return new Mat(rows, cols, type);
+    }
+
+    private static Mat release(Mat mat) {
+        if (mat != null) mat.release();
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.alarm.alarmapp.views;
+
+import android.util.Log;
+
+import com.example.alarm.detector.replay.FrameRecordingWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the luma planes of preview frames to a file, which can be replayed with the ReplayDriver of the detector module.
+ * The camera thread only copies the plane into one of a few preallocated buffers, a background thread compresses
+ * and writes them. Frames are dropped if the writer falls behind, the camera thread never waits for the disk.
+ */
+public class FrameRecorder {
+    private static final String TAG = FrameRecorder.class.getName();
+    private static final int BUFFER_COUNT = 4;
+
+    private static class Slot {
+        final byte[] data;
+        long timestamp;
+
+        Slot(int size) {
+            data = new byte[size];
+        }
+    }
+
+    private final int mFrameSize;
+    private final FrameRecordingWriter mWriter;
+    private final ArrayBlockingQueue<Slot> mFree = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final ArrayBlockingQueue<Slot> mFilled = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final Thread mThread;
+    private volatile boolean mStopped = false;
+    private volatile int mDroppedFrames = 0;
+
+    /**
+     * Creates the file and starts the writer thread.
+     * @param width the width of the preview frames
+     * @param height the height of the preview frames
+     */
+    public FrameRecorder(File file, int width, int height) throws IOException {
+        mFrameSize = width * height;
+        mWriter = new FrameRecordingWriter(new FileOutputStream(file), width, height, mFrameSize, true);
+        for (int i = 0; i < BUFFER_COUNT; i++) mFree.add(new Slot(mFrameSize));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeFrames();
+            }
+        }, "FrameRecorder");
+        mThread.start();
+        Log.i(TAG, "Recording to " + file.getAbsolutePath());
+    }
+
+    /**
+     * Queues the luma plane of the given preview frame for writing, called from the camera thread.
+     * @param timestamp the time the frame was taken at in milliseconds
+     */
+    public void record(byte[] frame, long timestamp) {
+        if (mStopped) return;
+        Slot slot = mFree.poll();
+        if (slot == null) {
+            mDroppedFrames++;
+            return;
+        }
+        System.arraycopy(frame, 0, slot.data, 0, mFrameSize);
+        slot.timestamp = timestamp;
+        mFilled.offer(slot);
+    }
+
+    private void writeFrames() {
+        try {
+            while (!mStopped || !mFilled.isEmpty()) {
+                Slot slot = mFilled.poll(100, TimeUnit.MILLISECONDS);
+                if (slot == null) continue;
+                mWriter.write(slot.data, slot.timestamp);
+                mFree.offer(slot);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Writing the recording failed", e);
+            mStopped = true;
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Recording interrupted", e);
+        } finally {
+            try {
+                mWriter.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Closing the recording failed", e);
+            }
+        }
+        Log.i(TAG, "Recorded " + mWriter.getFrameCount() + " frames, dropped " + mDroppedFrames);
+    }
+
+    /**
+     * Writes the queued frames and closes the file, blocks until the writer thread finished.
+     */
+    public void stop() {
+        mStopped = true;
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while waiting for the writer", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isStopped() {
+        return mStopped;
+    }
+
+    /**
+     * @return the number of frames that were not recorded because the writer fell behind
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.alarm.alarmapp.views;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.alarm.detector.MotionMask;
+
+/**
+ * Persists the {@link MotionMask} of every camera, so a mounted phone keeps ignoring the same regions after a restart.
+ * The polygons are stored relative to the frame size, they stay valid when the resolution changes.
+ */
+public class MaskStore {
+    private static final String TAG = MaskStore.class.getName();
+    private static final String PREFERENCES = "masks";
+    private static final String KEY_PREFIX = "camera_";
+
+    private final SharedPreferences mPreferences;
+
+    public MaskStore(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the mask of the camera or null if there is none or it can't be read
+     */
+    public MotionMask load(int cameraIndex) {
+        String encoded = mPreferences.getString(KEY_PREFIX + cameraIndex, null);
+        if (encoded == null) return null;
+        try {
+            return MotionMask.decode(encoded);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Discarding invalid mask of camera " + cameraIndex, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param mask the mask of the camera, null to remove it
+     */
+    public void save(int cameraIndex, MotionMask mask) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        if (mask == null) editor.remove(KEY_PREFIX + cameraIndex);
+        else editor.putString(KEY_PREFIX + cameraIndex, mask.encode());
+        editor.apply();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.alarm.alarmapp.views;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.alarm.detector.CalibrationProfile;
+
+/**
+ * Persists the last {@link CalibrationProfile} of every camera, so the alarm can be re-armed with a warm start.
+ * Whether the profile still fits the scene is decided by the detector on the first frame, by its fingerprint.
+ */
+public class ProfileStore {
+    private static final String TAG = ProfileStore.class.getName();
+    private static final String PREFERENCES = "profiles";
+    private static final String KEY_PREFIX = "camera_";
+
+    private final SharedPreferences mPreferences;
+
+    public ProfileStore(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the profile of the camera or null if there is none or it can't be read
+     */
+    public CalibrationProfile load(int cameraIndex) {
+        String encoded = mPreferences.getString(KEY_PREFIX + cameraIndex, null);
+        if (encoded == null) return null;
+        try {
+            return CalibrationProfile.decode(encoded);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Discarding invalid profile of camera " + cameraIndex, e);
+            return null;
+        }
+    }
+
+    public boolean contains(int cameraIndex) {
+        return mPreferences.contains(KEY_PREFIX + cameraIndex);
+    }
+
+    /**
+     * @param profile the profile of the camera, null to remove it
+     */
+    public void save(int cameraIndex, CalibrationProfile profile) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        if (profile == null) editor.remove(KEY_PREFIX + cameraIndex);
+        else editor.putString(KEY_PREFIX + cameraIndex, profile.encode());
+        editor.apply();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.alarm.alarmapp.views;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.alarm.alarmapp.R;
+import com.example.alarm.detector.Telemetry;
+
+/**
+ * Writes the drained telemetry samples to the log, in the format the camera view used to log every frame in.
+ */
+public class TelemetryLogger implements Telemetry.ISampleSink {
+    //a tag of its own, Log.isLoggable rejects tags longer than 23 characters before API 26
+    static final String TAG = "AlarmTelemetry";
+
+    private final String mThresholdFormat;
+    private final String mAbsAvgFormat;
+    private final String mAvgFormat;
+    private final String mMaxFormat;
+    private final String mDiffFormat;
+
+    public TelemetryLogger(Context context) {
+        mThresholdFormat = context.getString(R.string.curr_alarm_threshold_val);
+        mAbsAvgFormat = context.getString(R.string.moving_diff_abs_avg_val);
+        mAvgFormat = context.getString(R.string.moving_diff_avg_val);
+        mMaxFormat = context.getString(R.string.max_diff_val);
+        mDiffFormat = context.getString(R.string.AbsDiff_val);
+    }
+
+    @Override
+    public void onSample(long timestamp, double diff, double movingAbsDiffAvg, double movingDiffAvg, double alarmThreshold,
+                         double maxDiff, boolean suspicious, boolean alarm) {
+        //the samples are only formatted if they are logged
+        if (!Log.isLoggable(TAG, Log.VERBOSE)) return;
+        Log.v(TAG,
+            String.format("onProcessedFrame:\t%d\t%s\t%s\t%s\t%s\t%s%s%s",
+                timestamp,
+                String.format(mThresholdFormat, alarmThreshold),
+                String.format(mAbsAvgFormat, movingAbsDiffAvg),
+                String.format(mAvgFormat, movingDiffAvg),
+                String.format(mMaxFormat, maxDiff),
+                String.format(mDiffFormat, diff),
+                suspicious ? "\tsuspicious" : "",
+                alarm ? "\talarm" : ""
+            )
+        );
+    }
+}
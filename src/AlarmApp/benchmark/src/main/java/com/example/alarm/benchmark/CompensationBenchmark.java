@@ -0,0 +1,76 @@
+package com.example.alarm.benchmark;
+
+import com.example.alarm.detector.IlluminationNormalizer;
+import com.example.alarm.detector.MotionDetector;
+import com.example.alarm.detector.ShakeCompensator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the compensation of camera shake and of illumination changes adds to the detection of a frame.
+ * With lights, every other frame of the loop is brightened like by a lamp, so the illumination normalizer remaps
+ * the previous frame every frame, its worst case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompensationBenchmark {
+    private static final long FRAME_INTERVAL = 250;
+
+    //the analysed resolutions of 720p and 1080p previews at the pyramid levels 1 to 3
+    @Param({"160x90", "320x180", "480x270", "640x360", "960x540"})
+    public String resolution;
+
+    @Param({"none", "shake", "illumination", "both"})
+    public String compensation;
+
+    @Param({"true", "false"})
+    public boolean lights;
+
+    private SyntheticFrames mFrames;
+    private byte[][] mBrightFrames;
+    private MotionDetector mDetector;
+    private long mTimestamp = 0;
+    private int mIndex = 0;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        mFrames = new SyntheticFrames(size[0], size[1], 32);
+        mBrightFrames = new byte[32][];
+        for (int f = 0; f < mBrightFrames.length; f++) {
+            byte[] frame = mFrames.next();
+            mBrightFrames[f] = new byte[frame.length];
+            for (int i = 0; i < frame.length; i++) mBrightFrames[f][i] = (byte) Math.min(255, (frame[i] & 0xFF) * 5 / 4 + 10);
+        }
+        mDetector = new MotionDetector();
+        if (compensation.equals("shake") || compensation.equals("both")) mDetector.setShakeCompensator(new ShakeCompensator(8));
+        if (compensation.equals("illumination") || compensation.equals("both")) mDetector.setIlluminationNormalizer(new IlluminationNormalizer());
+        mDetector.setTimeToCalibrate(0);
+        mDetector.start(0);
+    }
+
+    @Benchmark
+    public boolean detect() {
+        mTimestamp += FRAME_INTERVAL;
+        byte[] frame = mFrames.next();
+        if (lights && mIndex % 2 == 1) frame = mBrightFrames[mIndex % mBrightFrames.length];
+        mIndex++;
+        return mDetector.process(frame, mFrames.getWidth(), mFrames.getHeight(), mTimestamp);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.alarm.benchmark;
+
+import com.example.alarm.detector.DetectionScheduler;
+import com.example.alarm.detector.LumaPyramid;
+import com.example.alarm.detector.MotionDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of one preview frame delivered by a 30 fps camera: the scheduler decides if the frame gets analysed,
+ * analysed frames get their luma plane extracted from the NV21 frame and downscaled, then the detector computes the
+ * abs diff, its mean and updates the thresholds.
+ * AverageTime reports ns/frame, Throughput frames/s on one core, the gc profiler the bytes allocated per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramePipelineBenchmark {
+    private static final long PREVIEW_INTERVAL = 33;
+
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"4", "15", "30"})
+    public double analysisFps;
+
+    @Param({"true", "false"})
+    public boolean overlay;
+
+    @Param({"2"})
+    public int analysisLevel;
+
+    private SyntheticFrames mFrames;
+    private DetectionScheduler mScheduler;
+    private LumaPyramid mPyramid;
+    private MotionDetector mDetector;
+    private long mTimestamp = 0;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        mFrames = new SyntheticFrames(size[0], size[1], 32);
+        mScheduler = new DetectionScheduler(analysisFps);
+        mPyramid = new LumaPyramid();
+        mPyramid.ensureSize(size[0], size[1], analysisLevel);
+        mDetector = new MotionDetector();
+        mDetector.setTimeToCalibrate(0);
+        mDetector.setDiffOutputEnabled(overlay);
+        mDetector.start(0);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean previewFrame() {
+        byte[] frame = mFrames.next();
+        mTimestamp += PREVIEW_INTERVAL;
+        if (!mScheduler.shouldProcess(mTimestamp)) return false;
+        byte[] luma = mPyramid.build(frame, analysisLevel);
+        return mDetector.process(luma, mPyramid.getLevelWidth(analysisLevel), mPyramid.getLevelHeight(analysisLevel), mTimestamp);
+    }
+}
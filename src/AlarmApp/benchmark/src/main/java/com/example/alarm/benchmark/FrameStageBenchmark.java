@@ -0,0 +1,79 @@
+package com.example.alarm.benchmark;
+
+import com.example.alarm.detector.LumaPyramid;
+import com.example.alarm.detector.MotionDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the stages of the analysis of a single frame separately, so a regression can be attributed to a stage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameStageBenchmark {
+    private static final long FRAME_INTERVAL = 250;
+
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"0", "1", "2", "3"})
+    public int analysisLevel;
+
+    private SyntheticFrames mFrames;
+    private LumaPyramid mPyramid;
+    private MotionDetector mDetector;
+    private byte[][] mAnalysisFrames;
+    private int mIndex = 0;
+    private long mTimestamp = 0;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        mFrames = new SyntheticFrames(size[0], size[1], 32);
+        mPyramid = new LumaPyramid();
+        mPyramid.ensureSize(size[0], size[1], analysisLevel);
+        //keep downscaled copies around so the detection stage can be measured on its own
+        mAnalysisFrames = new byte[32][];
+        for (int i = 0; i < mAnalysisFrames.length; i++) {
+            mAnalysisFrames[i] = mPyramid.build(mFrames.next(), analysisLevel).clone();
+        }
+        mDetector = new MotionDetector();
+        mDetector.setTimeToCalibrate(0);
+        mDetector.start(0);
+    }
+
+    /**
+     * Extracts the luma plane of the NV21 frame at the analysis resolution.
+     */
+    @Benchmark
+    public byte[] extractLuma() {
+        return mPyramid.build(mFrames.next(), analysisLevel);
+    }
+
+    /**
+     * Computes the abs diff and its mean and updates the thresholds.
+     */
+    @Benchmark
+    public boolean detect() {
+        byte[] luma = mAnalysisFrames[mIndex];
+        mIndex = (mIndex + 1) % mAnalysisFrames.length;
+        mTimestamp += FRAME_INTERVAL;
+        return mDetector.process(luma, mPyramid.getLevelWidth(analysisLevel), mPyramid.getLevelHeight(analysisLevel), mTimestamp);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.alarm.benchmark;
+
+import com.example.alarm.detector.MotionDetector;
+import com.example.alarm.detector.MotionGrid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the detection on the mean of the whole frame with the detection per cell of a grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionGridBenchmark {
+    private static final long FRAME_INTERVAL = 250;
+
+    //the analysed resolutions of 720p and 1080p previews at the pyramid levels 1 to 3
+    @Param({"160x90", "320x180", "480x270", "640x360", "960x540"})
+    public String resolution;
+
+    @Param({"global", "8x6", "16x12"})
+    public String grid;
+
+    @Param({"true", "false"})
+    public boolean overlay;
+
+    private SyntheticFrames mFrames;
+    private MotionDetector mDetector;
+    private long mTimestamp = 0;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        mFrames = new SyntheticFrames(size[0], size[1], 32);
+        mDetector = new MotionDetector();
+        if (!grid.equals("global")) {
+            int[] cells = SyntheticFrames.parseResolution(grid);
+            mDetector.setGrid(new MotionGrid(cells[0], cells[1]));
+        }
+        mDetector.setTimeToCalibrate(0);
+        mDetector.setDiffOutputEnabled(overlay);
+        mDetector.start(0);
+    }
+
+    @Benchmark
+    public boolean detect() {
+        mTimestamp += FRAME_INTERVAL;
+        return mDetector.process(mFrames.next(), mFrames.getWidth(), mFrames.getHeight(), mTimestamp);
+    }
+}
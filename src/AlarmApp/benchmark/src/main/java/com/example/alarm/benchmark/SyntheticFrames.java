@@ -0,0 +1,68 @@
+package com.example.alarm.benchmark;
+
+import java.util.Random;
+
+/**
+ * A loop of generated NV21 camera frames: a static textured scene with sensor noise and a bright block moving through it.
+ */
+public class SyntheticFrames {
+    private final byte[][] mFrames;
+    private final int mWidth;
+    private final int mHeight;
+    private int mIndex = 0;
+
+    public SyntheticFrames(int width, int height, int count) {
+        mWidth = width;
+        mHeight = height;
+        mFrames = new byte[count][];
+        Random random = new Random(42);
+        byte[] background = new byte[width * height];
+        for (int i = 0; i < background.length; i++) {
+            background[i] = (byte) (60 + ((i % width) / 8 + (i / width) / 8) % 2 * 80 + random.nextInt(20));
+        }
+        int blockSize = height / 4;
+        for (int f = 0; f < count; f++) {
+            //luma plane followed by the interleaved chroma plane of half the size
+            byte[] frame = new byte[width * height * 3 / 2];
+            for (int i = 0; i < background.length; i++) {
+                frame[i] = (byte) ((background[i] & 0xFF) + random.nextInt(5));
+            }
+            int blockX = (width - blockSize) * f / count;
+            for (int y = height / 2; y < height / 2 + blockSize; y++) {
+                for (int x = blockX; x < blockX + blockSize; x++) {
+                    frame[y * width + x] = (byte) 240;
+                }
+            }
+            for (int i = background.length; i < frame.length; i++) {
+                frame[i] = (byte) 128;
+            }
+            mFrames[f] = frame;
+        }
+    }
+
+    /**
+     * Parses a resolution like 1280x720.
+     * @return width and height
+     */
+    public static int[] parseResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        return new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    /**
+     * @return the next NV21 frame of the loop
+     */
+    public byte[] next() {
+        byte[] frame = mFrames[mIndex];
+        mIndex = (mIndex + 1) % mFrames.length;
+        return frame;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+}
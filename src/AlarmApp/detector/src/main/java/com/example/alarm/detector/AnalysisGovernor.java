@@ -0,0 +1,217 @@
+package com.example.alarm.detector;
+
+import java.util.Locale;
+
+/**
+ * Adapts the analysis resolution and rate to the speed of the device, so the analysis takes a target share of one core.
+ * The settings form a ladder from the most to the least expensive one: first the resolution is lowered level by level
+ * at the highest rate, then the rate is halved at the lowest resolution. The cost of a setting is estimated as
+ * rate / 4^level, the number of analysed pixels per second.
+ * After every change the governor measures a number of frames before it decides again. It steps down if the measured
+ * duty cycle exceeds the target by the hysteresis, and up only if the more expensive setting is predicted to stay below
+ * the target by the hysteresis, so it doesn't oscillate between two settings.
+ * While the level is locked, e.g. because the detector's statistics only apply to the current resolution, the ladder
+ * consists of the rates at the current level.
+ */
+public class AnalysisGovernor {
+    public enum State {
+        /** measuring the duty cycle of a new setting */
+        SETTLING,
+        /** the duty cycle is within the band around the target */
+        STEADY,
+        /** even the cheapest setting exceeds the target */
+        OVER_BUDGET
+    }
+
+    private double mTargetDutyCycle = 0.25d;
+    private double mHysteresis = 0.25d;
+    private int mSettleFrames = 8;
+    private int mMinLevel = 0;
+    private int mMaxLevel = LumaPyramid.MAX_LEVEL;
+    private double mMinFps = 1d;
+    private double mMaxFps = 4d;
+    private boolean mLevelLocked = false;
+
+    //the ladder, index 0 is the most expensive setting
+    private int[] mLevels = new int[0];
+    private double[] mFps = new double[0];
+    private int mStep = 0;
+
+    private State mState = State.SETTLING;
+    private int mWindowFrames = 0;
+    private double mWindowProcessingTime = 0;
+    private double mDutyCycle = 0;
+    private int mChangeCount = 0;
+
+    /**
+     * @param targetDutyCycle the share of one core the analysis may take, e.g. 0.25 for 25%
+     */
+    public void setTargetDutyCycle(double targetDutyCycle) {
+        if (targetDutyCycle <= 0 || targetDutyCycle > 1) throw new IllegalArgumentException("the duty cycle has to be in (0, 1]: " + targetDutyCycle);
+        mTargetDutyCycle = targetDutyCycle;
+    }
+
+    /**
+     * @param hysteresis the fraction of the target the duty cycle has to exceed it by, or stay below it by, to change the setting
+     */
+    public void setHysteresis(double hysteresis) {
+        if (hysteresis < 0 || hysteresis >= 1) throw new IllegalArgumentException("the hysteresis has to be in [0, 1): " + hysteresis);
+        mHysteresis = hysteresis;
+    }
+
+    /**
+     * @param settleFrames the number of analysed frames the duty cycle is measured over before a decision
+     */
+    public void setSettleFrames(int settleFrames) {
+        if (settleFrames < 1) throw new IllegalArgumentException("at least one frame has to be measured: " + settleFrames);
+        mSettleFrames = settleFrames;
+    }
+
+    /**
+     * Sets the range of pyramid levels the governor may choose from, takes effect with {@link #reset(int, double)}.
+     */
+    public void setLevelRange(int minLevel, int maxLevel) {
+        if (minLevel < 0 || maxLevel > LumaPyramid.MAX_LEVEL || minLevel > maxLevel) throw new IllegalArgumentException("invalid level range: " + minLevel + " - " + maxLevel);
+        mMinLevel = minLevel;
+        mMaxLevel = maxLevel;
+    }
+
+    /**
+     * Sets the range of analysis rates the governor may choose from, takes effect with {@link #reset(int, double)}.
+     * Rates are halved from the maximum down to the minimum.
+     */
+    public void setFpsRange(double minFps, double maxFps) {
+        if (minFps <= 0 || minFps > maxFps) throw new IllegalArgumentException("invalid fps range: " + minFps + " - " + maxFps);
+        mMinFps = minFps;
+        mMaxFps = maxFps;
+    }
+
+    /**
+     * Keeps the current level and only lets the rate follow the processing time, or releases it again.
+     * The measurement of the current setting starts over.
+     */
+    public void setLevelLocked(boolean levelLocked) {
+        if (levelLocked == mLevelLocked) return;
+        mLevelLocked = levelLocked;
+        buildLadder(getAnalysisLevel(), getAnalysisFps());
+        startWindow();
+    }
+
+    public boolean isLevelLocked() {
+        return mLevelLocked;
+    }
+
+    /**
+     * Builds the ladder and starts at the cheapest setting that is at least as expensive as the given one.
+     * The level is unlocked.
+     */
+    public void reset(int level, double fps) {
+        mLevelLocked = false;
+        buildLadder(level, fps);
+        mChangeCount = 0;
+        mDutyCycle = 0;
+        startWindow();
+    }
+
+    private void buildLadder(int level, double fps) {
+        final int minLevel = mLevelLocked ? level : mMinLevel;
+        final int maxLevel = mLevelLocked ? level : mMaxLevel;
+        final int levelSteps = maxLevel - minLevel + 1;
+        int fpsSteps = 1;
+        for (double f = mMaxFps / 2; f > mMinFps; f /= 2) fpsSteps++;
+        if (mMinFps < mMaxFps) fpsSteps++;
+        mLevels = new int[levelSteps + fpsSteps - 1];
+        mFps = new double[mLevels.length];
+        for (int i = 0; i < levelSteps; i++) {
+            mLevels[i] = minLevel + i;
+            mFps[i] = mMaxFps;
+        }
+        for (int i = levelSteps; i < mLevels.length; i++) {
+            mLevels[i] = maxLevel;
+            mFps[i] = Math.max(mMinFps, mFps[i - 1] / 2);
+        }
+        final double cost = cost(level, fps);
+        mStep = 0;
+        while (mStep < mLevels.length - 1 && cost(mLevels[mStep + 1], mFps[mStep + 1]) >= cost) mStep++;
+    }
+
+    /**
+     * Reports the processing time of the last analysed frame.
+     * @param processingTime the processing time in milliseconds
+     * @return true if the setting changed, {@link #getAnalysisLevel()} and {@link #getAnalysisFps()} have to be applied
+     */
+    public boolean onFrameProcessed(double processingTime) {
+        mWindowProcessingTime += processingTime;
+        if (++mWindowFrames < mSettleFrames) return false;
+        mDutyCycle = mWindowProcessingTime / mWindowFrames * mFps[mStep] / 1000d;
+        startWindow();
+
+        final boolean over = mDutyCycle > mTargetDutyCycle * (1 + mHysteresis);
+        if (over && mStep < mLevels.length - 1) {
+            mStep++;
+            mChangeCount++;
+            return true;
+        }
+        if (!over && mStep > 0) {
+            //the duty cycle scales with the cost of the setting
+            double predicted = mDutyCycle * cost(mStep - 1) / cost(mStep);
+            if (predicted < mTargetDutyCycle * (1 - mHysteresis)) {
+                mStep--;
+                mChangeCount++;
+                return true;
+            }
+        }
+        mState = over ? State.OVER_BUDGET : State.STEADY;
+        return false;
+    }
+
+    private void startWindow() {
+        mState = State.SETTLING;
+        mWindowFrames = 0;
+        mWindowProcessingTime = 0;
+    }
+
+    private double cost(int step) {
+        return cost(mLevels[step], mFps[step]);
+    }
+
+    private static double cost(int level, double fps) {
+        return fps / (1 << (2 * level));
+    }
+
+    public int getAnalysisLevel() {
+        return mLevels[mStep];
+    }
+
+    public double getAnalysisFps() {
+        return mFps[mStep];
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * @return the duty cycle measured over the last completed window, 0 before the first one
+     */
+    public double getDutyCycle() {
+        return mDutyCycle;
+    }
+
+    /**
+     * @return the number of setting changes since the last {@link #reset(int, double)}
+     */
+    public int getChangeCount() {
+        return mChangeCount;
+    }
+
+    public double getTargetDutyCycle() {
+        return mTargetDutyCycle;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s, level %d at %.2f fps, duty cycle %.1f%% of %.1f%%, %d changes",
+                mState, getAnalysisLevel(), getAnalysisFps(), mDutyCycle * 100, mTargetDutyCycle * 100, mChangeCount);
+    }
+}
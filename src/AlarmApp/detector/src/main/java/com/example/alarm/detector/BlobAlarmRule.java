@@ -0,0 +1,53 @@
+package com.example.alarm.detector;
+
+/**
+ * Decides whether the blobs of a frame are worth an alarm. Blobs smaller than the minimum area are ignored,
+ * of the rest there have to be enough and they have to cover enough of the frame.
+ * Areas are fractions of the motion map, so the rule doesn't depend on the analysis resolution.
+ */
+public class BlobAlarmRule {
+    private final double mMinBlobArea;
+    private final int mMinBlobCount;
+    private final double mMinTotalArea;
+
+    /**
+     * @param minBlobArea the fraction of the frame a blob has to cover to count
+     * @param minBlobCount the number of counting blobs needed
+     * @param minTotalArea the fraction of the frame the counting blobs have to cover together
+     */
+    public BlobAlarmRule(double minBlobArea, int minBlobCount, double minTotalArea) {
+        if (minBlobArea < 0 || minTotalArea < 0 || minBlobCount < 1) throw new IllegalArgumentException("invalid rule");
+        mMinBlobArea = minBlobArea;
+        mMinBlobCount = minBlobCount;
+        mMinTotalArea = minTotalArea;
+    }
+
+    /**
+     * @return true if the blobs satisfy the rule
+     */
+    public boolean matches(MotionBlobs blobs) {
+        final double mapArea = (double) blobs.getMapWidth() * blobs.getMapHeight();
+        if (mapArea == 0) return false;
+        int count = 0;
+        double total = 0;
+        for (int i = 0; i < blobs.getCount(); i++) {
+            final double area = blobs.getArea(i) / mapArea;
+            if (area < mMinBlobArea) continue;
+            count++;
+            total += area;
+        }
+        return count >= mMinBlobCount && total >= mMinTotalArea;
+    }
+
+    public double getMinBlobArea() {
+        return mMinBlobArea;
+    }
+
+    public int getMinBlobCount() {
+        return mMinBlobCount;
+    }
+
+    public double getMinTotalArea() {
+        return mMinTotalArea;
+    }
+}
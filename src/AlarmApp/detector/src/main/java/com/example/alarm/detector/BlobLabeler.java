@@ -0,0 +1,139 @@
+package com.example.alarm.detector;
+
+/**
+ * Extracts the blobs of a motion map by labelling its 4-connected regions over a threshold, the plain java
+ * counterpart of the OpenCV extractor of the app for replays and tests. Unlike that one it doesn't smooth the
+ * regions by morphology, specks are only dropped by their area, which is their number of pixels.
+ * The labels and the statistics per label are allocated once per resolution.
+ */
+public class BlobLabeler {
+    private int mThreshold = 30;
+    private int mMinArea = 4;
+
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private int[] mLabels;
+    private int[] mParents;
+    private int[] mMinX;
+    private int[] mMinY;
+    private int[] mMaxX;
+    private int[] mMaxY;
+    private int[] mCount;
+    private long[] mSumX;
+    private long[] mSumY;
+
+    /**
+     * @param threshold the motion value a pixel has to exceed to be part of a blob
+     */
+    public void setThreshold(int threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * @param minArea the number of pixels a region needs to become a blob
+     */
+    public void setMinArea(int minArea) {
+        mMinArea = minArea;
+    }
+
+    private void ensureSize(int width, int height) {
+        if (width == mWidth && height == mHeight) return;
+        mWidth = width;
+        mHeight = height;
+        mLabels = new int[width * height];
+        //a checkerboard has the most regions, label 0 is the background
+        final int maxLabels = (width * height + 1) / 2 + 1;
+        mParents = new int[maxLabels];
+        mMinX = new int[maxLabels];
+        mMinY = new int[maxLabels];
+        mMaxX = new int[maxLabels];
+        mMaxY = new int[maxLabels];
+        mCount = new int[maxLabels];
+        mSumX = new long[maxLabels];
+        mSumY = new long[maxLabels];
+    }
+
+    /**
+     * Replaces the blobs with the ones of the given motion map.
+     * @param motion the motion map, one byte per pixel from 0 for no motion up to 255, row by row
+     */
+    public void label(byte[] motion, int width, int height, MotionBlobs blobs) {
+        ensureSize(width, height);
+        final int[] labels = mLabels;
+        final int[] parents = mParents;
+        final int threshold = mThreshold;
+        int labelCount = 0;
+        //first pass, provisional labels from the left and the upper neighbour, equivalences in a union find
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                if ((motion[i] & 0xFF) <= threshold) {
+                    labels[i] = 0;
+                    continue;
+                }
+                final int left = x > 0 ? labels[i - 1] : 0;
+                final int up = y > 0 ? labels[i - width] : 0;
+                if (left == 0 && up == 0) {
+                    labelCount++;
+                    parents[labelCount] = labelCount;
+                    labels[i] = labelCount;
+                } else if (left == 0 || up == 0) {
+                    labels[i] = left + up;
+                } else {
+                    labels[i] = left;
+                    union(left, up);
+                }
+            }
+        }
+
+        for (int l = 1; l <= labelCount; l++) {
+            mCount[l] = 0;
+            mMinX[l] = Integer.MAX_VALUE;
+            mMinY[l] = Integer.MAX_VALUE;
+            mMaxX[l] = -1;
+            mMaxY[l] = -1;
+            mSumX[l] = 0;
+            mSumY[l] = 0;
+        }
+        //second pass, the statistics are collected on the root labels
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                if (labels[i] == 0) continue;
+                final int root = find(labels[i]);
+                mCount[root]++;
+                if (x < mMinX[root]) mMinX[root] = x;
+                if (x > mMaxX[root]) mMaxX[root] = x;
+                if (y < mMinY[root]) mMinY[root] = y;
+                mMaxY[root] = y;
+                mSumX[root] += x;
+                mSumY[root] += y;
+            }
+        }
+
+        blobs.clear(width, height);
+        for (int l = 1; l <= labelCount; l++) {
+            final int count = mCount[l];
+            if (count == 0 || count < mMinArea) continue;
+            blobs.add(mMinX[l], mMinY[l], mMaxX[l] - mMinX[l] + 1, mMaxY[l] - mMinY[l] + 1, count,
+                    (double) mSumX[l] / count, (double) mSumY[l] / count);
+        }
+    }
+
+    private int find(int label) {
+        int root = label;
+        while (mParents[root] != root) root = mParents[root];
+        //compress the path
+        while (mParents[label] != root) {
+            final int next = mParents[label];
+            mParents[label] = root;
+            label = next;
+        }
+        return root;
+    }
+
+    private void union(int a, int b) {
+        final int rootA = find(a);
+        final int rootB = find(b);
+        if (rootA < rootB) mParents[rootB] = rootA;
+        else if (rootB < rootA) mParents[rootA] = rootB;
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.alarm.detector;
+
+/**
+ * Follows the blobs of consecutive frames, so something moving through the scene can be told apart from noise,
+ * which appears at random places, and from flicker, which stays in place.
+ * Every frame the pairs of a track and a blob that overlap most are matched first, blobs that don't overlap a track
+ * enough are matched to the nearest track within a distance relative to the size of the track, so small specks of
+ * noise don't chain into tracks. A track is confirmed once it was matched in enough frames and its center moved far
+ * enough away from where it started.
+ * Positions are fractions of the motion map, so tracks survive changes of the analysis resolution.
+ * The tracks are kept in preallocated primitive arrays, an update doesn't allocate.
+ */
+public class BlobTracker {
+    private final int mCapacity;
+    private final int[] mIds;
+    private final boolean[] mActive;
+    private final double[] mLeft;
+    private final double[] mTop;
+    private final double[] mRight;
+    private final double[] mBottom;
+    private final double[] mCenterX;
+    private final double[] mCenterY;
+    private final double[] mOriginX;
+    private final double[] mOriginY;
+    private final double[] mDisplacement;
+    private final int[] mHits;
+    private final int[] mMisses;
+    private final boolean[] mTrackMatched;
+    //grows with the capacity of the blobs, allocated once
+    private boolean[] mBlobMatched = new boolean[0];
+    private int mNextId = 1;
+    private int mTrackCount = 0;
+    private int mConfirmedCount = 0;
+
+    private double mMinIou = 0.1d;
+    private double mMaxDistance = 1d;
+    private int mMaxMisses = 2;
+    private int mMinHits = 3;
+    private double mMinDisplacement = 0.05d;
+
+    /**
+     * @param capacity the maximum number of tracks, blobs that find no free track are not followed
+     */
+    public BlobTracker(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity has to be positive: " + capacity);
+        mCapacity = capacity;
+        mIds = new int[capacity];
+        mActive = new boolean[capacity];
+        mLeft = new double[capacity];
+        mTop = new double[capacity];
+        mRight = new double[capacity];
+        mBottom = new double[capacity];
+        mCenterX = new double[capacity];
+        mCenterY = new double[capacity];
+        mOriginX = new double[capacity];
+        mOriginY = new double[capacity];
+        mDisplacement = new double[capacity];
+        mHits = new int[capacity];
+        mMisses = new int[capacity];
+        mTrackMatched = new boolean[capacity];
+    }
+
+    /**
+     * @param minIou the intersection over union of the boxes a blob and a track need to be matched by overlap
+     */
+    public void setMinIou(double minIou) {
+        if (minIou <= 0 || minIou > 1) throw new IllegalArgumentException("the overlap has to be in (0, 1]: " + minIou);
+        mMinIou = minIou;
+    }
+
+    /**
+     * @param maxDistance the distance of the centers, in multiples of the mean of the width and the height of the
+     *                    track, up to which a blob that doesn't overlap the track is matched to it
+     */
+    public void setMaxDistance(double maxDistance) {
+        if (maxDistance < 0) throw new IllegalArgumentException("the distance must not be negative: " + maxDistance);
+        mMaxDistance = maxDistance;
+    }
+
+    /**
+     * @param maxMisses the number of consecutive frames a track may go without a blob before it is dropped
+     */
+    public void setMaxMisses(int maxMisses) {
+        if (maxMisses < 0) throw new IllegalArgumentException("the misses must not be negative: " + maxMisses);
+        mMaxMisses = maxMisses;
+    }
+
+    /**
+     * @param minHits the number of frames a track has to be matched in to be confirmed, including the first one
+     */
+    public void setMinHits(int minHits) {
+        if (minHits < 1) throw new IllegalArgumentException("at least one hit is required: " + minHits);
+        mMinHits = minHits;
+    }
+
+    /**
+     * @param minDisplacement the distance, as a fraction of the map, the center of a track has to move away from
+     *                        where it started to be confirmed, 0 to confirm tracks that stay in place
+     */
+    public void setMinDisplacement(double minDisplacement) {
+        if (minDisplacement < 0) throw new IllegalArgumentException("the displacement must not be negative: " + minDisplacement);
+        mMinDisplacement = minDisplacement;
+    }
+
+    /**
+     * Drops all tracks.
+     */
+    public void reset() {
+        for (int t = 0; t < mCapacity; t++) mActive[t] = false;
+        mTrackCount = 0;
+        mConfirmedCount = 0;
+    }
+
+    /**
+     * Matches the blobs of the next analysed frame to the tracks.
+     * @return true if a track matched in this frame is confirmed
+     */
+    public boolean update(MotionBlobs blobs) {
+        final int blobCount = blobs.getCount();
+        if (mBlobMatched.length < blobs.getCapacity()) mBlobMatched = new boolean[blobs.getCapacity()];
+        for (int b = 0; b < blobCount; b++) mBlobMatched[b] = false;
+        for (int t = 0; t < mCapacity; t++) mTrackMatched[t] = false;
+        final double scaleX = blobs.getMapWidth() == 0 ? 0 : 1d / blobs.getMapWidth();
+        final double scaleY = blobs.getMapHeight() == 0 ? 0 : 1d / blobs.getMapHeight();
+
+        //greedy, the best scoring pair first, there are only a few tracks and blobs
+        while (true) {
+            int bestTrack = -1;
+            int bestBlob = -1;
+            double bestScore = 0;
+            for (int t = 0; t < mCapacity; t++) {
+                if (!mActive[t] || mTrackMatched[t]) continue;
+                for (int b = 0; b < blobCount; b++) {
+                    if (mBlobMatched[b]) continue;
+                    final double score = score(t, blobs, b, scaleX, scaleY);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestTrack = t;
+                        bestBlob = b;
+                    }
+                }
+            }
+            if (bestTrack == -1) break;
+            mTrackMatched[bestTrack] = true;
+            mBlobMatched[bestBlob] = true;
+            setBox(bestTrack, blobs, bestBlob, scaleX, scaleY);
+            mHits[bestTrack]++;
+            mMisses[bestTrack] = 0;
+            final double dx = mCenterX[bestTrack] - mOriginX[bestTrack];
+            final double dy = mCenterY[bestTrack] - mOriginY[bestTrack];
+            mDisplacement[bestTrack] = Math.max(mDisplacement[bestTrack], Math.sqrt(dx * dx + dy * dy));
+        }
+
+        for (int t = 0; t < mCapacity; t++) {
+            if (mActive[t] && !mTrackMatched[t] && ++mMisses[t] > mMaxMisses) {
+                mActive[t] = false;
+                mTrackCount--;
+            }
+        }
+        int free = 0;
+        for (int b = 0; b < blobCount; b++) {
+            if (mBlobMatched[b]) continue;
+            while (free < mCapacity && mActive[free]) free++;
+            if (free == mCapacity) break;
+            startTrack(free, blobs, b, scaleX, scaleY);
+        }
+
+        mConfirmedCount = 0;
+        for (int t = 0; t < mCapacity; t++) {
+            if (mMisses[t] == 0 && isConfirmed(t)) mConfirmedCount++;
+        }
+        return mConfirmedCount > 0;
+    }
+
+    /**
+     * @return above 1 for pairs matched by overlap, between 0 and 1 for pairs matched by distance, 0 for no match
+     */
+    private double score(int track, MotionBlobs blobs, int blob, double scaleX, double scaleY) {
+        final double left = blobs.getLeft(blob) * scaleX;
+        final double top = blobs.getTop(blob) * scaleY;
+        final double right = (blobs.getLeft(blob) + blobs.getWidth(blob)) * scaleX;
+        final double bottom = (blobs.getTop(blob) + blobs.getHeight(blob)) * scaleY;
+        final double intersection = Math.max(0, Math.min(right, mRight[track]) - Math.max(left, mLeft[track]))
+                * Math.max(0, Math.min(bottom, mBottom[track]) - Math.max(top, mTop[track]));
+        final double union = (right - left) * (bottom - top)
+                + (mRight[track] - mLeft[track]) * (mBottom[track] - mTop[track]) - intersection;
+        final double iou = union <= 0 ? 0 : intersection / union;
+        if (iou >= mMinIou) return 1 + iou;
+        final double dx = centerX(blobs, blob, scaleX) - mCenterX[track];
+        final double dy = centerY(blobs, blob, scaleY) - mCenterY[track];
+        final double distance = Math.sqrt(dx * dx + dy * dy);
+        final double maxDistance = mMaxDistance * (mRight[track] - mLeft[track] + mBottom[track] - mTop[track]) / 2;
+        return distance < maxDistance ? 1 - distance / maxDistance : 0;
+    }
+
+    private void startTrack(int track, MotionBlobs blobs, int blob, double scaleX, double scaleY) {
+        mActive[track] = true;
+        mIds[track] = mNextId++;
+        setBox(track, blobs, blob, scaleX, scaleY);
+        mOriginX[track] = mCenterX[track];
+        mOriginY[track] = mCenterY[track];
+        mDisplacement[track] = 0;
+        mHits[track] = 1;
+        mMisses[track] = 0;
+        mTrackCount++;
+    }
+
+    private void setBox(int track, MotionBlobs blobs, int blob, double scaleX, double scaleY) {
+        mLeft[track] = blobs.getLeft(blob) * scaleX;
+        mTop[track] = blobs.getTop(blob) * scaleY;
+        mRight[track] = (blobs.getLeft(blob) + blobs.getWidth(blob)) * scaleX;
+        mBottom[track] = (blobs.getTop(blob) + blobs.getHeight(blob)) * scaleY;
+        mCenterX[track] = centerX(blobs, blob, scaleX);
+        mCenterY[track] = centerY(blobs, blob, scaleY);
+    }
+
+    //the centroids are given in pixel centers, the boxes in pixel edges
+    private static double centerX(MotionBlobs blobs, int blob, double scaleX) {
+        return (blobs.getCentroidX(blob) + 0.5d) * scaleX;
+    }
+
+    private static double centerY(MotionBlobs blobs, int blob, double scaleY) {
+        return (blobs.getCentroidY(blob) + 0.5d) * scaleY;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return the number of active tracks, including the ones that missed their blob in the last frames
+     */
+    public int getTrackCount() {
+        return mTrackCount;
+    }
+
+    /**
+     * @return the number of confirmed tracks matched in the last frame
+     */
+    public int getConfirmedCount() {
+        return mConfirmedCount;
+    }
+
+    /**
+     * @return true if the slot holds a track, slots are numbered up to {@link #getCapacity()}
+     */
+    public boolean isActive(int track) {
+        return mActive[track];
+    }
+
+    /**
+     * @return true if the track is confirmed, it may have missed its blob in the last frames
+     */
+    public boolean isConfirmed(int track) {
+        return mActive[track] && mHits[track] >= mMinHits && mDisplacement[track] >= mMinDisplacement;
+    }
+
+    /**
+     * @return the id of the track, unique since the tracker was created
+     */
+    public int getId(int track) {
+        return mIds[track];
+    }
+
+    public int getHits(int track) {
+        return mHits[track];
+    }
+
+    public int getMisses(int track) {
+        return mMisses[track];
+    }
+
+    /**
+     * @return the largest distance of the center from where the track started, as a fraction of the map
+     */
+    public double getDisplacement(int track) {
+        return mDisplacement[track];
+    }
+
+    public double getCenterX(int track) {
+        return mCenterX[track];
+    }
+
+    public double getCenterY(int track) {
+        return mCenterY[track];
+    }
+
+    public double getLeft(int track) {
+        return mLeft[track];
+    }
+
+    public double getTop(int track) {
+        return mTop[track];
+    }
+
+    public double getRight(int track) {
+        return mRight[track];
+    }
+
+    public double getBottom(int track) {
+        return mBottom[track];
+    }
+}
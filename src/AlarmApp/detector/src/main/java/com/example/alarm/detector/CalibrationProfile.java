@@ -0,0 +1,189 @@
+package com.example.alarm.detector;
+
+/**
+ * The result of a calibration, so a detector re-armed in front of the same scene can skip most of the calibration.
+ * A profile holds the moving averages of the whole frame and of the cells of the {@link MotionGrid}, the analysed
+ * resolution, the encoded {@link MotionMask} and a fingerprint of the scene: the mean luma of a coarse grid of blocks.
+ * A profile only applies to frames of the same resolution and mask whose fingerprint is close to its own.
+ * Profiles are created by {@link MotionDetector#createProfile(int)} and are immutable.
+ */
+public class CalibrationProfile {
+    public static final int FINGERPRINT_COLS = 8;
+    public static final int FINGERPRINT_ROWS = 6;
+    private static final String VERSION = "1";
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mAnalysisLevel;
+    private final String mMask;
+    private final double mAbsDiffAvg;
+    private final double mDiffAvg;
+    private final int mGridCols;
+    private final int mGridRows;
+    private final double[] mCellAbsDiffAvgs;
+    private final double[] mCellDiffAvgs;
+    private final int[] mFingerprint;
+
+    /**
+     * @param mask the encoded mask, empty without a mask
+     * @param cellAbsDiffAvgs the moving averages of the cells, empty without a grid
+     */
+    CalibrationProfile(int width, int height, int analysisLevel, String mask, double absDiffAvg, double diffAvg,
+                       int gridCols, int gridRows, double[] cellAbsDiffAvgs, double[] cellDiffAvgs, int[] fingerprint) {
+        if (cellAbsDiffAvgs.length != gridCols * gridRows || cellDiffAvgs.length != gridCols * gridRows) {
+            throw new IllegalArgumentException("the cells don't match the grid " + gridCols + "x" + gridRows);
+        }
+        if (fingerprint.length != FINGERPRINT_COLS * FINGERPRINT_ROWS) throw new IllegalArgumentException("invalid fingerprint");
+        mWidth = width;
+        mHeight = height;
+        mAnalysisLevel = analysisLevel;
+        mMask = mask;
+        mAbsDiffAvg = absDiffAvg;
+        mDiffAvg = diffAvg;
+        mGridCols = gridCols;
+        mGridRows = gridRows;
+        mCellAbsDiffAvgs = cellAbsDiffAvgs;
+        mCellDiffAvgs = cellDiffAvgs;
+        mFingerprint = fingerprint;
+    }
+
+    /**
+     * Computes the fingerprint of a frame, the mean luma of every block of a coarse grid, row by row.
+     * @param fingerprint receives FINGERPRINT_COLS * FINGERPRINT_ROWS values
+     */
+    static void fingerprint(byte[] luma, int width, int height, int[] fingerprint) {
+        for (int row = 0; row < FINGERPRINT_ROWS; row++) {
+            final int top = row * height / FINGERPRINT_ROWS;
+            final int bottom = (row + 1) * height / FINGERPRINT_ROWS;
+            for (int col = 0; col < FINGERPRINT_COLS; col++) {
+                final int left = col * width / FINGERPRINT_COLS;
+                final int right = (col + 1) * width / FINGERPRINT_COLS;
+                long sum = 0;
+                for (int y = top; y < bottom; y++) {
+                    for (int i = y * width + left; i < y * width + right; i++) sum += luma[i] & 0xFF;
+                }
+                final int pixels = (bottom - top) * (right - left);
+                fingerprint[row * FINGERPRINT_COLS + col] = pixels == 0 ? 0 : (int) (sum / pixels);
+            }
+        }
+    }
+
+    /**
+     * @return the mean absolute difference of the blocks of the fingerprint of the frame and the one of the profile
+     */
+    public double getFingerprintDistance(byte[] luma, int width, int height) {
+        final int[] fingerprint = new int[mFingerprint.length];
+        fingerprint(luma, width, height, fingerprint);
+        long sum = 0;
+        for (int i = 0; i < fingerprint.length; i++) sum += Math.abs(fingerprint[i] - mFingerprint[i]);
+        return (double) sum / fingerprint.length;
+    }
+
+    /**
+     * @return true if the profile was calibrated at the resolution, with the mask and, if there is one, the grid
+     */
+    public boolean isCompatible(int width, int height, MotionMask mask, MotionGrid grid) {
+        if (width != mWidth || height != mHeight) return false;
+        if (!mMask.equals(mask == null ? "" : mask.encode())) return false;
+        return grid == null || (grid.getCols() == mGridCols && grid.getRows() == mGridRows);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the pyramid level the profile was calibrated at, as passed to {@link MotionDetector#createProfile(int)}
+     */
+    public int getAnalysisLevel() {
+        return mAnalysisLevel;
+    }
+
+    public double getAbsDiffAvg() {
+        return mAbsDiffAvg;
+    }
+
+    public double getDiffAvg() {
+        return mDiffAvg;
+    }
+
+    int getGridCols() {
+        return mGridCols;
+    }
+
+    int getGridRows() {
+        return mGridRows;
+    }
+
+    double[] getCellAbsDiffAvgs() {
+        return mCellAbsDiffAvgs;
+    }
+
+    double[] getCellDiffAvgs() {
+        return mCellDiffAvgs;
+    }
+
+    /**
+     * @return the profile as a single line, which {@link #decode(String)} reads
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(VERSION);
+        builder.append('/').append(mWidth).append(',').append(mHeight).append(',').append(mAnalysisLevel);
+        builder.append('/').append(mAbsDiffAvg).append(',').append(mDiffAvg);
+        builder.append('/').append(mGridCols).append(',').append(mGridRows);
+        builder.append('/');
+        appendValues(builder, mCellAbsDiffAvgs);
+        builder.append('/');
+        appendValues(builder, mCellDiffAvgs);
+        builder.append('/');
+        for (int i = 0; i < mFingerprint.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(mFingerprint[i]);
+        }
+        //the mask comes last, it has separators of its own
+        builder.append('/').append(mMask);
+        return builder.toString();
+    }
+
+    private static void appendValues(StringBuilder builder, double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(values[i]);
+        }
+    }
+
+    /**
+     * @param encoded a profile as returned by {@link #encode()}
+     * @throws IllegalArgumentException if the string is malformed or of another version
+     */
+    public static CalibrationProfile decode(String encoded) {
+        String[] parts = encoded.split("/", 8);
+        if (parts.length != 8 || !parts[0].equals(VERSION)) throw new IllegalArgumentException("invalid profile: " + encoded);
+        try {
+            String[] size = parts[1].split(",");
+            String[] statistics = parts[2].split(",");
+            String[] grid = parts[3].split(",");
+            if (size.length != 3 || statistics.length != 2 || grid.length != 2) throw new IllegalArgumentException("invalid profile: " + encoded);
+            String[] fingerprintValues = parts[6].split(",");
+            int[] fingerprint = new int[fingerprintValues.length];
+            for (int i = 0; i < fingerprint.length; i++) fingerprint[i] = Integer.parseInt(fingerprintValues[i]);
+            return new CalibrationProfile(Integer.parseInt(size[0]), Integer.parseInt(size[1]), Integer.parseInt(size[2]), parts[7],
+                    Double.parseDouble(statistics[0]), Double.parseDouble(statistics[1]),
+                    Integer.parseInt(grid[0]), Integer.parseInt(grid[1]), parseValues(parts[4]), parseValues(parts[5]), fingerprint);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid profile: " + encoded, e);
+        }
+    }
+
+    private static double[] parseValues(String encoded) {
+        if (encoded.isEmpty()) return new double[0];
+        String[] values = encoded.split(",");
+        double[] parsed = new double[values.length];
+        for (int i = 0; i < values.length; i++) parsed[i] = Double.parseDouble(values[i]);
+        return parsed;
+    }
+}
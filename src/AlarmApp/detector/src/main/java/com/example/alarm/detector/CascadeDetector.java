@@ -0,0 +1,170 @@
+package com.example.alarm.detector;
+
+/**
+ * A two stage detection. A cheap trigger stage analyses every frame at a low resolution. Only when it sees a
+ * suspicious frame, a costlier confirmation stage scores the following frames per cell of a grid at a higher
+ * resolution, and the alarm triggers if enough of them exceed their thresholds.
+ * A transient change, like a flash, exceeds the thresholds in two frames: when it appears and when it disappears,
+ * so by default three confirmed frames are required.
+ * Between events the confirmation stage only analyses a frame per maintenance interval to keep its moving averages,
+ * which are weighted by time, up to date. During the calibration both stages analyse every frame.
+ *
+ * Every frame is first passed to {@link #trigger(byte[], int, int, long)}, if it returns true the higher resolution
+ * plane of the same frame has to be passed to {@link #confirm(byte[], int, int, long)}.
+ */
+public class CascadeDetector {
+    private final MotionDetector mTrigger = new MotionDetector();
+    private final MotionDetector mConfirmation = new MotionDetector();
+    private MotionDetector.IMotionDetectorListener mListener = null;
+
+    private int mConfirmFrames = 8;
+    private int mMinConfirmedFrames = 3;
+    private long mMaintenanceInterval = 1000;
+
+    private int mWindowFramesLeft = 0;
+    private int mConfirmedFrames = 0;
+    private long mLastConfirmedAt = -1;
+    private boolean mTriggered = false;
+    private boolean mAlarm = false;
+    private long mFrameCount = 0;
+    private long mConfirmationCount = 0;
+
+    public CascadeDetector() {
+        mConfirmation.setGrid(new MotionGrid(8, 6));
+        //the confirmation stage freezes its statistics during an event, the trigger only has to find its onset,
+        //frozen it would stay suspicious and keep the confirmation stage analysing every frame of the event
+        mTrigger.setFreezeTimes(0, 0);
+        //the alarm is decided here, the stages only report their state
+        mConfirmation.setListener(new MotionDetector.IMotionDetectorListener() {
+            @Override
+            public void onCalibrating() {
+                if (mListener != null) mListener.onCalibrating();
+            }
+
+            @Override
+            public void onRun() {
+                if (mListener != null) mListener.onRun();
+            }
+
+            @Override
+            public void onAlarm() {
+            }
+        });
+    }
+
+    public void setListener(MotionDetector.IMotionDetectorListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return the low resolution stage, which analyses every frame and fires on suspicious frames
+     */
+    public MotionDetector getTrigger() {
+        return mTrigger;
+    }
+
+    /**
+     * @return the high resolution stage, which scores the frames after the trigger fired per cell of a grid
+     */
+    public MotionDetector getConfirmation() {
+        return mConfirmation;
+    }
+
+    /**
+     * @param confirmFrames the number of frames the confirmation stage analyses after the trigger fired
+     */
+    public void setConfirmFrames(int confirmFrames) {
+        if (confirmFrames < 1) throw new IllegalArgumentException("at least one frame has to be confirmed: " + confirmFrames);
+        mConfirmFrames = confirmFrames;
+    }
+
+    /**
+     * @param minConfirmedFrames the number of frames in a confirmation window that have to exceed the thresholds
+     */
+    public void setMinConfirmedFrames(int minConfirmedFrames) {
+        if (minConfirmedFrames < 1) throw new IllegalArgumentException("at least one frame has to be confirmed: " + minConfirmedFrames);
+        mMinConfirmedFrames = minConfirmedFrames;
+    }
+
+    /**
+     * @param maintenanceInterval the time in milliseconds between the frames the confirmation stage analyses between events
+     */
+    public void setMaintenanceInterval(long maintenanceInterval) {
+        mMaintenanceInterval = maintenanceInterval;
+    }
+
+    public void setTimeToCalibrate(long timeToCalibrate) {
+        mTrigger.setTimeToCalibrate(timeToCalibrate);
+        mConfirmation.setTimeToCalibrate(timeToCalibrate);
+    }
+
+    public void start(long timestamp) {
+        mFrameCount = 0;
+        mConfirmationCount = 0;
+        mWindowFramesLeft = 0;
+        mConfirmedFrames = 0;
+        mLastConfirmedAt = -1;
+        mTrigger.start(timestamp);
+        mConfirmation.start(timestamp);
+    }
+
+    public void stop() {
+        mTrigger.stop();
+        mConfirmation.stop();
+    }
+
+    public MotionDetector.State getState() {
+        return mConfirmation.getState();
+    }
+
+    /**
+     * Analyses the low resolution plane of the next frame.
+     * @return true if the confirmation stage has to analyse the high resolution plane of the same frame
+     */
+    public boolean trigger(byte[] luma, int width, int height, long timestamp) {
+        mAlarm = false;
+        mTrigger.process(luma, width, height, timestamp);
+        if (mTrigger.getState() == MotionDetector.State.IDLE) return false;
+        mFrameCount++;
+        mTriggered = mTrigger.isSuspicious();
+        if (mTriggered) mWindowFramesLeft = mConfirmFrames;
+        if (mWindowFramesLeft > 0) {
+            mWindowFramesLeft--;
+            return true;
+        }
+        mConfirmedFrames = 0;
+        return mConfirmation.getState() == MotionDetector.State.CALIBRATING
+                || mLastConfirmedAt == -1 || timestamp - mLastConfirmedAt >= mMaintenanceInterval;
+    }
+
+    /**
+     * Analyses the high resolution plane of the frame last passed to {@link #trigger(byte[], int, int, long)}.
+     * @return true if the frame triggered the alarm
+     */
+    public boolean confirm(byte[] luma, int width, int height, long timestamp) {
+        mLastConfirmedAt = timestamp;
+        mConfirmationCount++;
+        if (mConfirmation.process(luma, width, height, timestamp)) mConfirmedFrames++;
+        mAlarm = mConfirmedFrames >= mMinConfirmedFrames && mConfirmation.isAlarm();
+        if (mAlarm && mListener != null) mListener.onAlarm();
+        return mAlarm;
+    }
+
+    public boolean isAlarm() {
+        return mAlarm;
+    }
+
+    /**
+     * @return true if the trigger stage fired on the last frame
+     */
+    public boolean isTriggered() {
+        return mTriggered;
+    }
+
+    /**
+     * @return the share of the analysed frames the confirmation stage analysed too
+     */
+    public double getConfirmationRatio() {
+        return mFrameCount == 0 ? 0 : (double) mConfirmationCount / mFrameCount;
+    }
+}
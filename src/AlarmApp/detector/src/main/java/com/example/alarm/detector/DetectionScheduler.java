@@ -0,0 +1,147 @@
+package com.example.alarm.detector;
+
+/**
+ * Decides which of the delivered preview frames get analysed, so the analysis rate is independent of the preview rate.
+ * All timestamps are in milliseconds of a monotonic clock.
+ */
+public class DetectionScheduler {
+    private static final double PROCESSING_TIME_SMOOTHING = 0.2d;
+
+    /**
+     * FIXED_RATE samples frames at the configured analysis rate.
+     * ADAPTIVE additionally stretches the interval so the analysis doesn't take more than the configured load.
+     * BURST behaves like ADAPTIVE but switches to the burst rate for a while after {@link #onSuspicion(long)}.
+     */
+    public enum Mode {
+        FIXED_RATE, ADAPTIVE, BURST
+    }
+
+    private Mode mMode = Mode.FIXED_RATE;
+    private double mAnalysisFps;
+    private double mBurstFps = 15d;
+    private long mBurstDuration = 2000;
+    private double mMaxLoad = 0.25d;
+
+    private long mNextFrameDueAt = -1;
+    private long mLastFrameAt = -1;
+    private long mLastInterval = 0;
+    private long mBurstUntil = -1;
+    private double mAvgProcessingTime = 0d;
+
+    public DetectionScheduler(double analysisFps) {
+        setAnalysisFps(analysisFps);
+    }
+
+    /**
+     * Checks if the frame delivered at the given time should be analysed.
+     * If true is returned the frame counts as analysed and {@link #getLastInterval()} returns the time since the previous one.
+     * @param now the time the frame was delivered at
+     * @return true if the frame should be analysed
+     */
+    public boolean shouldProcess(long now) {
+        long interval = getCurrentInterval(now);
+        if (mNextFrameDueAt != -1 && now < mNextFrameDueAt) return false;
+
+        //keep the phase if we are on time, resync if we fell behind by more than one interval
+        if (mNextFrameDueAt == -1 || now - mNextFrameDueAt >= interval) mNextFrameDueAt = now + interval;
+        else mNextFrameDueAt += interval;
+
+        mLastInterval = mLastFrameAt == -1 ? 0 : now - mLastFrameAt;
+        mLastFrameAt = now;
+        return true;
+    }
+
+    /**
+     * Reports how long the analysis of the last sampled frame took. Used by the ADAPTIVE and BURST mode.
+     * @param processingTime the processing time in milliseconds
+     */
+    public void onFrameProcessed(double processingTime) {
+        if (mAvgProcessingTime == 0d) mAvgProcessingTime = processingTime;
+        else mAvgProcessingTime += (processingTime - mAvgProcessingTime) * PROCESSING_TIME_SMOOTHING;
+    }
+
+    /**
+     * Reports that the last analysed frame looked suspicious. In BURST mode the following frames are analysed at the burst rate.
+     * @param now the time the suspicious frame was delivered at
+     */
+    public void onSuspicion(long now) {
+        if (mMode != Mode.BURST) return;
+        boolean wasBursting = isBursting(now);
+        mBurstUntil = now + mBurstDuration;
+        //don't wait for the rest of the slow interval
+        if (!wasBursting && mNextFrameDueAt != -1) mNextFrameDueAt = Math.min(mNextFrameDueAt, now + getCurrentInterval(now));
+    }
+
+    /**
+     * Forgets all timing information, the next frame will be analysed.
+     */
+    public void reset() {
+        mNextFrameDueAt = -1;
+        mLastFrameAt = -1;
+        mLastInterval = 0;
+        mBurstUntil = -1;
+        mAvgProcessingTime = 0d;
+    }
+
+    /**
+     * @return the time between the last two analysed frames in milliseconds, 0 if only one frame was analysed
+     */
+    public long getLastInterval() {
+        return mLastInterval;
+    }
+
+    /**
+     * @return the target time between two analysed frames in milliseconds at the given time
+     */
+    public long getCurrentInterval(long now) {
+        double fps = isBursting(now) ? Math.max(mBurstFps, mAnalysisFps) : mAnalysisFps;
+        double interval = 1000d / fps;
+        if (mMode != Mode.FIXED_RATE) {
+            interval = Math.max(interval, mAvgProcessingTime / mMaxLoad);
+        }
+        return Math.round(interval);
+    }
+
+    public boolean isBursting(long now) {
+        return mMode == Mode.BURST && now < mBurstUntil;
+    }
+
+    public double getAverageProcessingTime() {
+        return mAvgProcessingTime;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mMode = mode;
+        mBurstUntil = -1;
+    }
+
+    public double getAnalysisFps() {
+        return mAnalysisFps;
+    }
+
+    public void setAnalysisFps(double analysisFps) {
+        if (analysisFps <= 0) throw new IllegalArgumentException("analysisFps has to be positive: " + analysisFps);
+        this.mAnalysisFps = analysisFps;
+    }
+
+    public void setBurstFps(double burstFps) {
+        if (burstFps <= 0) throw new IllegalArgumentException("burstFps has to be positive: " + burstFps);
+        this.mBurstFps = burstFps;
+    }
+
+    public void setBurstDuration(long burstDuration) {
+        this.mBurstDuration = burstDuration;
+    }
+
+    /**
+     * @param maxLoad the fraction of the time the analysis may take in ADAPTIVE and BURST mode, e.g. 0.25 for 25%
+     */
+    public void setMaxLoad(double maxLoad) {
+        if (maxLoad <= 0 || maxLoad > 1) throw new IllegalArgumentException("maxLoad has to be in (0, 1]: " + maxLoad);
+        this.mMaxLoad = maxLoad;
+    }
+}
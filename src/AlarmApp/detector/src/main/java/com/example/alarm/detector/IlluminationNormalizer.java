@@ -0,0 +1,130 @@
+package com.example.alarm.detector;
+
+/**
+ * Removes global changes of the illumination, e.g. a lamp switched on, before two frames are differenced.
+ * The previous frame is mapped to the mean and the standard deviation of the current frame by a gain and an offset,
+ * applied through a lookup table. A change of the light scales and shifts all pixels alike and is removed this way,
+ * while a moving object only changes the pixels it covers.
+ * The cost per frame is a pass over both frames to build their histograms, which give the statistics, and a pass
+ * to remap the previous frame if the illumination changed by more than the noise.
+ * Mapping the previous frame scales its noise by the gain as well. The current frame can be mapped to the illumination
+ * of the previous one instead, so the frame of the higher contrast is always scaled down, which attenuates its noise.
+ */
+public class IlluminationNormalizer {
+    private double mMaxGain = 4d;
+    private double mMinGainChange = 0.02d;
+    private double mMinOffset = 1d;
+
+    private final byte[] mTable = new byte[256];
+    private final int[] mPreviousHistogram = new int[256];
+    private final int[] mCurrentHistogram = new int[256];
+    private double mGain = 1d;
+    private double mOffset = 0d;
+
+    /**
+     * @param maxGain the largest factor the contrast of the previous frame is scaled by, and the inverse the smallest
+     */
+    public void setMaxGain(double maxGain) {
+        if (maxGain < 1) throw new IllegalArgumentException("the gain has to be at least 1: " + maxGain);
+        mMaxGain = maxGain;
+    }
+
+    /**
+     * @param minGainChange the relative change of the contrast, below which the contrast is considered unchanged
+     * @param minOffset the change of the mean brightness, below which the brightness is considered unchanged
+     */
+    public void setMinChange(double minGainChange, double minOffset) {
+        mMinGainChange = minGainChange;
+        mMinOffset = minOffset;
+    }
+
+    /**
+     * Maps the previous frame to the illumination of the current one.
+     * @param normalized receives the normalized previous frame, at least pixels bytes
+     * @return true if the illumination changed and normalized holds the previous frame, false if it is unchanged
+     */
+    public boolean normalize(byte[] previous, byte[] current, int pixels, byte[] normalized) {
+        if (!measure(previous, current, pixels)) return false;
+        mapToCurrent(previous, pixels, normalized);
+        return true;
+    }
+
+    /**
+     * Measures the change of the illumination from the previous to the current frame, see {@link #getGain()} and
+     * {@link #getOffset()}, without mapping either frame.
+     * @return true if the illumination changed, false if it is unchanged
+     */
+    public boolean measure(byte[] previous, byte[] current, int pixels) {
+        final int[] previousHistogram = mPreviousHistogram;
+        final int[] currentHistogram = mCurrentHistogram;
+        for (int v = 0; v < 256; v++) {
+            previousHistogram[v] = 0;
+            currentHistogram[v] = 0;
+        }
+        for (int i = 0; i < pixels; i++) {
+            previousHistogram[previous[i] & 0xFF]++;
+            currentHistogram[current[i] & 0xFF]++;
+        }
+        long previousSum = 0, previousSquares = 0, currentSum = 0, currentSquares = 0;
+        for (int v = 0; v < 256; v++) {
+            previousSum += (long) previousHistogram[v] * v;
+            previousSquares += (long) previousHistogram[v] * v * v;
+            currentSum += (long) currentHistogram[v] * v;
+            currentSquares += (long) currentHistogram[v] * v * v;
+        }
+        final double previousMean = (double) previousSum / pixels;
+        final double currentMean = (double) currentSum / pixels;
+        final double previousDeviation = Math.sqrt(Math.max(0, (double) previousSquares / pixels - previousMean * previousMean));
+        final double currentDeviation = Math.sqrt(Math.max(0, (double) currentSquares / pixels - currentMean * currentMean));
+        double gain = previousDeviation == 0 ? 1 : currentDeviation / previousDeviation;
+        gain = Math.max(1 / mMaxGain, Math.min(mMaxGain, gain));
+        if (Math.abs(gain - 1) < mMinGainChange && Math.abs(currentMean - previousMean) < mMinOffset) {
+            mGain = 1;
+            mOffset = 0;
+            return false;
+        }
+        mGain = gain;
+        mOffset = currentMean - gain * previousMean;
+        return true;
+    }
+
+    /**
+     * Maps the previous frame to the illumination of the current one of the last {@link #measure(byte[], byte[], int)}.
+     * @param normalized receives the normalized previous frame, at least pixels bytes
+     */
+    public void mapToCurrent(byte[] previous, int pixels, byte[] normalized) {
+        map(previous, pixels, normalized, mGain, mOffset);
+    }
+
+    /**
+     * Maps the current frame to the illumination of the previous one of the last {@link #measure(byte[], byte[], int)}.
+     * @param normalized receives the normalized current frame, at least pixels bytes
+     */
+    public void mapToPrevious(byte[] current, int pixels, byte[] normalized) {
+        map(current, pixels, normalized, 1 / mGain, -mOffset / mGain);
+    }
+
+    private void map(byte[] frame, int pixels, byte[] normalized, double gain, double offset) {
+        final byte[] table = mTable;
+        for (int v = 0; v < 256; v++) {
+            table[v] = (byte) Math.max(0, Math.min(255, (int) Math.round(gain * v + offset)));
+        }
+        for (int i = 0; i < pixels; i++) {
+            normalized[i] = table[frame[i] & 0xFF];
+        }
+    }
+
+    /**
+     * @return the factor the contrast of the previous frame was scaled by in the last normalization, 1 if unchanged
+     */
+    public double getGain() {
+        return mGain;
+    }
+
+    /**
+     * @return the brightness added to the scaled previous frame in the last normalization, 0 if unchanged
+     */
+    public double getOffset() {
+        return mOffset;
+    }
+}
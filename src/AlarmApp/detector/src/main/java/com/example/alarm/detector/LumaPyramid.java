@@ -0,0 +1,77 @@
+package com.example.alarm.detector;
+
+/**
+ * A pyramid of a luma plane with preallocated levels, the plain java counterpart of the OpenCV pyramid in the app.
+ * Level 0 is the plane itself, every further level halves the resolution by averaging 2x2 blocks.
+ * The luma plane of a NV21 or YV12 frame is its first width * height bytes, so camera frames can be passed in directly.
+ */
+public class LumaPyramid {
+    public static final int MAX_LEVEL = 3;
+
+    private final byte[][] mLevels = new byte[MAX_LEVEL + 1][];
+    private final int[] mWidths = new int[MAX_LEVEL + 1];
+    private final int[] mHeights = new int[MAX_LEVEL + 1];
+    private int mLevelCount = 0;
+
+    /**
+     * Makes sure the levels up to the given one exist for planes of the given size.
+     * @return true if the levels had to be reallocated
+     */
+    public boolean ensureSize(int width, int height, int maxLevel) {
+        if (maxLevel < 0 || maxLevel > MAX_LEVEL) throw new IllegalArgumentException("level has to be in [0, " + MAX_LEVEL + "]: " + maxLevel);
+        if (mLevelCount > maxLevel && width == mWidths[0] && height == mHeights[0]) return false;
+        mLevelCount = maxLevel + 1;
+        mWidths[0] = width;
+        mHeights[0] = height;
+        for (int level = 1; level < mLevelCount; level++) {
+            mWidths[level] = (mWidths[level - 1] + 1) / 2;
+            mHeights[level] = (mHeights[level - 1] + 1) / 2;
+            mLevels[level] = new byte[mWidths[level] * mHeights[level]];
+        }
+        return true;
+    }
+
+    /**
+     * Builds the pyramid for the given plane up to the given level.
+     * Level 0 only references the plane, so it is only valid as long as the plane is.
+     * @return the plane of the requested level
+     */
+    public byte[] build(byte[] luma, int level) {
+        if (level >= mLevelCount) throw new IllegalArgumentException("level " + level + " is not allocated");
+        mLevels[0] = luma;
+        for (int i = 1; i <= level; i++) {
+            downscale(mLevels[i - 1], mWidths[i - 1], mHeights[i - 1], mLevels[i], mWidths[i], mHeights[i]);
+        }
+        return mLevels[level];
+    }
+
+    /**
+     * Halves the resolution by averaging 2x2 blocks, odd last rows and columns are repeated.
+     */
+    static void downscale(byte[] src, int srcWidth, int srcHeight, byte[] dst, int dstWidth, int dstHeight) {
+        for (int y = 0; y < dstHeight; y++) {
+            int row0 = 2 * y * srcWidth;
+            int row1 = Math.min(2 * y + 1, srcHeight - 1) * srcWidth;
+            int dstRow = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                int col0 = 2 * x;
+                int col1 = Math.min(2 * x + 1, srcWidth - 1);
+                int sum = (src[row0 + col0] & 0xFF) + (src[row0 + col1] & 0xFF)
+                        + (src[row1 + col0] & 0xFF) + (src[row1 + col1] & 0xFF);
+                dst[dstRow + x] = (byte) ((sum + 2) >> 2);
+            }
+        }
+    }
+
+    public byte[] getLevel(int level) {
+        return mLevels[level];
+    }
+
+    public int getLevelWidth(int level) {
+        return mWidths[level];
+    }
+
+    public int getLevelHeight(int level) {
+        return mHeights[level];
+    }
+}
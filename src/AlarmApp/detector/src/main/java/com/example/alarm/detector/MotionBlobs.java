@@ -0,0 +1,128 @@
+package com.example.alarm.detector;
+
+/**
+ * The connected regions of motion in a frame, kept in preallocated primitive arrays, so filling it doesn't allocate.
+ * Coordinates are pixels of the motion map the blobs were extracted from, see {@link #getMapWidth()}.
+ * If more blobs are added than fit, the smallest ones are dropped.
+ */
+public class MotionBlobs {
+    private final int mCapacity;
+    private final int[] mLeft;
+    private final int[] mTop;
+    private final int[] mWidth;
+    private final int[] mHeight;
+    private final double[] mArea;
+    private final double[] mCentroidX;
+    private final double[] mCentroidY;
+    private int mCount = 0;
+    private int mMapWidth = 0;
+    private int mMapHeight = 0;
+
+    /**
+     * @param capacity the maximum number of blobs per frame
+     */
+    public MotionBlobs(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity has to be positive: " + capacity);
+        mCapacity = capacity;
+        mLeft = new int[capacity];
+        mTop = new int[capacity];
+        mWidth = new int[capacity];
+        mHeight = new int[capacity];
+        mArea = new double[capacity];
+        mCentroidX = new double[capacity];
+        mCentroidY = new double[capacity];
+    }
+
+    /**
+     * Removes all blobs.
+     * @param mapWidth the width of the motion map the next blobs are extracted from
+     * @param mapHeight the height of the motion map
+     */
+    public void clear(int mapWidth, int mapHeight) {
+        mCount = 0;
+        mMapWidth = mapWidth;
+        mMapHeight = mapHeight;
+    }
+
+    /**
+     * Adds a blob, if all slots are taken it replaces the smallest blob if that is smaller.
+     * @return false if the blob was dropped
+     */
+    public boolean add(int left, int top, int width, int height, double area, double centroidX, double centroidY) {
+        int index = mCount;
+        if (mCount == mCapacity) {
+            index = 0;
+            for (int i = 1; i < mCount; i++) {
+                if (mArea[i] < mArea[index]) index = i;
+            }
+            if (mArea[index] >= area) return false;
+        } else {
+            mCount++;
+        }
+        mLeft[index] = left;
+        mTop[index] = top;
+        mWidth[index] = width;
+        mHeight[index] = height;
+        mArea[index] = area;
+        mCentroidX[index] = centroidX;
+        mCentroidY[index] = centroidY;
+        return true;
+    }
+
+    /**
+     * Copies all blobs of another container.
+     */
+    public void copyFrom(MotionBlobs other) {
+        clear(other.mMapWidth, other.mMapHeight);
+        for (int i = 0; i < other.mCount; i++) {
+            add(other.mLeft[i], other.mTop[i], other.mWidth[i], other.mHeight[i], other.mArea[i], other.mCentroidX[i], other.mCentroidY[i]);
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getLeft(int blob) {
+        return mLeft[blob];
+    }
+
+    public int getTop(int blob) {
+        return mTop[blob];
+    }
+
+    public int getWidth(int blob) {
+        return mWidth[blob];
+    }
+
+    public int getHeight(int blob) {
+        return mHeight[blob];
+    }
+
+    /**
+     * @return the area of the blob in pixels of the motion map
+     */
+    public double getArea(int blob) {
+        return mArea[blob];
+    }
+
+    public double getCentroidX(int blob) {
+        return mCentroidX[blob];
+    }
+
+    public double getCentroidY(int blob) {
+        return mCentroidY[blob];
+    }
+
+    public int getMapWidth() {
+        return mMapWidth;
+    }
+
+    public int getMapHeight() {
+        return mMapHeight;
+    }
+}
@@ -0,0 +1,661 @@
+package com.example.alarm.detector;
+
+/**
+ * The movement detection. It compares every analysed luma plane with the previous one and triggers the alarm
+ * if the mean absolute difference exceeds the moving average by a multiple of the moving deviation.
+ * With a {@link MotionGrid} the same rule is applied per cell of the grid instead of the whole frame.
+ * With a {@link MotionMask} only the pixels the mask includes are scored.
+ * With a {@link ShakeCompensator} the previous frame is aligned to the current one before they are differenced,
+ * with an {@link IlluminationNormalizer} it is mapped to the illumination of the current one.
+ * The detector doesn't depend on android or OpenCV, frames are plain 8 bit luma planes with a timestamp in milliseconds.
+ * The timestamps have to come from a monotonic clock, they drive the calibration and the moving averages,
+ * which are {@link MovingStatistics} with a time constant, so the thresholds don't depend on the frame rate.
+ * A frame of another resolution than the previous one starts the calibration over, the statistics don't apply to it.
+ * Optionally the threshold of the whole frame is derived from quantiles of the difference during the calibration in a
+ * {@link QuantileHistogram} instead, which a single spike can't skew.
+ * A {@link CalibrationProfile} of a previous calibration lets a restart in front of the same scene skip most of the
+ * calibration: the detector continues with its statistics and only verifies them for a short time.
+ * While RUNNING the statistics the thresholds are based on are frozen during a suspected event, which starts with an
+ * alarm and lasts while the frames stay suspicious, so the event isn't absorbed into them. Fast moving averages keep
+ * following the scene meanwhile, if the event lasts longer than the maximum freeze time the scene changed for good,
+ * e.g. a parked car, and the detector continues with them instead.
+ */
+public class MotionDetector {
+    public enum State {
+        IDLE, CALIBRATING, RUNNING
+    }
+
+    public interface IMotionDetectorListener {
+        void onCalibrating();
+        void onRun();
+        void onAlarm();
+    }
+
+    //the resolution of the quantiles of the difference, 0.001 absolute below 1, 0.1 % of the value above
+    private static final double QUANTILE_RESOLUTION = 0.001d;
+
+    private long mTimeToCalibrate = 10000;
+    //the statistics stay frozen for this time after the last suspicious frame, but at most for the max freeze time
+    private long mFreezeHoldTime = 2000;
+    private long mMaxFreezeTime = 30000;
+    //the time constant of the fast moving averages, which follow the scene while the statistics are frozen
+    private double mFastAverageOverTime = 1000d;
+    //a warm start runs for this time before the detector switches to RUNNING
+    private long mVerificationTime = 2000;
+    //the largest distance of the fingerprint of the scene from the one of a profile that still allows a warm start
+    private double mMaxFingerprintDistance = 12d;
+    private double mAlarmThreshold = 6d;
+    //the time constant of the moving averages, which equals 25 frames at the designed analysis rate of 4 fps
+    private double mAverageOverTime = 6250d;
+    //frames exceeding the average by this fraction of the alarm margin count as suspicious
+    private double mSuspicionThreshold = 0.5d;
+    //the sliding window of the statistics of the whole frame, applied on the next start
+    private volatile long mSlidingWindowTime = 0;
+    private volatile int mSlidingWindowCapacity = 0;
+    //the quantile threshold of the whole frame, 0 to use the moving averages, applied on the next start
+    private volatile double mQuantile = 0;
+    private volatile double mQuantileMultiple = 1d;
+    private boolean mDiffOutputEnabled = true;
+
+    private volatile State mState = State.IDLE;
+    private volatile long mCalibratingStartedAt = 0;
+    private volatile boolean mResetRequested = false;
+    private volatile CalibrationProfile mRequestedProfile = null;
+    //the profile of the warm start until the first frame was checked against it
+    private CalibrationProfile mProfile = null;
+    private volatile boolean mWarmStart = false;
+    private IMotionDetectorListener mListener = null;
+    private Telemetry mTelemetry = null;
+    private volatile MotionGrid mGrid = null;
+    private volatile MotionMask mMask = null;
+    private volatile ShakeCompensator mShakeCompensator = null;
+    private volatile IlluminationNormalizer mIlluminationNormalizer = null;
+    private final SummedAreaTable mTable = new SummedAreaTable();
+    private final MovingStatistics mStatistics = new MovingStatistics(mAverageOverTime);
+    private final MovingStatistics mFastStatistics = new MovingStatistics(mFastAverageOverTime);
+    //the time of the first and the last suspicious frame of the event the statistics are frozen for, -1 without one
+    private long mFrozenSince = -1;
+    private long mLastSuspiciousAt = -1;
+    //the time the statistics were seeded, an alarm only freezes them once they have the history of a time constant
+    //of both moving averages behind them, the fast ones to follow the event and the others to settle their deviation
+    private long mBaselineSince = -1;
+    //the median and the upper quantile of the difference, allocated when the quantile threshold is enabled
+    private QuantileHistogram mQuantiles = null;
+
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private byte[] mLastFrame = null;
+    private byte[] mDiff = null;
+    //the previous frame shifted by the shake compensator, allocated when it is needed first
+    private byte[] mAligned = null;
+    //the previous frame mapped to the illumination of the current one, allocated when it is needed first
+    private byte[] mNormalized = null;
+    private boolean mHasLastFrame = false;
+    private boolean mHasDiff = false;
+    private long mLastTimestamp = -1;
+
+    private double mMovingAbsDiffAvg = -1d;
+    private double mMovingDiffAvg = -1d;
+    private double mMaxDiff = 0;
+    private double mLastDiff = 0;
+    private double mCurrAlarmThreshold = 0;
+    //the suspicion threshold of the whole frame after the last frame, which the next frame is checked against
+    private double mCurrSuspicionThreshold = Double.MAX_VALUE;
+    private boolean mAlarm = false;
+    private boolean mSuspicious = false;
+
+    public void setListener(IMotionDetectorListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * @param telemetry receives the values of every analysed frame its level accepts, null to record nothing
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        this.mTelemetry = telemetry;
+    }
+
+    /**
+     * @param grid scores the motion per cell instead of the whole frame, null to use the mean of the whole frame
+     * @throws IllegalStateException if the quantile threshold is enabled, it only applies to the whole frame
+     */
+    public void setGrid(MotionGrid grid) {
+        if (grid != null && mQuantile != 0) throw new IllegalStateException("the quantile threshold can't be combined with a grid");
+        this.mGrid = grid;
+    }
+
+    public MotionGrid getGrid() {
+        return mGrid;
+    }
+
+    /**
+     * The mask is rasterised with the next frame and again whenever the resolution changes.
+     * The moving averages adapt to the new region, they are not reset.
+     * @param mask restricts the detection to the pixels it includes, null to score the whole frame
+     */
+    public void setMask(MotionMask mask) {
+        this.mMask = mask;
+    }
+
+    public MotionMask getMask() {
+        return mMask;
+    }
+
+    /**
+     * @param shakeCompensator aligns the previous frame to the current one before they are differenced,
+     *                         null to difference the frames as they are
+     */
+    public void setShakeCompensator(ShakeCompensator shakeCompensator) {
+        this.mShakeCompensator = shakeCompensator;
+    }
+
+    public ShakeCompensator getShakeCompensator() {
+        return mShakeCompensator;
+    }
+
+    /**
+     * The illumination is normalized after the shake is compensated.
+     * @param illuminationNormalizer maps the previous frame to the illumination of the current one before they are
+     *                               differenced, null to difference the frames as they are
+     */
+    public void setIlluminationNormalizer(IlluminationNormalizer illuminationNormalizer) {
+        this.mIlluminationNormalizer = illuminationNormalizer;
+    }
+
+    public IlluminationNormalizer getIlluminationNormalizer() {
+        return mIlluminationNormalizer;
+    }
+
+    /**
+     * Starts the calibration, the detector switches to RUNNING after the calibration time.
+     * @param timestamp the current time on the clock the frames are stamped with
+     */
+    public void start(long timestamp) {
+        start(timestamp, null);
+    }
+
+    /**
+     * Starts with the statistics of the profile if it matches the first frame, then the detector switches to RUNNING
+     * after the verification time, unless a frame of the verification exceeds the restored thresholds.
+     * Otherwise, or with the quantile threshold, it calibrates as without a profile. See {@link #isWarmStart()}.
+     * @param timestamp the current time on the clock the frames are stamped with
+     * @param profile the profile of a previous calibration, null to calibrate
+     */
+    public void start(long timestamp, CalibrationProfile profile) {
+        mRequestedProfile = profile;
+        mWarmStart = profile != null && mQuantile == 0;
+        mResetRequested = true;
+        mCalibratingStartedAt = timestamp;
+        mState = State.CALIBRATING;
+        if (mListener != null) mListener.onCalibrating();
+    }
+
+    public void stop() {
+        mRequestedProfile = null;
+        mWarmStart = false;
+        mResetRequested = true;
+        mCalibratingStartedAt = 0;
+        mState = State.IDLE;
+    }
+
+    /**
+     * Analyses the next frame. Only the first width * height bytes of the luma plane are read.
+     * @param luma the 8 bit luma plane of the frame, one byte per pixel, row by row
+     * @param width the width of the frame
+     * @param height the height of the frame
+     * @param timestamp the time the frame was taken at in milliseconds
+     * @return true if the frame triggered the alarm
+     */
+    public boolean process(byte[] luma, int width, int height, long timestamp) {
+        mAlarm = false;
+        mSuspicious = false;
+        if (mResetRequested) reset();
+        if (mState == State.IDLE) return false;
+        //the statistics don't apply to another resolution, e.g. after the governor changed the level during the calibration
+        if (mLastTimestamp != -1 && (width != mWidth || height != mHeight)) recalibrate(timestamp);
+
+        if (mState == State.CALIBRATING && timestamp - mCalibratingStartedAt >= (mWarmStart ? mVerificationTime : mTimeToCalibrate)) {
+            mState = State.RUNNING;
+            if (mListener != null) mListener.onRun();
+        }
+
+        ensureSize(width, height);
+        final MotionGrid grid = mGrid;
+        final MotionMask mask = mMask;
+        if (mask != null) {
+            mask.ensureSize(width, height);
+            mTable.ensureSize(width, height);
+        }
+        if (grid != null) {
+            grid.ensureSize(width, height);
+            grid.ensureMask(mask);
+        }
+        final int pixels = width * height;
+        if (!mHasLastFrame) {
+            if (mProfile != null) restore(mProfile, luma, width, height, timestamp);
+            System.arraycopy(luma, 0, mLastFrame, 0, pixels);
+            mHasLastFrame = true;
+            mLastTimestamp = timestamp;
+            return false;
+        }
+
+        final byte[] diff = mDiffOutputEnabled ? mDiff : null;
+        byte[] previous = mLastFrame;
+        byte[] current = luma;
+        final ShakeCompensator shakeCompensator = mShakeCompensator;
+        if (shakeCompensator != null) {
+            if (mAligned == null) mAligned = new byte[pixels];
+            if (shakeCompensator.align(mLastFrame, luma, width, height, mAligned)) previous = mAligned;
+        }
+        final IlluminationNormalizer illuminationNormalizer = mIlluminationNormalizer;
+        if (illuminationNormalizer != null) {
+            if (mNormalized == null) mNormalized = new byte[pixels];
+            if (illuminationNormalizer.measure(previous, luma, pixels)) {
+                //the frame of the higher contrast is scaled down, which attenuates its noise instead of amplifying it
+                if (illuminationNormalizer.getGain() > 1) {
+                    illuminationNormalizer.mapToPrevious(luma, pixels, mNormalized);
+                    current = mNormalized;
+                } else {
+                    illuminationNormalizer.mapToCurrent(previous, pixels, mNormalized);
+                    previous = mNormalized;
+                }
+            }
+        }
+        final long sum;
+        final int scoredPixels;
+        if (mask != null) {
+            //a single pass over the pixels builds the table, the masked sums only cost lookups per rectangle
+            mTable.absDiff(current, previous, diff);
+            sum = mask.sum(mTable);
+            scoredPixels = mask.getPixelCount();
+            if (grid != null) grid.sumCells(mTable);
+        } else {
+            sum = grid != null ? grid.absDiff(current, previous, diff) : absDiff(current, previous, diff, pixels);
+            scoredPixels = pixels;
+        }
+        final double diffD = scoredPixels == 0 ? 0 : (double) sum / scoredPixels;
+        mHasDiff = mDiffOutputEnabled;
+        System.arraycopy(luma, 0, mLastFrame, 0, pixels);
+        //the statistics are seeded by this frame, after a reset or with a new grid
+        if (!mStatistics.hasValues() || (grid != null && !grid.hasStatistics())) mBaselineSince = timestamp;
+        //frames suspicious against the frozen statistics extend a suspected event
+        final boolean frozen = mFrozenSince >= 0 && isFrozen(timestamp,
+                grid != null ? grid.isSuspicious(mAlarmThreshold, mSuspicionThreshold) : diffD > mCurrSuspicionThreshold,
+                grid != null ? grid.isFastSettled(mAlarmThreshold, mSuspicionThreshold) : mFastStatistics.getMean() <= mCurrSuspicionThreshold);
+        //weight the new value by the time that passed since the last analysed frame
+        final double weight = frozen ? 0 : MovingStatistics.getWeight(timestamp - mLastTimestamp, mAverageOverTime);
+        final double fastWeight = MovingStatistics.getWeight(timestamp - mLastTimestamp, mFastAverageOverTime);
+        updateStatistics(diffD, timestamp, frozen);
+        mLastTimestamp = timestamp;
+
+        final boolean exceeded;
+        if (grid != null) {
+            exceeded = grid.update(weight, fastWeight, mAlarmThreshold, mSuspicionThreshold);
+            mSuspicious = grid.isSuspicious();
+        } else {
+            exceeded = diffD > mCurrAlarmThreshold;
+        }
+        mAlarm = exceeded && mState == State.RUNNING;
+        //an alarm starts a suspected event, the frame is taken back from the statistics and they are frozen,
+        //unless they are too young to tell an event from their own noise
+        if (mAlarm && mFrozenSince < 0 && mFreezeHoldTime > 0
+                && timestamp - mBaselineSince >= Math.max(mFastAverageOverTime, mAverageOverTime)) {
+            mFrozenSince = timestamp;
+            mLastSuspiciousAt = timestamp;
+            mStatistics.revert();
+            if (grid != null) grid.revert(weight);
+            updateThresholds();
+        }
+        //the restored statistics don't fit the scene, calibrate for the full time instead
+        if (exceeded && mState == State.CALIBRATING && mWarmStart) mWarmStart = false;
+        final Telemetry telemetry = mTelemetry;
+        if (telemetry != null && telemetry.accepts(mSuspicious, mAlarm)) {
+            telemetry.record(timestamp, diffD, mMovingAbsDiffAvg, mMovingDiffAvg, mCurrAlarmThreshold, mMaxDiff, mSuspicious, mAlarm);
+        }
+        if (mAlarm && mListener != null) mListener.onAlarm();
+        return mAlarm;
+    }
+
+    /**
+     * Decides if the statistics stay frozen for the frame, because the suspected event is still in progress.
+     * The event ends early once the fast moving averages agree with the frozen statistics again, e.g. after a flash.
+     * An event lasting longer than the maximum freeze time is a lasting change of the scene, the statistics continue
+     * with the fast moving averages, which followed it.
+     */
+    private boolean isFrozen(long timestamp, boolean suspected, boolean settled) {
+        if (suspected) mLastSuspiciousAt = timestamp;
+        if (mState == State.RUNNING && !settled && timestamp - mLastSuspiciousAt <= mFreezeHoldTime
+                && timestamp - mFrozenSince <= mMaxFreezeTime) {
+            return true;
+        }
+        if (timestamp - mFrozenSince > mMaxFreezeTime) {
+            mStatistics.restore(mFastStatistics.getMean(), mFastStatistics.getDeviation(), mLastTimestamp);
+            final MotionGrid grid = mGrid;
+            if (grid != null) grid.adoptFast();
+        }
+        mFrozenSince = -1;
+        mLastSuspiciousAt = -1;
+        return false;
+    }
+
+    private void updateStatistics(double diffD, long timestamp, boolean frozen) {
+        mFastStatistics.update(diffD, timestamp);
+        if (frozen) mStatistics.skip(timestamp);
+        else mStatistics.update(diffD, timestamp);
+
+        if (mMaxDiff < diffD) {
+            mMaxDiff = diffD;
+        }
+        mLastDiff = diffD;
+        final QuantileHistogram quantiles = mQuantiles;
+        //the quantiles are those of the calibration window, alarms and events while RUNNING can't bias them
+        if (quantiles != null && mState == State.CALIBRATING) quantiles.add(diffD);
+        updateThresholds();
+        mSuspicious = diffD > mCurrSuspicionThreshold;
+    }
+
+    private void updateThresholds() {
+        mMovingAbsDiffAvg = mStatistics.getMean();
+        mMovingDiffAvg = mStatistics.getDeviation();
+        final QuantileHistogram quantiles = mQuantiles;
+        if (quantiles != null) {
+            final double median = quantiles.getValue(0);
+            final double margin = (quantiles.getValue(1) - median) * mQuantileMultiple;
+            mCurrAlarmThreshold = median + margin;
+            mCurrSuspicionThreshold = median + margin * mSuspicionThreshold;
+            return;
+        }
+        mCurrAlarmThreshold = (mMovingDiffAvg * mAlarmThreshold) + mMovingAbsDiffAvg;
+        mCurrSuspicionThreshold = (mMovingDiffAvg * mAlarmThreshold * mSuspicionThreshold) + mMovingAbsDiffAvg;
+    }
+
+    /**
+     * Sums up the absolute differences of two luma planes.
+     * @param diff receives the per pixel differences if not null
+     * @return the sum of all absolute differences
+     */
+    static long absDiff(byte[] a, byte[] b, byte[] diff, int pixels) {
+        long sum = 0;
+        if (diff == null) {
+            for (int i = 0; i < pixels; i++) {
+                sum += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+            }
+        } else {
+            for (int i = 0; i < pixels; i++) {
+                int d = Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+                diff[i] = (byte) d;
+                sum += d;
+            }
+        }
+        return sum;
+    }
+
+    private void ensureSize(int width, int height) {
+        if (width == mWidth && height == mHeight) return;
+        mWidth = width;
+        mHeight = height;
+        mLastFrame = new byte[width * height];
+        mDiff = new byte[width * height];
+        mAligned = null;
+        mNormalized = null;
+        mHasLastFrame = false;
+        mHasDiff = false;
+    }
+
+    /**
+     * Continues with the statistics of the profile if it fits the first frame, otherwise falls back to the calibration.
+     */
+    private void restore(CalibrationProfile profile, byte[] luma, int width, int height, long timestamp) {
+        mProfile = null;
+        final MotionGrid grid = mGrid;
+        if (!profile.isCompatible(width, height, mMask, grid) || profile.getFingerprintDistance(luma, width, height) > mMaxFingerprintDistance) {
+            mWarmStart = false;
+            return;
+        }
+        mStatistics.restore(profile.getAbsDiffAvg(), profile.getDiffAvg(), timestamp);
+        mFastStatistics.restore(profile.getAbsDiffAvg(), profile.getDiffAvg(), timestamp);
+        mBaselineSince = timestamp;
+        mMovingAbsDiffAvg = profile.getAbsDiffAvg();
+        mMovingDiffAvg = profile.getDiffAvg();
+        mCurrAlarmThreshold = (mMovingDiffAvg * mAlarmThreshold) + mMovingAbsDiffAvg;
+        mCurrSuspicionThreshold = (mMovingDiffAvg * mAlarmThreshold * mSuspicionThreshold) + mMovingAbsDiffAvg;
+        if (grid != null) grid.restore(profile.getCellAbsDiffAvgs(), profile.getCellDiffAvgs());
+    }
+
+    /**
+     * Saves the statistics of the calibration, so the next start in front of the same scene can be a warm start.
+     * The detector has to be RUNNING.
+     * @param analysisLevel the pyramid level the frames are analysed at, kept in the profile for the caller
+     * @return the profile, null if the detector isn't RUNNING or uses the quantile threshold
+     */
+    public CalibrationProfile createProfile(int analysisLevel) {
+        if (mState != State.RUNNING || mQuantile != 0 || !mStatistics.hasValues()) return null;
+        final MotionGrid grid = mGrid;
+        final MotionMask mask = mMask;
+        double[] cellAbsDiffAvgs = new double[0];
+        double[] cellDiffAvgs = new double[0];
+        int cols = 0, rows = 0;
+        if (grid != null) {
+            cellAbsDiffAvgs = grid.copyAbsDiffAvgs();
+            cellDiffAvgs = grid.copyDiffAvgs();
+            if (cellAbsDiffAvgs == null) return null;
+            cols = grid.getCols();
+            rows = grid.getRows();
+        }
+        final int[] fingerprint = new int[CalibrationProfile.FINGERPRINT_COLS * CalibrationProfile.FINGERPRINT_ROWS];
+        CalibrationProfile.fingerprint(mLastFrame, mWidth, mHeight, fingerprint);
+        return new CalibrationProfile(mWidth, mHeight, analysisLevel, mask == null ? "" : mask.encode(),
+                mStatistics.getMean(), mStatistics.getDeviation(), cols, rows, cellAbsDiffAvgs, cellDiffAvgs, fingerprint);
+    }
+
+    /**
+     * Starts the calibration over from the given frame on, without a warm start.
+     */
+    private void recalibrate(long timestamp) {
+        mRequestedProfile = null;
+        mWarmStart = false;
+        reset();
+        mCalibratingStartedAt = timestamp;
+        mState = State.CALIBRATING;
+        if (mListener != null) mListener.onCalibrating();
+    }
+
+    private void reset() {
+        mResetRequested = false;
+        mProfile = mWarmStart ? mRequestedProfile : null;
+        mRequestedProfile = null;
+        mHasLastFrame = false;
+        mHasDiff = false;
+        mLastTimestamp = -1;
+        final MotionGrid grid = mGrid;
+        if (grid != null) grid.reset();
+        if (mStatistics.getWindowTime() != mSlidingWindowTime) mStatistics.setSlidingWindow(mSlidingWindowTime, mSlidingWindowCapacity);
+        mStatistics.reset();
+        mFastStatistics.reset();
+        mFrozenSince = -1;
+        mLastSuspiciousAt = -1;
+        mBaselineSince = -1;
+        final double quantile = mQuantile;
+        if (quantile == 0) mQuantiles = null;
+        else if (mQuantiles == null || mQuantiles.getQuantile(1) != quantile) mQuantiles = new QuantileHistogram(new double[] {0.5d, quantile}, 255d, QUANTILE_RESOLUTION, QUANTILE_RESOLUTION);
+        else mQuantiles.reset();
+        mMovingAbsDiffAvg = -1;
+        mMovingDiffAvg = -1;
+        mMaxDiff = 0;
+        mLastDiff = 0;
+        mCurrAlarmThreshold = 0;
+        mCurrSuspicionThreshold = Double.MAX_VALUE;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * @return the per pixel absolute differences of the last analysed frame, width * height bytes
+     */
+    public byte[] getDiff() {
+        return mDiff;
+    }
+
+    /**
+     * @return true if {@link #getDiff()} holds the differences of the last analysed frame
+     */
+    public boolean hasDiff() {
+        return mHasDiff;
+    }
+
+    /**
+     * @param diffOutputEnabled false if the per pixel differences are not needed, e.g. because nothing is drawn
+     */
+    public void setDiffOutputEnabled(boolean diffOutputEnabled) {
+        this.mDiffOutputEnabled = diffOutputEnabled;
+    }
+
+    public boolean isAlarm() {
+        return mAlarm;
+    }
+
+    /**
+     * @return true if the last frame exceeded the suspicion threshold, even if it didn't trigger the alarm
+     */
+    public boolean isSuspicious() {
+        return mSuspicious;
+    }
+
+    public double getLastDiff() {
+        return mLastDiff;
+    }
+
+    public double getCurrAlarmThreshold() {
+        return mCurrAlarmThreshold;
+    }
+
+    public double getMovingAbsDiffAvg() {
+        return mMovingAbsDiffAvg;
+    }
+
+    public double getMovingDiffAvg() {
+        return mMovingDiffAvg;
+    }
+
+    public double getMaxDiff() {
+        return mMaxDiff;
+    }
+
+    public void setTimeToCalibrate(long timeToCalibrate) {
+        this.mTimeToCalibrate = timeToCalibrate;
+    }
+
+    /**
+     * Controls how long the statistics stay frozen during a suspected event.
+     * @param freezeHoldTime the time after the last suspicious frame the statistics stay frozen, 0 to never freeze them
+     * @param maxFreezeTime the longest an event can freeze them, afterwards the detector continues with the fast
+     *                      moving averages
+     */
+    public void setFreezeTimes(long freezeHoldTime, long maxFreezeTime) {
+        this.mFreezeHoldTime = freezeHoldTime;
+        this.mMaxFreezeTime = maxFreezeTime;
+    }
+
+    /**
+     * @param fastAverageOverTime the time constant in milliseconds of the fast moving averages, which follow the scene
+     *                            while the statistics are frozen
+     */
+    public void setFastAverageOverTime(double fastAverageOverTime) {
+        mFastStatistics.setTimeConstant(fastAverageOverTime);
+        this.mFastAverageOverTime = fastAverageOverTime;
+    }
+
+    /**
+     * @return true if the statistics were frozen for the last frame, because a suspected event is in progress
+     */
+    public boolean isFrozen() {
+        return mFrozenSince >= 0;
+    }
+
+    /**
+     * @param verificationTime the time a warm start runs before the detector switches to RUNNING
+     */
+    public void setVerificationTime(long verificationTime) {
+        this.mVerificationTime = verificationTime;
+    }
+
+    public long getVerificationTime() {
+        return mVerificationTime;
+    }
+
+    /**
+     * @param maxFingerprintDistance the largest mean difference in luma levels of the blocks of the fingerprint of the
+     *                               scene from the one of a profile, which still allows a warm start
+     */
+    public void setMaxFingerprintDistance(double maxFingerprintDistance) {
+        this.mMaxFingerprintDistance = maxFingerprintDistance;
+    }
+
+    /**
+     * @return true if the detector started with the statistics of a profile and they still fit the scene
+     */
+    public boolean isWarmStart() {
+        return mWarmStart;
+    }
+
+    public long getTimeToCalibrate() {
+        return mTimeToCalibrate;
+    }
+
+    /**
+     * @param alarmThreshold the multiple of the moving deviation a frame has to exceed the moving average by
+     */
+    public void setAlarmThreshold(double alarmThreshold) {
+        this.mAlarmThreshold = alarmThreshold;
+    }
+
+    public double getAlarmThreshold() {
+        return mAlarmThreshold;
+    }
+
+    /**
+     * @param averageOverTime the time constant in milliseconds of the moving averages
+     */
+    public void setAverageOverTime(double averageOverTime) {
+        mStatistics.setTimeConstant(averageOverTime);
+        this.mAverageOverTime = averageOverTime;
+    }
+
+    /**
+     * Uses the exact mean over a sliding window for the statistics of the whole frame instead of the exponential
+     * moving averages, the cells of a {@link MotionGrid} keep the exponential ones. Takes effect on the next start.
+     * @param windowTime the time in milliseconds the window spans, 0 for exponential moving averages
+     * @param capacity the most frames the window holds
+     */
+    public void setSlidingWindow(long windowTime, int capacity) {
+        mSlidingWindowTime = windowTime;
+        mSlidingWindowCapacity = capacity;
+    }
+
+    /**
+     * Derives the alarm threshold of the whole frame from quantiles of the difference instead of the moving averages:
+     * the median plus a multiple of the distance of the quantile from the median, e.g. of the 99.9th percentile.
+     * The quantiles are taken over the frames of the calibration and stay fixed while RUNNING, so they don't follow
+     * lasting changes of the scene until the next calibration. The histogram takes about 22 kB.
+     * Takes effect on the next start.
+     * @param quantile the upper quantile, e.g. 0.999, or 0 to use the moving averages
+     * @param multiple the multiple of the distance of the quantile from the median the threshold is above the median
+     * @throws IllegalStateException if a {@link MotionGrid} is set, the quantiles only apply to the whole frame
+     */
+    public void setQuantileThreshold(double quantile, double multiple) {
+        if (quantile != 0 && (quantile <= 0.5 || quantile >= 1)) throw new IllegalArgumentException("the quantile has to be in (0.5, 1): " + quantile);
+        if (quantile != 0 && mGrid != null) throw new IllegalStateException("the quantile threshold can't be combined with a grid");
+        mQuantile = quantile;
+        mQuantileMultiple = multiple;
+    }
+
+    public double getQuantile() {
+        return mQuantile;
+    }
+
+    public void setSuspicionThreshold(double suspicionThreshold) {
+        this.mSuspicionThreshold = suspicionThreshold;
+    }
+}
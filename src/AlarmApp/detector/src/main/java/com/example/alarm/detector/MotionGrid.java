@@ -0,0 +1,382 @@
+package com.example.alarm.detector;
+
+import java.util.Arrays;
+
+/**
+ * Scores the motion per cell of a grid laid over the frame, so a small object is not diluted by the rest of the frame.
+ * Every cell keeps its own moving average and deviation of the mean absolute difference, like the detector does for
+ * the whole frame. A frame triggers the alarm if enough adjacent cells exceed their thresholds.
+ */
+public class MotionGrid {
+    private final int mCols;
+    private final int mRows;
+    private int mMinAdjacentCells = 2;
+
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private final int[] mColStarts;
+    private final int[] mRowStarts;
+    private final int[] mCellPixels;
+    private final long[] mCellSums;
+    //the rectangles of the mask clipped to every cell, the rectangles of cell i start at mCellRectStarts[i]
+    private MotionMask mMask = null;
+    private int mMaskRasteriseCount = -1;
+    private final int[] mCellRectStarts;
+    private int[] mCellRects = new int[0];
+
+    private final double[] mCellDiffs;
+    private final double[] mCellAbsDiffAvgs;
+    private final double[] mCellDiffAvgs;
+    private final double[] mCellThresholds;
+    //the moving averages with a short time constant, which are never frozen
+    private final double[] mFastAbsDiffAvgs;
+    private final double[] mFastDiffAvgs;
+    private final boolean[] mCellsOver;
+    private boolean mHasStatistics = false;
+    private boolean mSuspicious = false;
+    private int mLargestCluster = 0;
+
+    //preallocated for the cluster search
+    private final boolean[] mVisited;
+    private final int[] mStack;
+
+    /**
+     * @param cols the number of cells per row
+     * @param rows the number of cells per column
+     */
+    public MotionGrid(int cols, int rows) {
+        if (cols < 1 || rows < 1) throw new IllegalArgumentException("the grid needs at least one cell: " + cols + "x" + rows);
+        mCols = cols;
+        mRows = rows;
+        final int cells = cols * rows;
+        mColStarts = new int[cols + 1];
+        mRowStarts = new int[rows + 1];
+        mCellPixels = new int[cells];
+        mCellSums = new long[cells];
+        mCellRectStarts = new int[cells + 1];
+        mCellDiffs = new double[cells];
+        mCellAbsDiffAvgs = new double[cells];
+        mFastAbsDiffAvgs = new double[cells];
+        mFastDiffAvgs = new double[cells];
+        mCellDiffAvgs = new double[cells];
+        mCellThresholds = new double[cells];
+        mCellsOver = new boolean[cells];
+        mVisited = new boolean[cells];
+        mStack = new int[cells];
+    }
+
+    /**
+     * @param minAdjacentCells the number of horizontally or vertically adjacent cells, which have to exceed their
+     *                         thresholds together to trigger the alarm
+     */
+    public void setMinAdjacentCells(int minAdjacentCells) {
+        if (minAdjacentCells < 1 || minAdjacentCells > mCols * mRows) throw new IllegalArgumentException("invalid number of adjacent cells: " + minAdjacentCells);
+        this.mMinAdjacentCells = minAdjacentCells;
+    }
+
+    public int getMinAdjacentCells() {
+        return mMinAdjacentCells;
+    }
+
+    void ensureSize(int width, int height) {
+        if (width == mWidth && height == mHeight) return;
+        if (width < mCols || height < mRows) throw new IllegalArgumentException("frame " + width + "x" + height + " is smaller than the grid");
+        mWidth = width;
+        mHeight = height;
+        for (int c = 0; c <= mCols; c++) mColStarts[c] = c * width / mCols;
+        for (int r = 0; r <= mRows; r++) mRowStarts[r] = r * height / mRows;
+        countCellPixels();
+        mMask = null;
+        reset();
+    }
+
+    private void countCellPixels() {
+        for (int r = 0; r < mRows; r++) {
+            for (int c = 0; c < mCols; c++) {
+                mCellPixels[r * mCols + c] = (mColStarts[c + 1] - mColStarts[c]) * (mRowStarts[r + 1] - mRowStarts[r]);
+            }
+        }
+    }
+
+    /**
+     * Clips the rectangles of the mask to the cells, if the mask changed or was rasterised again.
+     * The mask has to be rasterised at the size of the grid.
+     * @param mask the mask to apply, null to score the whole cells
+     */
+    void ensureMask(MotionMask mask) {
+        if (mask == mMask && (mask == null || mask.getRasteriseCount() == mMaskRasteriseCount)) return;
+        mMask = mask;
+        if (mask == null) {
+            countCellPixels();
+            return;
+        }
+        mMaskRasteriseCount = mask.getRasteriseCount();
+        final int[] rects = mask.getRects();
+        int count = 0;
+        int[] cellRects = new int[rects.length];
+        for (int r = 0; r < mRows; r++) {
+            for (int c = 0; c < mCols; c++) {
+                final int cell = r * mCols + c;
+                mCellRectStarts[cell] = count;
+                mCellPixels[cell] = 0;
+                for (int i = 0; i < rects.length; i += 4) {
+                    final int x0 = Math.max(rects[i], mColStarts[c]);
+                    final int y0 = Math.max(rects[i + 1], mRowStarts[r]);
+                    final int x1 = Math.min(rects[i + 2], mColStarts[c + 1]);
+                    final int y1 = Math.min(rects[i + 3], mRowStarts[r + 1]);
+                    if (x0 >= x1 || y0 >= y1) continue;
+                    if (4 * count + 4 > cellRects.length) cellRects = Arrays.copyOf(cellRects, cellRects.length * 2 + 4);
+                    cellRects[4 * count] = x0;
+                    cellRects[4 * count + 1] = y0;
+                    cellRects[4 * count + 2] = x1;
+                    cellRects[4 * count + 3] = y1;
+                    mCellPixels[cell] += (x1 - x0) * (y1 - y0);
+                    count++;
+                }
+            }
+        }
+        mCellRectStarts[mCellRectStarts.length - 1] = count;
+        mCellRects = cellRects;
+    }
+
+    /**
+     * @return the moving averages of the cells, null if there are none yet
+     */
+    double[] copyAbsDiffAvgs() {
+        return mHasStatistics ? mCellAbsDiffAvgs.clone() : null;
+    }
+
+    /**
+     * @return the moving deviations of the cells, null if there are none yet
+     */
+    double[] copyDiffAvgs() {
+        return mHasStatistics ? mCellDiffAvgs.clone() : null;
+    }
+
+    /**
+     * Continues with the given moving averages of the cells, e.g. of a {@link CalibrationProfile}.
+     */
+    void restore(double[] absDiffAvgs, double[] diffAvgs) {
+        System.arraycopy(absDiffAvgs, 0, mCellAbsDiffAvgs, 0, mCellAbsDiffAvgs.length);
+        System.arraycopy(diffAvgs, 0, mCellDiffAvgs, 0, mCellDiffAvgs.length);
+        System.arraycopy(absDiffAvgs, 0, mFastAbsDiffAvgs, 0, mFastAbsDiffAvgs.length);
+        System.arraycopy(diffAvgs, 0, mFastDiffAvgs, 0, mFastDiffAvgs.length);
+        mHasStatistics = true;
+    }
+
+    /**
+     * Continues with the fast moving averages, e.g. after the scene changed for good while the others were frozen.
+     */
+    void adoptFast() {
+        System.arraycopy(mFastAbsDiffAvgs, 0, mCellAbsDiffAvgs, 0, mCellAbsDiffAvgs.length);
+        System.arraycopy(mFastDiffAvgs, 0, mCellDiffAvgs, 0, mCellDiffAvgs.length);
+    }
+
+    /**
+     * Takes back the last {@link #update(double, double, double, double)} of the moving averages of the cells, the
+     * fast moving averages keep it.
+     * @param weight the weight the update was made with
+     */
+    void revert(double weight) {
+        if (weight >= 1) return;
+        for (int i = 0; i < mCellDiffs.length; i++) {
+            final double diff = mCellDiffs[i];
+            mCellDiffAvgs[i] = (mCellDiffAvgs[i] - weight * Math.abs(diff - mCellAbsDiffAvgs[i])) / (1 - weight);
+            mCellAbsDiffAvgs[i] = (mCellAbsDiffAvgs[i] - weight * diff) / (1 - weight);
+        }
+    }
+
+    boolean hasStatistics() {
+        return mHasStatistics;
+    }
+
+    /**
+     * Checks the fast moving averages of the cells against the suspicion thresholds of the others, e.g. to end a
+     * freeze once the scene settled back to what the frozen statistics describe.
+     * @return true if no cell's fast moving average is suspicious
+     */
+    boolean isFastSettled(double alarmThreshold, double suspicionThreshold) {
+        for (int i = 0; i < mFastAbsDiffAvgs.length; i++) {
+            if (mFastAbsDiffAvgs[i] > mCellDiffAvgs[i] * alarmThreshold * suspicionThreshold + mCellAbsDiffAvgs[i]) return false;
+        }
+        return true;
+    }
+
+    void reset() {
+        mHasStatistics = false;
+        mSuspicious = false;
+        mLargestCluster = 0;
+        for (int i = 0; i < mCellsOver.length; i++) mCellsOver[i] = false;
+    }
+
+    /**
+     * Sums up the absolute differences of two luma planes per cell in a single pass.
+     * @param diff receives the per pixel differences if not null
+     * @return the sum of all absolute differences
+     */
+    long absDiff(byte[] a, byte[] b, byte[] diff) {
+        final int[] colStarts = mColStarts;
+        final long[] cellSums = mCellSums;
+        for (int i = 0; i < cellSums.length; i++) cellSums[i] = 0;
+        long total = 0;
+        for (int r = 0; r < mRows; r++) {
+            final int cellOffset = r * mCols;
+            for (int y = mRowStarts[r]; y < mRowStarts[r + 1]; y++) {
+                final int rowOffset = y * mWidth;
+                for (int c = 0; c < mCols; c++) {
+                    final int end = rowOffset + colStarts[c + 1];
+                    int sum = 0;
+                    if (diff == null) {
+                        for (int i = rowOffset + colStarts[c]; i < end; i++) {
+                            sum += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+                        }
+                    } else {
+                        for (int i = rowOffset + colStarts[c]; i < end; i++) {
+                            int d = Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+                            diff[i] = (byte) d;
+                            sum += d;
+                        }
+                    }
+                    cellSums[cellOffset + c] += sum;
+                    total += sum;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Sums up the masked differences per cell from a table built for the current frame, as many lookups as the
+     * mask has rectangles.
+     */
+    void sumCells(SummedAreaTable table) {
+        final int[] rects = mCellRects;
+        for (int cell = 0; cell < mCellSums.length; cell++) {
+            long sum = 0;
+            for (int i = 4 * mCellRectStarts[cell]; i < 4 * mCellRectStarts[cell + 1]; i += 4) {
+                sum += table.sum(rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+            }
+            mCellSums[cell] = sum;
+        }
+    }
+
+    /**
+     * Checks the sums of the last {@link #absDiff(byte[], byte[], byte[])} or {@link #sumCells(SummedAreaTable)}
+     * against the suspicion thresholds of the statistics so far, without updating them.
+     * @return true if any cell is suspicious, false if there are no statistics yet
+     */
+    boolean isSuspicious(double alarmThreshold, double suspicionThreshold) {
+        if (!mHasStatistics) return false;
+        for (int i = 0; i < mCellSums.length; i++) {
+            final double diff = mCellPixels[i] == 0 ? 0 : (double) mCellSums[i] / mCellPixels[i];
+            if (diff > mCellDiffAvgs[i] * alarmThreshold * suspicionThreshold + mCellAbsDiffAvgs[i]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Updates the statistics of every cell with the sums of the last {@link #absDiff(byte[], byte[], byte[])}
+     * or {@link #sumCells(SummedAreaTable)}
+     * and evaluates the alarm rule.
+     * @param weight the weight of the new values in the exponential moving averages the thresholds are based on,
+     *               see {@link MovingStatistics#getWeight(long, double)}, 0 to freeze them
+     * @param fastWeight the weight of the new values in the fast moving averages
+     * @return true if enough adjacent cells exceeded their thresholds
+     */
+    boolean update(double weight, double fastWeight, double alarmThreshold, double suspicionThreshold) {
+        mSuspicious = false;
+        for (int i = 0; i < mCellSums.length; i++) {
+            //cells the mask excludes completely never exceed their thresholds
+            final double diff = mCellPixels[i] == 0 ? 0 : (double) mCellSums[i] / mCellPixels[i];
+            mCellDiffs[i] = diff;
+            if (!mHasStatistics) {
+                mCellAbsDiffAvgs[i] = diff;
+                mCellDiffAvgs[i] = 0;
+                mFastAbsDiffAvgs[i] = diff;
+                mFastDiffAvgs[i] = 0;
+            } else {
+                mCellAbsDiffAvgs[i] += weight * (diff - mCellAbsDiffAvgs[i]);
+                mCellDiffAvgs[i] += weight * (Math.abs(diff - mCellAbsDiffAvgs[i]) - mCellDiffAvgs[i]);
+                mFastAbsDiffAvgs[i] += fastWeight * (diff - mFastAbsDiffAvgs[i]);
+                mFastDiffAvgs[i] += fastWeight * (Math.abs(diff - mFastAbsDiffAvgs[i]) - mFastDiffAvgs[i]);
+            }
+            mCellThresholds[i] = mCellDiffAvgs[i] * alarmThreshold + mCellAbsDiffAvgs[i];
+            mCellsOver[i] = diff > mCellThresholds[i];
+            if (diff > mCellDiffAvgs[i] * alarmThreshold * suspicionThreshold + mCellAbsDiffAvgs[i]) mSuspicious = true;
+        }
+        mHasStatistics = true;
+        mLargestCluster = findLargestCluster();
+        return mLargestCluster >= mMinAdjacentCells;
+    }
+
+    /**
+     * @return the size of the largest group of horizontally or vertically adjacent cells over their thresholds
+     */
+    private int findLargestCluster() {
+        final int cells = mCellsOver.length;
+        for (int i = 0; i < cells; i++) mVisited[i] = false;
+        int largest = 0;
+        for (int start = 0; start < cells; start++) {
+            if (!mCellsOver[start] || mVisited[start]) continue;
+            int size = 0;
+            int top = 0;
+            mStack[top++] = start;
+            mVisited[start] = true;
+            while (top > 0) {
+                final int cell = mStack[--top];
+                size++;
+                final int col = cell % mCols;
+                if (col > 0) top = push(cell - 1, top);
+                if (col < mCols - 1) top = push(cell + 1, top);
+                if (cell >= mCols) top = push(cell - mCols, top);
+                if (cell + mCols < cells) top = push(cell + mCols, top);
+            }
+            if (size > largest) largest = size;
+        }
+        return largest;
+    }
+
+    private int push(int cell, int top) {
+        if (!mCellsOver[cell] || mVisited[cell]) return top;
+        mVisited[cell] = true;
+        mStack[top] = cell;
+        return top + 1;
+    }
+
+    public int getCols() {
+        return mCols;
+    }
+
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * @return the mean absolute difference of the cell in the last frame, cells are numbered row by row
+     */
+    public double getCellDiff(int cell) {
+        return mCellDiffs[cell];
+    }
+
+    public double getCellThreshold(int cell) {
+        return mCellThresholds[cell];
+    }
+
+    public boolean isCellOver(int cell) {
+        return mCellsOver[cell];
+    }
+
+    /**
+     * @return the size of the largest group of adjacent cells over their thresholds in the last frame
+     */
+    public int getLargestCluster() {
+        return mLargestCluster;
+    }
+
+    /**
+     * @return true if any cell exceeded its suspicion threshold in the last frame
+     */
+    public boolean isSuspicious() {
+        return mSuspicious;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.alarm.detector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Restricts the detection to parts of the frame, e.g. to ignore a window with moving trees.
+ * The mask consists of include and exclude polygons in coordinates relative to the frame size, applied in order.
+ * Without include polygons the whole frame is included initially, otherwise nothing is.
+ * The polygons are rasterised once per resolution into rectangles, so masked sums over a {@link SummedAreaTable}
+ * cost as much as the number of rectangles, not the number of pixels.
+ * A mask must not be changed while a detector uses it.
+ */
+public class MotionMask {
+    /**
+     * A polygon with its corners as x, y pairs relative to the frame size, in [0, 1].
+     */
+    public static class Polygon {
+        private final boolean mInclude;
+        private final float[] mPoints;
+
+        public Polygon(boolean include, float... points) {
+            if (points.length < 6 || points.length % 2 != 0) throw new IllegalArgumentException("a polygon needs at least 3 points");
+            mInclude = include;
+            mPoints = points.clone();
+        }
+
+        public boolean isInclude() {
+            return mInclude;
+        }
+
+        public float[] getPoints() {
+            return mPoints.clone();
+        }
+    }
+
+    private final List<Polygon> mPolygons = new ArrayList<>();
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private boolean[] mMask = null;
+    //x0, y0, x1, y1 of every rectangle, the end coordinates are exclusive
+    private int[] mRects = new int[0];
+    private int mRectCount = 0;
+    private int mPixelCount = 0;
+    private int mRasteriseCount = 0;
+
+    public void addPolygon(Polygon polygon) {
+        mPolygons.add(polygon);
+        mWidth = -1;
+        mHeight = -1;
+    }
+
+    public List<Polygon> getPolygons() {
+        return Collections.unmodifiableList(mPolygons);
+    }
+
+    /**
+     * Rasterises the polygons if the resolution changed since the last call.
+     * @return true if the mask was rasterised
+     */
+    public boolean ensureSize(int width, int height) {
+        if (width == mWidth && height == mHeight) return false;
+        mWidth = width;
+        mHeight = height;
+        rasterise();
+        return true;
+    }
+
+    private void rasterise() {
+        mRasteriseCount++;
+        boolean hasInclude = false;
+        for (Polygon polygon : mPolygons) hasInclude |= polygon.mInclude;
+        mMask = new boolean[mWidth * mHeight];
+        if (!hasInclude) Arrays.fill(mMask, true);
+        float[] crossings = new float[64];
+        for (Polygon polygon : mPolygons) {
+            final float[] points = polygon.mPoints;
+            final int corners = points.length / 2;
+            if (crossings.length < corners) crossings = new float[corners];
+            for (int y = 0; y < mHeight; y++) {
+                //even-odd scanline fill at the pixel centers
+                final float cy = (y + 0.5f) / mHeight;
+                int count = 0;
+                for (int i = 0, j = corners - 1; i < corners; j = i++) {
+                    final float yi = points[2 * i + 1];
+                    final float yj = points[2 * j + 1];
+                    if ((yi > cy) != (yj > cy)) {
+                        crossings[count++] = points[2 * i] + (cy - yi) / (yj - yi) * (points[2 * j] - points[2 * i]);
+                    }
+                }
+                Arrays.sort(crossings, 0, count);
+                for (int k = 0; k + 1 < count; k += 2) {
+                    final int x0 = Math.max(0, (int) Math.ceil(crossings[k] * mWidth - 0.5f));
+                    final int x1 = Math.min(mWidth, (int) Math.ceil(crossings[k + 1] * mWidth - 0.5f));
+                    for (int x = x0; x < x1; x++) mMask[y * mWidth + x] = polygon.mInclude;
+                }
+            }
+        }
+        buildRects();
+    }
+
+    /**
+     * Merges the runs of included pixels of consecutive rows into rectangles, if they have the same extent.
+     */
+    private void buildRects() {
+        mRectCount = 0;
+        mPixelCount = 0;
+        //the rectangles that end in the previous row
+        int[] open = new int[16];
+        int openCount = 0;
+        int[] nextOpen = new int[16];
+        for (int y = 0; y < mHeight; y++) {
+            int nextOpenCount = 0;
+            int x = 0;
+            while (x < mWidth) {
+                if (!mMask[y * mWidth + x]) {
+                    x++;
+                    continue;
+                }
+                final int x0 = x;
+                while (x < mWidth && mMask[y * mWidth + x]) x++;
+                mPixelCount += x - x0;
+                int rect = -1;
+                for (int i = 0; i < openCount; i++) {
+                    if (mRects[4 * open[i]] == x0 && mRects[4 * open[i] + 2] == x) {
+                        rect = open[i];
+                        break;
+                    }
+                }
+                if (rect == -1) rect = addRect(x0, y, x);
+                mRects[4 * rect + 3] = y + 1;
+                if (nextOpenCount == nextOpen.length) nextOpen = Arrays.copyOf(nextOpen, nextOpenCount * 2);
+                nextOpen[nextOpenCount++] = rect;
+            }
+            int[] swap = open;
+            open = nextOpen;
+            nextOpen = swap.length >= open.length ? swap : new int[open.length];
+            openCount = nextOpenCount;
+        }
+    }
+
+    private int addRect(int x0, int y0, int x1) {
+        if (4 * (mRectCount + 1) > mRects.length) mRects = Arrays.copyOf(mRects, Math.max(64, mRects.length * 2));
+        mRects[4 * mRectCount] = x0;
+        mRects[4 * mRectCount + 1] = y0;
+        mRects[4 * mRectCount + 2] = x1;
+        mRects[4 * mRectCount + 3] = y0 + 1;
+        return mRectCount++;
+    }
+
+    /**
+     * @return the sum of the table over the included pixels
+     */
+    public long sum(SummedAreaTable table) {
+        long sum = 0;
+        for (int i = 0; i < mRectCount; i++) {
+            sum += table.sum(mRects[4 * i], mRects[4 * i + 1], mRects[4 * i + 2], mRects[4 * i + 3]);
+        }
+        return sum;
+    }
+
+    /**
+     * @return true if the pixel is included, only valid after {@link #ensureSize(int, int)}
+     */
+    public boolean contains(int x, int y) {
+        return mMask[y * mWidth + x];
+    }
+
+    /**
+     * @return the number of included pixels at the current resolution
+     */
+    public int getPixelCount() {
+        return mPixelCount;
+    }
+
+    public int getRectCount() {
+        return mRectCount;
+    }
+
+    /**
+     * @return x0, y0, x1, y1 of every rectangle the included pixels consist of, the end coordinates are exclusive
+     */
+    public int[] getRects() {
+        return Arrays.copyOf(mRects, 4 * mRectCount);
+    }
+
+    /**
+     * @return how often the polygons were rasterised
+     */
+    public int getRasteriseCount() {
+        return mRasteriseCount;
+    }
+
+    /**
+     * Encodes the polygons, e.g. "i:0.1,0.1;0.5,0.1;0.5,0.5|e:0.2,0.2;0.3,0.2;0.3,0.3".
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder();
+        for (Polygon polygon : mPolygons) {
+            if (builder.length() > 0) builder.append('|');
+            builder.append(polygon.mInclude ? "i:" : "e:");
+            for (int i = 0; i < polygon.mPoints.length; i += 2) {
+                if (i > 0) builder.append(';');
+                builder.append(String.format(Locale.US, "%.4f,%.4f", polygon.mPoints[i], polygon.mPoints[i + 1]));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param encoded polygons as returned by {@link #encode()}
+     * @throws IllegalArgumentException if the string is malformed
+     */
+    public static MotionMask decode(String encoded) {
+        MotionMask mask = new MotionMask();
+        if (encoded.isEmpty()) return mask;
+        for (String polygon : encoded.split("\\|")) {
+            if (polygon.length() < 2 || polygon.charAt(1) != ':' || (polygon.charAt(0) != 'i' && polygon.charAt(0) != 'e')) {
+                throw new IllegalArgumentException("invalid polygon: " + polygon);
+            }
+            String[] corners = polygon.substring(2).split(";");
+            float[] points = new float[corners.length * 2];
+            for (int i = 0; i < corners.length; i++) {
+                String[] coordinates = corners[i].split(",");
+                if (coordinates.length != 2) throw new IllegalArgumentException("invalid point: " + corners[i]);
+                points[2 * i] = Float.parseFloat(coordinates[0]);
+                points[2 * i + 1] = Float.parseFloat(coordinates[1]);
+            }
+            mask.addPolygon(new Polygon(polygon.charAt(0) == 'i', points));
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.alarm.detector;
+
+/**
+ * The moving average of a series of values and the moving average of their absolute deviation from it, driven by
+ * the timestamps of the values instead of their count, so the statistics don't depend on the frame rate.
+ * By default both are exponential moving averages with a time constant: a value is weighted by
+ * 1 - exp(-elapsed / timeConstant), so a step is followed by 63 % after one time constant at any rate.
+ * Optionally the averages are the exact means over a sliding window of time instead, kept in a ring buffer of
+ * primitive arrays. The buffer has a fixed capacity, values are dropped early if more arrive within the window.
+ */
+public class MovingStatistics {
+    private double mTimeConstant;
+
+    //the sliding window, no window keeps exponential moving averages
+    private long mWindowTime = 0;
+    private long[] mTimestamps = null;
+    private double[] mValues = null;
+    private double[] mDeviations = null;
+    private int mOldest = 0;
+    private int mCount = 0;
+    private double mValueSum = 0;
+    private double mDeviationSum = 0;
+    //the sums are recomputed after as many additions as the buffer holds, so rounding errors can't accumulate
+    private int mAdditions = 0;
+
+    private boolean mHasValues = false;
+    private long mLastTimestamp = 0;
+    private double mMean = 0;
+    private double mDeviation = 0;
+    //the statistics before the last value, so it can be taken back
+    private boolean mHadValues = false;
+    private double mPreviousMean = 0;
+    private double mPreviousDeviation = 0;
+
+    /**
+     * @param timeConstant the time constant in milliseconds of the exponential moving averages
+     */
+    public MovingStatistics(double timeConstant) {
+        setTimeConstant(timeConstant);
+    }
+
+    public void setTimeConstant(double timeConstant) {
+        if (timeConstant <= 0) throw new IllegalArgumentException("the time constant has to be positive: " + timeConstant);
+        mTimeConstant = timeConstant;
+    }
+
+    public double getTimeConstant() {
+        return mTimeConstant;
+    }
+
+    /**
+     * Switches to exact means over a sliding window, or back to exponential moving averages. Resets the statistics.
+     * @param windowTime the time in milliseconds the window spans, 0 for exponential moving averages
+     * @param capacity the most values the window holds, e.g. the window time times the highest expected frame rate
+     */
+    public void setSlidingWindow(long windowTime, int capacity) {
+        if (windowTime < 0) throw new IllegalArgumentException("the window can't be negative: " + windowTime);
+        if (windowTime > 0 && capacity < 1) throw new IllegalArgumentException("the window has to hold a value: " + capacity);
+        mWindowTime = windowTime;
+        if (windowTime == 0) {
+            mTimestamps = null;
+            mValues = null;
+            mDeviations = null;
+        } else if (mTimestamps == null || mTimestamps.length != capacity) {
+            mTimestamps = new long[capacity];
+            mValues = new double[capacity];
+            mDeviations = new double[capacity];
+        }
+        reset();
+    }
+
+    public long getWindowTime() {
+        return mWindowTime;
+    }
+
+    /**
+     * @return the weight of a value after the elapsed time for exponential moving averages with the time constant
+     */
+    public static double getWeight(long elapsed, double timeConstant) {
+        return 1d - Math.exp(-Math.max(1, elapsed) / timeConstant);
+    }
+
+    /**
+     * Adds the value. The first value is the mean, with no deviation.
+     * @param timestamp the time of the value in milliseconds, not earlier than the one of the previous value
+     */
+    public void update(double value, long timestamp) {
+        mHadValues = mHasValues;
+        mPreviousMean = mMean;
+        mPreviousDeviation = mDeviation;
+        if (mWindowTime > 0) {
+            updateWindow(value, timestamp);
+        } else if (!mHasValues) {
+            mMean = value;
+            mDeviation = 0;
+        } else {
+            final double weight = getWeight(timestamp - mLastTimestamp, mTimeConstant);
+            mMean += weight * (value - mMean);
+            mDeviation += weight * (Math.abs(value - mMean) - mDeviation);
+        }
+        mHasValues = true;
+        mLastTimestamp = timestamp;
+    }
+
+    private void updateWindow(double value, long timestamp) {
+        final int capacity = mTimestamps.length;
+        while (mCount > 0 && (mCount == capacity || mTimestamps[mOldest] <= timestamp - mWindowTime)) {
+            mValueSum -= mValues[mOldest];
+            mDeviationSum -= mDeviations[mOldest];
+            mOldest = (mOldest + 1) % capacity;
+            mCount--;
+        }
+        //like the exponential averages, the deviation is taken from the mean including the value
+        final double deviation = mCount == 0 ? 0 : Math.abs(value - (mValueSum + value) / (mCount + 1));
+        final int newest = (mOldest + mCount) % capacity;
+        mTimestamps[newest] = timestamp;
+        mValues[newest] = value;
+        mDeviations[newest] = deviation;
+        mCount++;
+        if (++mAdditions >= capacity) {
+            mAdditions = 0;
+            mValueSum = 0;
+            mDeviationSum = 0;
+            for (int i = 0, index = mOldest; i < mCount; i++, index = (index + 1) % capacity) {
+                mValueSum += mValues[index];
+                mDeviationSum += mDeviations[index];
+            }
+        } else {
+            mValueSum += value;
+            mDeviationSum += deviation;
+        }
+        mMean = mValueSum / mCount;
+        mDeviation = mDeviationSum / mCount;
+    }
+
+    /**
+     * Lets the time pass without a value, e.g. while the values are not representative. The statistics stay as they
+     * are and the next value is weighted by the time since this call.
+     */
+    public void skip(long timestamp) {
+        if (mHasValues) mLastTimestamp = timestamp;
+    }
+
+    /**
+     * Takes back the last value, e.g. once it turned out to belong to an event, as if its time passed without a value.
+     * Only the last value can be taken back, values it pushed out of a sliding window stay out.
+     */
+    public void revert() {
+        if (mWindowTime > 0 && mCount > 0) {
+            final int newest = (mOldest + mCount - 1) % mTimestamps.length;
+            mValueSum -= mValues[newest];
+            mDeviationSum -= mDeviations[newest];
+            mCount--;
+        }
+        mHasValues = mHadValues;
+        mMean = mPreviousMean;
+        mDeviation = mPreviousDeviation;
+    }
+
+    /**
+     * Continues with the given statistics as if they resulted from the values so far, e.g. of a
+     * {@link CalibrationProfile}. A sliding window is filled with values of the given statistics spread over the
+     * window, so new values replace them within the window time.
+     */
+    public void restore(double mean, double deviation, long timestamp) {
+        reset();
+        if (mWindowTime > 0) {
+            final int capacity = mTimestamps.length;
+            for (int i = 0; i < capacity; i++) {
+                mTimestamps[i] = timestamp - mWindowTime + (i + 1) * mWindowTime / capacity;
+                mValues[i] = mean;
+                mDeviations[i] = deviation;
+            }
+            mCount = capacity;
+            mValueSum = mean * capacity;
+            mDeviationSum = deviation * capacity;
+        }
+        mMean = mean;
+        mDeviation = deviation;
+        mHasValues = true;
+        mLastTimestamp = timestamp;
+    }
+
+    /**
+     * Forgets all values.
+     */
+    public void reset() {
+        mHasValues = false;
+        mHadValues = false;
+        mPreviousMean = 0;
+        mPreviousDeviation = 0;
+        mLastTimestamp = 0;
+        mMean = 0;
+        mDeviation = 0;
+        mOldest = 0;
+        mCount = 0;
+        mValueSum = 0;
+        mDeviationSum = 0;
+        mAdditions = 0;
+    }
+
+    public boolean hasValues() {
+        return mHasValues;
+    }
+
+    /**
+     * @return the number of values in the sliding window, 0 without a window
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    public double getMean() {
+        return mMean;
+    }
+
+    public double getDeviation() {
+        return mDeviation;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.alarm.detector;
+
+/**
+ * Tracks quantiles of a stream of values, e.g. the median and the 99.9th percentile of the difference, in a histogram
+ * of fixed bins on a primitive array, so the memory is bounded and no value is stored.
+ * The bins are as wide as the absolute resolution near 0 and grow with the value, so every value is resolved to the
+ * relative resolution above absoluteResolution / relativeResolution. Values above the maximum land in the last bin.
+ * Every tracked quantile keeps a cursor on its bin. A value moves the rank of a quantile by at most one, so the cursor
+ * only moves to a neighbouring occupied bin and neither adding a value nor reading a quantile scans the histogram.
+ * An outlier only increments the count of its bin, it can't skew the quantiles more than any other single value.
+ */
+public class QuantileHistogram {
+    private final double[] mQuantiles;
+    private final double mScale;
+    private final double mGrowth;
+    private final int[] mCounts;
+    //per tracked quantile the bin it falls into and the number of values in the bins below
+    private final int[] mCursors;
+    private final long[] mBelow;
+    private long mCount = 0;
+
+    /**
+     * @param quantiles the tracked quantiles, e.g. 0.5 and 0.999
+     * @param maxValue the largest resolved value
+     * @param absoluteResolution the width of the bins near 0
+     * @param relativeResolution the width of the bins relative to their value for large values, e.g. 0.001
+     */
+    public QuantileHistogram(double[] quantiles, double maxValue, double absoluteResolution, double relativeResolution) {
+        for (double quantile : quantiles) {
+            if (quantile < 0 || quantile > 1) throw new IllegalArgumentException("the quantile has to be in [0, 1]: " + quantile);
+        }
+        if (maxValue <= 0 || absoluteResolution <= 0 || relativeResolution <= 0) throw new IllegalArgumentException("the range and the resolution have to be positive");
+        mQuantiles = quantiles.clone();
+        mScale = absoluteResolution / relativeResolution;
+        mGrowth = Math.log1p(relativeResolution);
+        mCounts = new int[getBin(maxValue) + 1];
+        mCursors = new int[quantiles.length];
+        mBelow = new long[quantiles.length];
+    }
+
+    private int getBin(double value) {
+        if (value <= 0) return 0;
+        return (int) (Math.log1p(value / mScale) / mGrowth);
+    }
+
+    private double getLowerEdge(int bin) {
+        return mScale * Math.expm1(bin * mGrowth);
+    }
+
+    public void add(double value) {
+        final int bin = Math.min(mCounts.length - 1, getBin(value));
+        mCounts[bin]++;
+        mCount++;
+        for (int q = 0; q < mCursors.length; q++) {
+            if (bin < mCursors[q]) mBelow[q]++;
+            //move the cursor to the bin holding the value of the rank of the quantile
+            final long rank = getRank(q);
+            while (mBelow[q] > rank) {
+                mCursors[q]--;
+                mBelow[q] -= mCounts[mCursors[q]];
+            }
+            while (mBelow[q] + mCounts[mCursors[q]] <= rank) {
+                mBelow[q] += mCounts[mCursors[q]];
+                mCursors[q]++;
+            }
+        }
+    }
+
+    private long getRank(int quantile) {
+        return (long) Math.floor(mQuantiles[quantile] * (mCount - 1));
+    }
+
+    /**
+     * @param quantile the index of the quantile in the tracked quantiles
+     * @return the value of the quantile, interpolated within its bin, 0 without values
+     */
+    public double getValue(int quantile) {
+        if (mCount == 0) return 0;
+        final int bin = mCursors[quantile];
+        final double fraction = (getRank(quantile) - mBelow[quantile] + 0.5d) / mCounts[bin];
+        final double lower = getLowerEdge(bin);
+        return lower + fraction * (getLowerEdge(bin + 1) - lower);
+    }
+
+    /**
+     * @param quantile the index of the quantile in the tracked quantiles
+     */
+    public double getQuantile(int quantile) {
+        return mQuantiles[quantile];
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the number of bins, which bounds the memory
+     */
+    public int getBinCount() {
+        return mCounts.length;
+    }
+
+    /**
+     * Forgets all values.
+     */
+    public void reset() {
+        for (int i = 0; i < mCounts.length; i++) mCounts[i] = 0;
+        for (int q = 0; q < mCursors.length; q++) {
+            mCursors[q] = 0;
+            mBelow[q] = 0;
+        }
+        mCount = 0;
+    }
+}
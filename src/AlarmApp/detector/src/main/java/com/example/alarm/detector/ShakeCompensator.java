@@ -0,0 +1,143 @@
+package com.example.alarm.detector;
+
+/**
+ * Estimates the global translation between two frames, e.g. of a phone vibrating on a windowsill, and aligns the
+ * previous frame to the current one before they are differenced.
+ * The translation is found on the projections of the frames: the sums of every column and every row. The gradients
+ * of the projections of both frames are compared at every shift up to the maximum, per axis, so the cost per frame
+ * is two passes over the pixels plus a search proportional to the maximum shift times the width plus the height,
+ * independent of the content. Using gradients makes the estimate insensitive to a change of the overall brightness.
+ * Only integer shifts are estimated, a moving object covering a small part of the frame doesn't shift the projections.
+ */
+public class ShakeCompensator {
+    private final int mMaxShift;
+    //a shift is only applied if it matches the projections better than no shift by this factor
+    private double mMinImprovement = 0.8d;
+
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private long[] mPrevCols;
+    private long[] mPrevRows;
+    private long[] mCols;
+    private long[] mRows;
+    private int mShiftX = 0;
+    private int mShiftY = 0;
+
+    /**
+     * @param maxShift the largest translation per axis in pixels of the analysed frame, bounds the cost of the search
+     */
+    public ShakeCompensator(int maxShift) {
+        if (maxShift < 1) throw new IllegalArgumentException("the shift has to be positive: " + maxShift);
+        mMaxShift = maxShift;
+    }
+
+    public int getMaxShift() {
+        return mMaxShift;
+    }
+
+    /**
+     * @param minImprovement the ratio of the mismatch of the projections at the best shift to the mismatch without
+     *                       a shift, below which the shift is applied, e.g. 0.8
+     */
+    public void setMinImprovement(double minImprovement) {
+        if (minImprovement <= 0 || minImprovement > 1) throw new IllegalArgumentException("the ratio has to be in (0, 1]: " + minImprovement);
+        mMinImprovement = minImprovement;
+    }
+
+    private void ensureSize(int width, int height) {
+        if (width == mWidth && height == mHeight) return;
+        if (width <= 2 * mMaxShift + 1 || height <= 2 * mMaxShift + 1) throw new IllegalArgumentException("frame " + width + "x" + height + " is too small for a shift of " + mMaxShift);
+        mWidth = width;
+        mHeight = height;
+        mPrevCols = new long[width];
+        mPrevRows = new long[height];
+        mCols = new long[width];
+        mRows = new long[height];
+    }
+
+    /**
+     * Estimates the translation from the previous to the current frame and, if there is one, writes the previous frame
+     * shifted by it. Pixels the shift moves into the frame are taken from the current frame, so they don't differ.
+     * @param aligned receives the aligned previous frame, width * height bytes
+     * @return true if the frames are shifted and aligned holds the previous frame, false if they are aligned already
+     */
+    public boolean align(byte[] previous, byte[] current, int width, int height, byte[] aligned) {
+        ensureSize(width, height);
+        project(previous, mPrevCols, mPrevRows);
+        project(current, mCols, mRows);
+        mShiftX = estimate(mPrevCols, mCols);
+        mShiftY = estimate(mPrevRows, mRows);
+        if (mShiftX == 0 && mShiftY == 0) return false;
+
+        final int dx = mShiftX, dy = mShiftY;
+        for (int y = 0; y < height; y++) {
+            final int row = y * width;
+            final int sourceY = y - dy;
+            if (sourceY < 0 || sourceY >= height) {
+                System.arraycopy(current, row, aligned, row, width);
+                continue;
+            }
+            final int sourceRow = sourceY * width;
+            //the columns of the previous frame that land in this row, the rest comes from the current frame
+            final int start = Math.max(0, dx);
+            final int end = Math.min(width, width + dx);
+            if (start > 0) System.arraycopy(current, row, aligned, row, start);
+            System.arraycopy(previous, sourceRow + start - dx, aligned, row + start, end - start);
+            if (end < width) System.arraycopy(current, row + end, aligned, row + end, width - end);
+        }
+        return true;
+    }
+
+    private void project(byte[] frame, long[] cols, long[] rows) {
+        final int width = mWidth;
+        for (int x = 0; x < width; x++) cols[x] = 0;
+        for (int y = 0, i = 0; y < mHeight; y++) {
+            long sum = 0;
+            for (int x = 0; x < width; x++, i++) {
+                final int value = frame[i] & 0xFF;
+                cols[x] += value;
+                sum += value;
+            }
+            rows[y] = sum;
+        }
+    }
+
+    /**
+     * @return the shift s minimizing the mean absolute difference of the gradients current'[i] and previous'[i - s]
+     */
+    private int estimate(long[] previous, long[] current) {
+        final int length = current.length;
+        double best = Double.MAX_VALUE;
+        double none = 0;
+        int bestShift = 0;
+        for (int s = -mMaxShift; s <= mMaxShift; s++) {
+            final int start = Math.max(0, s);
+            final int end = Math.min(length - 1, length - 1 + s);
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                sum += Math.abs((current[i + 1] - current[i]) - (previous[i + 1 - s] - previous[i - s]));
+            }
+            final double mismatch = (double) sum / (end - start);
+            if (s == 0) none = mismatch;
+            if (mismatch < best) {
+                best = mismatch;
+                bestShift = s;
+            }
+        }
+        return best < none * mMinImprovement ? bestShift : 0;
+    }
+
+    /**
+     * @return the horizontal translation from the previous to the current frame of the last alignment
+     */
+    public int getShiftX() {
+        return mShiftX;
+    }
+
+    /**
+     * @return the vertical translation from the previous to the current frame of the last alignment
+     */
+    public int getShiftY() {
+        return mShiftY;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.alarm.detector;
+
+/**
+ * A summed-area table of the absolute differences of two luma planes. After it is built, the sum of any rectangle
+ * takes four lookups, so sums over arbitrary regions cost as much as the number of rectangles they consist of.
+ */
+public class SummedAreaTable {
+    private int mWidth = -1;
+    private int mHeight = -1;
+    //(width + 1) * (height + 1) entries, the first row and column are 0
+    private int[] mTable = null;
+
+    public void ensureSize(int width, int height) {
+        if (width == mWidth && height == mHeight) return;
+        if ((long) width * height * 255 > Integer.MAX_VALUE) throw new IllegalArgumentException("frame too large: " + width + "x" + height);
+        mWidth = width;
+        mHeight = height;
+        mTable = new int[(width + 1) * (height + 1)];
+    }
+
+    /**
+     * Builds the table of the absolute differences of the two planes in a single pass.
+     * @param diff receives the per pixel differences if not null
+     * @return the sum of all absolute differences
+     */
+    public long absDiff(byte[] a, byte[] b, byte[] diff) {
+        final int stride = mWidth + 1;
+        final int[] table = mTable;
+        for (int y = 0; y < mHeight; y++) {
+            final int row = y * mWidth;
+            final int above = y * stride + 1;
+            final int current = above + stride;
+            int rowSum = 0;
+            for (int x = 0; x < mWidth; x++) {
+                int d = Math.abs((a[row + x] & 0xFF) - (b[row + x] & 0xFF));
+                if (diff != null) diff[row + x] = (byte) d;
+                rowSum += d;
+                table[current + x] = table[above + x] + rowSum;
+            }
+        }
+        return table[mHeight * stride + mWidth];
+    }
+
+    /**
+     * @return the sum of the rectangle from (x0, y0) inclusive to (x1, y1) exclusive
+     */
+    public int sum(int x0, int y0, int x1, int y1) {
+        final int stride = mWidth + 1;
+        return mTable[y1 * stride + x1] - mTable[y0 * stride + x1] - mTable[y1 * stride + x0] + mTable[y0 * stride + x0];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.alarm.detector;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A channel for the values of the analysed frames, which costs nothing on the detection thread when it is disabled
+ * and doesn't allocate when it is enabled. The detector writes primitive samples into a preallocated ring buffer,
+ * a consumer like the UI or a log exporter drains them on its own thread and does the formatting there.
+ * There must only be one thread recording and one thread draining. Samples are dropped while the ring buffer is full.
+ */
+public class Telemetry {
+    /**
+     * Which frames are recorded, the level is checked before anything else is done for a frame.
+     */
+    public enum Level {
+        OFF,
+        /** only frames that were suspicious or triggered the alarm */
+        EVENTS,
+        /** every analysed frame */
+        FRAMES
+    }
+
+    /**
+     * Receives the drained samples.
+     */
+    public interface ISampleSink {
+        void onSample(long timestamp, double diff, double movingAbsDiffAvg, double movingDiffAvg, double alarmThreshold,
+                      double maxDiff, boolean suspicious, boolean alarm);
+    }
+
+    private static final int VALUE_COUNT = 5;
+    private static final int FLAG_SUSPICIOUS = 1;
+    private static final int FLAG_ALARM = 2;
+
+    private volatile Level mLevel;
+    private final int mCapacity;
+    private final long[] mTimestamps;
+    private final double[] mValues;
+    private final int[] mFlags;
+    //the number of samples ever written and ever read, the ring buffer indices are these modulo the capacity
+    private final AtomicLong mWritten = new AtomicLong();
+    private final AtomicLong mRead = new AtomicLong();
+    private volatile long mDropped = 0;
+
+    /**
+     * @param capacity the number of samples that can wait for the consumer
+     */
+    public Telemetry(Level level, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity has to be at least 1: " + capacity);
+        mLevel = level;
+        mCapacity = capacity;
+        mTimestamps = new long[capacity];
+        mValues = new double[capacity * VALUE_COUNT];
+        mFlags = new int[capacity];
+    }
+
+    public void setLevel(Level level) {
+        mLevel = level;
+    }
+
+    public Level getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return true if a frame with the given outcome would be recorded at the current level
+     */
+    public boolean accepts(boolean suspicious, boolean alarm) {
+        Level level = mLevel;
+        return level == Level.FRAMES || (level == Level.EVENTS && (suspicious || alarm));
+    }
+
+    /**
+     * Records a sample, called by the detection thread. The caller should check {@link #accepts(boolean, boolean)} first.
+     * @return false if the sample was dropped because the consumer is behind
+     */
+    public boolean record(long timestamp, double diff, double movingAbsDiffAvg, double movingDiffAvg, double alarmThreshold,
+                          double maxDiff, boolean suspicious, boolean alarm) {
+        final long written = mWritten.get();
+        if (written - mRead.get() >= mCapacity) {
+            mDropped++;
+            return false;
+        }
+        final int index = (int) (written % mCapacity);
+        final int valueIndex = index * VALUE_COUNT;
+        mTimestamps[index] = timestamp;
+        mValues[valueIndex] = diff;
+        mValues[valueIndex + 1] = movingAbsDiffAvg;
+        mValues[valueIndex + 2] = movingDiffAvg;
+        mValues[valueIndex + 3] = alarmThreshold;
+        mValues[valueIndex + 4] = maxDiff;
+        mFlags[index] = (suspicious ? FLAG_SUSPICIOUS : 0) | (alarm ? FLAG_ALARM : 0);
+        //publishes the sample to the consumer
+        mWritten.lazySet(written + 1);
+        return true;
+    }
+
+    /**
+     * Hands all waiting samples to the sink in the order they were recorded, called by the consumer thread.
+     * @return the number of drained samples
+     */
+    public int drain(ISampleSink sink) {
+        final long written = mWritten.get();
+        long read = mRead.get();
+        int count = 0;
+        for (; read < written; read++, count++) {
+            final int index = (int) (read % mCapacity);
+            final int valueIndex = index * VALUE_COUNT;
+            sink.onSample(mTimestamps[index], mValues[valueIndex], mValues[valueIndex + 1], mValues[valueIndex + 2],
+                    mValues[valueIndex + 3], mValues[valueIndex + 4],
+                    (mFlags[index] & FLAG_SUSPICIOUS) != 0, (mFlags[index] & FLAG_ALARM) != 0);
+            //frees the slot for the producer
+            mRead.lazySet(read + 1);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of samples that were dropped because the ring buffer was full
+     */
+    public long getDroppedCount() {
+        return mDropped;
+    }
+}
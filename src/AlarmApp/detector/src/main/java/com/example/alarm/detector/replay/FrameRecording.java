@@ -0,0 +1,28 @@
+package com.example.alarm.detector.replay;
+
+/**
+ * The on disk format of recorded camera frames, all values are big endian.
+ * <pre>
+ * header: int magic, short version, int width, int height, int frameSize, byte flags
+ * frame:  long timestamp, byte type, int payloadLength, payload
+ * </pre>
+ * The frame size is width * height for luma planes only or width * height * 3 / 2 for complete NV21 frames,
+ * in both cases the first width * height bytes of a frame are its luma plane.
+ * Raw frames store the bytes as they are. If the header has {@link #FLAG_DELTA} set, key frames are deflated and
+ * delta frames are the deflated per byte differences to the previous frame, which compress well for a static camera.
+ */
+public final class FrameRecording {
+    public static final int MAGIC = 0x4146524D; //"AFRM"
+    public static final short VERSION = 1;
+
+    public static final int FLAG_DELTA = 1;
+
+    public static final byte FRAME_RAW = 0;
+    public static final byte FRAME_KEY = 1;
+    public static final byte FRAME_DELTA = 2;
+
+    public static final String FILE_EXTENSION = ".afr";
+
+    private FrameRecording() {
+    }
+}
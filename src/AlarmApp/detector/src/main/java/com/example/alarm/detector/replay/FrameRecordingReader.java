@@ -0,0 +1,141 @@
+package com.example.alarm.detector.replay;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads camera frames in the {@link FrameRecording} format one by one into a reused buffer.
+ */
+public class FrameRecordingReader implements Closeable {
+    private final DataInputStream mIn;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private final boolean mDelta;
+
+    private final byte[] mFrame;
+    private final byte[] mChunk = new byte[16 * 1024];
+    private byte[] mPayload;
+    private final Inflater mInflater = new Inflater();
+    private long mTimestamp = -1;
+    private int mFrameIndex = -1;
+
+    public FrameRecordingReader(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    /**
+     * @param in the stream holding the recording, it gets closed with the reader
+     */
+    public FrameRecordingReader(InputStream in) throws IOException {
+        mIn = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        if (mIn.readInt() != FrameRecording.MAGIC) throw new IOException("not a frame recording");
+        short version = mIn.readShort();
+        if (version != FrameRecording.VERSION) throw new IOException("unsupported recording version: " + version);
+        mWidth = mIn.readInt();
+        mHeight = mIn.readInt();
+        mFrameSize = mIn.readInt();
+        mDelta = (mIn.readByte() & FrameRecording.FLAG_DELTA) != 0;
+        mFrame = new byte[mFrameSize];
+        mPayload = new byte[mDelta ? mFrameSize / 4 : 0];
+    }
+
+    /**
+     * Reads the next frame into {@link #getFrame()}.
+     * @return false if the recording has no more frames
+     */
+    public boolean next() throws IOException {
+        long timestamp;
+        try {
+            timestamp = mIn.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+        byte type = mIn.readByte();
+        int length = mIn.readInt();
+        switch (type) {
+            case FrameRecording.FRAME_RAW:
+                if (length != mFrameSize) throw new IOException("invalid frame length: " + length);
+                mIn.readFully(mFrame, 0, mFrameSize);
+                break;
+            case FrameRecording.FRAME_KEY:
+                inflate(length, false);
+                break;
+            case FrameRecording.FRAME_DELTA:
+                if (mFrameIndex < 0) throw new IOException("recording starts with a delta frame");
+                inflate(length, true);
+                break;
+            default:
+                throw new IOException("unknown frame type: " + type);
+        }
+        mTimestamp = timestamp;
+        mFrameIndex++;
+        return true;
+    }
+
+    private void inflate(int length, boolean delta) throws IOException {
+        if (mPayload.length < length) mPayload = new byte[length];
+        mIn.readFully(mPayload, 0, length);
+        mInflater.reset();
+        mInflater.setInput(mPayload, 0, length);
+        try {
+            if (!delta) {
+                if (mInflater.inflate(mFrame, 0, mFrameSize) != mFrameSize) throw new IOException("truncated key frame");
+                return;
+            }
+            //apply the differences in chunks to avoid a second frame buffer
+            int offset = 0;
+            while (offset < mFrameSize) {
+                int read = mInflater.inflate(mChunk, 0, Math.min(mChunk.length, mFrameSize - offset));
+                if (read == 0) throw new IOException("truncated delta frame");
+                for (int i = 0; i < read; i++) {
+                    mFrame[offset + i] += mChunk[i];
+                }
+                offset += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt frame " + (mFrameIndex + 1), e);
+        }
+    }
+
+    public byte[] getFrame() {
+        return mFrame;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return the index of the current frame, -1 before the first call to {@link #next()}
+     */
+    public int getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameSize() {
+        return mFrameSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInflater.end();
+        mIn.close();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.alarm.detector.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Writes camera frames in the {@link FrameRecording} format.
+ * All buffers are allocated up front, so writing a frame does not allocate.
+ */
+public class FrameRecordingWriter implements Closeable {
+    private final DataOutputStream mOut;
+    private final int mFrameSize;
+    private final boolean mDelta;
+    private int mKeyFrameInterval = 100;
+
+    private final byte[] mLastFrame;
+    private final byte[] mDeltaFrame;
+    private final byte[] mCompressed;
+    private final Deflater mDeflater;
+    private int mFrameCount = 0;
+
+    /**
+     * @param out the stream the recording is written to, it gets closed with the writer
+     * @param frameSize the bytes per frame, see {@link FrameRecording}
+     * @param delta true to delta compress the frames
+     */
+    public FrameRecordingWriter(OutputStream out, int width, int height, int frameSize, boolean delta) throws IOException {
+        if (frameSize < width * height) throw new IllegalArgumentException("a frame has to contain at least the luma plane");
+        mOut = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        mFrameSize = frameSize;
+        mDelta = delta;
+        if (delta) {
+            mLastFrame = new byte[frameSize];
+            mDeltaFrame = new byte[frameSize];
+            //deflate can grow incompressible input slightly
+            mCompressed = new byte[frameSize + frameSize / 100 + 64];
+            mDeflater = new Deflater(Deflater.BEST_SPEED);
+        } else {
+            mLastFrame = null;
+            mDeltaFrame = null;
+            mCompressed = null;
+            mDeflater = null;
+        }
+        mOut.writeInt(FrameRecording.MAGIC);
+        mOut.writeShort(FrameRecording.VERSION);
+        mOut.writeInt(width);
+        mOut.writeInt(height);
+        mOut.writeInt(frameSize);
+        mOut.writeByte(delta ? FrameRecording.FLAG_DELTA : 0);
+    }
+
+    /**
+     * @param keyFrameInterval every this many frames a delta compressed recording stores a complete frame
+     */
+    public void setKeyFrameInterval(int keyFrameInterval) {
+        if (keyFrameInterval < 1) throw new IllegalArgumentException("key frame interval has to be at least 1: " + keyFrameInterval);
+        this.mKeyFrameInterval = keyFrameInterval;
+    }
+
+    /**
+     * Appends a frame. Only the first frameSize bytes of the given array are written.
+     * @param timestamp the time the frame was taken at in milliseconds
+     */
+    public void write(byte[] frame, long timestamp) throws IOException {
+        mOut.writeLong(timestamp);
+        if (!mDelta) {
+            mOut.writeByte(FrameRecording.FRAME_RAW);
+            mOut.writeInt(mFrameSize);
+            mOut.write(frame, 0, mFrameSize);
+        } else if (mFrameCount % mKeyFrameInterval == 0) {
+            mOut.writeByte(FrameRecording.FRAME_KEY);
+            writeDeflated(frame);
+        } else {
+            for (int i = 0; i < mFrameSize; i++) {
+                mDeltaFrame[i] = (byte) (frame[i] - mLastFrame[i]);
+            }
+            mOut.writeByte(FrameRecording.FRAME_DELTA);
+            writeDeflated(mDeltaFrame);
+        }
+        if (mDelta) System.arraycopy(frame, 0, mLastFrame, 0, mFrameSize);
+        mFrameCount++;
+    }
+
+    private void writeDeflated(byte[] data) throws IOException {
+        mDeflater.reset();
+        mDeflater.setInput(data, 0, mFrameSize);
+        mDeflater.finish();
+        int length = 0;
+        while (!mDeflater.finished()) {
+            length += mDeflater.deflate(mCompressed, length, mCompressed.length - length);
+            if (length == mCompressed.length && !mDeflater.finished()) throw new IOException("compressed frame exceeds its buffer");
+        }
+        mOut.writeInt(length);
+        mOut.write(mCompressed, 0, length);
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mDeflater != null) mDeflater.end();
+        mOut.close();
+    }
+}
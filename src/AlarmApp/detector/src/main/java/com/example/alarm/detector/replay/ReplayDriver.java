@@ -0,0 +1,221 @@
+package com.example.alarm.detector.replay;
+
+import com.example.alarm.detector.AnalysisGovernor;
+import com.example.alarm.detector.BlobLabeler;
+import com.example.alarm.detector.BlobTracker;
+import com.example.alarm.detector.DetectionScheduler;
+import com.example.alarm.detector.IlluminationNormalizer;
+import com.example.alarm.detector.LumaPyramid;
+import com.example.alarm.detector.MotionBlobs;
+import com.example.alarm.detector.MotionDetector;
+import com.example.alarm.detector.ShakeCompensator;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Feeds recorded frames through the detection as fast as possible. The recorded timestamps drive the scheduler and
+ * the detector, so a replay makes the same decisions as the device did, just without waiting for the frames.
+ */
+public class ReplayDriver {
+    /**
+     * Simulates the processing time of a device, e.g. to replay the governor on a slower device than the host.
+     */
+    public interface IProcessingTimeModel {
+        /**
+         * @param width the width of the analysed frame
+         * @param height the height of the analysed frame
+         * @param measuredTime the time the analysis took on the host in milliseconds
+         * @return the time the analysis takes on the simulated device in milliseconds
+         */
+        double getProcessingTime(int width, int height, double measuredTime);
+    }
+
+    private final MotionDetector mDetector;
+    private final DetectionScheduler mScheduler;
+    private final LumaPyramid mPyramid = new LumaPyramid();
+    private int mAnalysisLevel = 2;
+    private AnalysisGovernor mGovernor = null;
+    private IProcessingTimeModel mProcessingTimeModel = null;
+    private BlobTracker mTracker = null;
+    private final BlobLabeler mLabeler = new BlobLabeler();
+    private final MotionBlobs mBlobs = new MotionBlobs(16);
+
+    /**
+     * @param detector the detector to replay the frames through, it gets started with the first frame
+     * @param scheduler selects the analysed frames like on the device, null to analyse every recorded frame
+     */
+    public ReplayDriver(MotionDetector detector, DetectionScheduler scheduler) {
+        mDetector = detector;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @param analysisLevel the pyramid level the frames are analysed at, see {@link LumaPyramid}
+     */
+    public void setAnalysisLevel(int analysisLevel) {
+        if (analysisLevel < 0 || analysisLevel > LumaPyramid.MAX_LEVEL) throw new IllegalArgumentException("invalid analysis level: " + analysisLevel);
+        mAnalysisLevel = analysisLevel;
+    }
+
+    /**
+     * @param governor adapts the analysis level and the rate of the scheduler to the processing time, like on the
+     *                 device, null to keep them fixed. It is reset to the current settings when the replay starts.
+     */
+    public void setGovernor(AnalysisGovernor governor) {
+        mGovernor = governor;
+    }
+
+    /**
+     * @param processingTimeModel simulates the processing time the scheduler and the governor see,
+     *                            null to use the time measured on the host
+     */
+    public void setProcessingTimeModel(IProcessingTimeModel processingTimeModel) {
+        mProcessingTimeModel = processingTimeModel;
+    }
+
+    /**
+     * @param tracker follows the blobs of the differences of every analysed frame, an alarm of the detector only
+     *                counts if a confirmed track was matched in the same frame, like on the device. It is reset when
+     *                the replay starts. Null to replay the detector alone.
+     */
+    public void setTracker(BlobTracker tracker) {
+        mTracker = tracker;
+    }
+
+    /**
+     * Replays all remaining frames of the recording.
+     */
+    public ReplayResult run(FrameRecordingReader reader) throws IOException {
+        ReplayResult result = new ReplayResult();
+        int level = mAnalysisLevel;
+        mPyramid.ensureSize(reader.getWidth(), reader.getHeight(), mGovernor != null ? LumaPyramid.MAX_LEVEL : level);
+        boolean started = false;
+        while (reader.next()) {
+            final long timestamp = reader.getTimestamp();
+            if (!started) {
+                if (mScheduler != null) mScheduler.reset();
+                if (mGovernor != null) mGovernor.reset(level, mScheduler != null ? mScheduler.getAnalysisFps() : 1000d);
+                if (mTracker != null) mTracker.reset();
+                mDetector.start(timestamp);
+                started = true;
+            }
+            result.onFrame(timestamp);
+            if (mScheduler != null && !mScheduler.shouldProcess(timestamp)) continue;
+
+            final long startedAt = System.nanoTime();
+            final int width = mPyramid.getLevelWidth(level);
+            final int height = mPyramid.getLevelHeight(level);
+            byte[] luma = mPyramid.build(reader.getFrame(), level);
+            boolean alarm = mDetector.process(luma, width, height, timestamp);
+            if (mScheduler != null && mDetector.isSuspicious()) mScheduler.onSuspicion(timestamp);
+            if (mTracker != null) {
+                if (mDetector.hasDiff()) mLabeler.label(mDetector.getDiff(), width, height, mBlobs);
+                else mBlobs.clear(width, height);
+                alarm &= mTracker.update(mBlobs);
+            }
+            final long nanos = System.nanoTime() - startedAt;
+            double processingTime = nanos / 1000000d;
+            if (mProcessingTimeModel != null) processingTime = mProcessingTimeModel.getProcessingTime(width, height, processingTime);
+            if (mScheduler != null) mScheduler.onFrameProcessed(processingTime);
+            //like the app, the governor keeps the level of an armed detector
+            if (mGovernor != null) mGovernor.setLevelLocked(mDetector.getState() == MotionDetector.State.RUNNING);
+            if (mGovernor != null && mGovernor.onFrameProcessed(processingTime)) {
+                level = mGovernor.getAnalysisLevel();
+                if (mScheduler != null) mScheduler.setAnalysisFps(mGovernor.getAnalysisFps());
+            }
+            result.onAnalysed(nanos);
+            if (alarm) result.onAlarm(timestamp);
+        }
+        return result;
+    }
+
+    /**
+     * Replays recordings with the default settings of the app and prints a summary per recording.
+     * Usage: ReplayDriver [-threshold 6] [-calibrate 10000] [-fps 4] [-level 2] [-duty 0.25] [-track 3] [-shake 8] [-illumination true] [-window 6250] recording...
+     * With -duty the analysis level and rate are governed to the given duty cycle of the host.
+     * With -track alarms need a track of blobs, which was matched in the given number of frames.
+     * With -shake the previous frame is aligned to the current one, up to the given shift in analysed pixels.
+     * With -illumination true the previous frame is mapped to the illumination of the current one.
+     * With -window the statistics are the exact means over a sliding window of the given milliseconds.
+     */
+    public static void main(String[] args) throws IOException {
+        double threshold = 6d;
+        long calibrate = 10000;
+        double fps = 4;
+        int level = 2;
+        double duty = 0;
+        int trackHits = 0;
+        int maxShift = 0;
+        boolean illumination = false;
+        long window = 0;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i += 2) {
+            if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + args[i]);
+            switch (args[i]) {
+                case "-threshold":
+                    threshold = Double.parseDouble(args[i + 1]);
+                    break;
+                case "-calibrate":
+                    calibrate = Long.parseLong(args[i + 1]);
+                    break;
+                case "-fps":
+                    fps = Double.parseDouble(args[i + 1]);
+                    break;
+                case "-level":
+                    level = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-duty":
+                    duty = Double.parseDouble(args[i + 1]);
+                    break;
+                case "-track":
+                    trackHits = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-shake":
+                    maxShift = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-illumination":
+                    illumination = Boolean.parseBoolean(args[i + 1]);
+                    break;
+                case "-window":
+                    window = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+        for (; i < args.length; i++) {
+            MotionDetector detector = new MotionDetector();
+            detector.setAlarmThreshold(threshold);
+            detector.setTimeToCalibrate(calibrate);
+            if (maxShift > 0) detector.setShakeCompensator(new ShakeCompensator(maxShift));
+            if (illumination) detector.setIlluminationNormalizer(new IlluminationNormalizer());
+            if (window > 0) detector.setSlidingWindow(window, (int) (window * fps / 1000) + 1);
+            ReplayDriver driver = new ReplayDriver(detector, new DetectionScheduler(fps));
+            driver.setAnalysisLevel(level);
+            AnalysisGovernor governor = null;
+            if (duty > 0) {
+                governor = new AnalysisGovernor();
+                governor.setTargetDutyCycle(duty);
+                governor.setFpsRange(Math.min(1d, fps), fps);
+                driver.setGovernor(governor);
+            }
+            if (trackHits > 0) {
+                BlobTracker tracker = new BlobTracker(16);
+                tracker.setMinHits(trackHits);
+                driver.setTracker(tracker);
+            }
+            FrameRecordingReader reader = new FrameRecordingReader(new File(args[i]));
+            try {
+                ReplayResult result = driver.run(reader);
+                System.out.println(args[i] + ": " + result);
+                if (governor != null) System.out.println("  governor: " + governor);
+                for (long alarm : result.getAlarms()) {
+                    System.out.println("  alarm at " + alarm + " ms");
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+}
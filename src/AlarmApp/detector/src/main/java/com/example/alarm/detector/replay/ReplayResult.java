@@ -0,0 +1,109 @@
+package com.example.alarm.detector.replay;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of replaying a recording through the detection: which frames were analysed and when the alarm fired.
+ */
+public class ReplayResult {
+    private int mFrameCount = 0;
+    private int mAnalysedCount = 0;
+    private long mFirstTimestamp = -1;
+    private long mLastTimestamp = -1;
+    private long mProcessingNanos = 0;
+    private long[] mAlarms = new long[16];
+    private int mAlarmCount = 0;
+
+    void onFrame(long timestamp) {
+        if (mFirstTimestamp == -1) mFirstTimestamp = timestamp;
+        mLastTimestamp = timestamp;
+        mFrameCount++;
+    }
+
+    void onAnalysed(long processingNanos) {
+        mAnalysedCount++;
+        mProcessingNanos += processingNanos;
+    }
+
+    void onAlarm(long timestamp) {
+        if (mAlarmCount == mAlarms.length) mAlarms = Arrays.copyOf(mAlarms, mAlarmCount * 2);
+        mAlarms[mAlarmCount++] = timestamp;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getAnalysedCount() {
+        return mAnalysedCount;
+    }
+
+    /**
+     * @return the time the recording spans in milliseconds
+     */
+    public long getDuration() {
+        return mFrameCount == 0 ? 0 : mLastTimestamp - mFirstTimestamp;
+    }
+
+    /**
+     * @return the time the detection took for all analysed frames, excluding reading the recording
+     */
+    public long getProcessingNanos() {
+        return mProcessingNanos;
+    }
+
+    public int getAlarmCount() {
+        return mAlarmCount;
+    }
+
+    /**
+     * @return the timestamps of all frames that triggered the alarm
+     */
+    public long[] getAlarms() {
+        return Arrays.copyOf(mAlarms, mAlarmCount);
+    }
+
+    /**
+     * @return the time from the start of the event to the first alarm during it, -1 if the event was missed
+     */
+    public long getDetectionLatency(long eventStart, long eventEnd) {
+        for (int i = 0; i < mAlarmCount; i++) {
+            if (mAlarms[i] >= eventStart && mAlarms[i] <= eventEnd) return mAlarms[i] - eventStart;
+        }
+        return -1;
+    }
+
+    /**
+     * @param events the known events as pairs of start and end timestamp, alarms during them are no false alarms
+     * @return the number of alarms outside of the given events
+     */
+    public int getFalseAlarmCount(long[][] events) {
+        int falseAlarms = 0;
+        for (int i = 0; i < mAlarmCount; i++) {
+            boolean duringEvent = false;
+            for (long[] event : events) {
+                if (mAlarms[i] >= event[0] && mAlarms[i] <= event[1]) {
+                    duringEvent = true;
+                    break;
+                }
+            }
+            if (!duringEvent) falseAlarms++;
+        }
+        return falseAlarms;
+    }
+
+    /**
+     * @return the false alarms per hour of recording, see {@link #getFalseAlarmCount(long[][])}
+     */
+    public double getFalseAlarmRate(long[][] events) {
+        long duration = getDuration();
+        return duration == 0 ? 0 : getFalseAlarmCount(events) * 3600000d / duration;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d frames over %.1f s, %d analysed in %.1f ms (%.3f ms/frame), %d alarms",
+                mFrameCount, getDuration() / 1000d, mAnalysedCount, mProcessingNanos / 1000000d,
+                mAnalysedCount == 0 ? 0 : mProcessingNanos / 1000000d / mAnalysedCount, mAlarmCount);
+    }
+}
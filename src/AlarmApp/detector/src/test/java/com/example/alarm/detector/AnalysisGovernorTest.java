@@ -0,0 +1,88 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnalysisGovernorTest {
+    /**
+     * Feeds the governor frames whose processing time is proportional to the analysed pixels per frame.
+     */
+    private static void run(AnalysisGovernor governor, double msAtLevel0, int frames) {
+        for (int i = 0; i < frames; i++) {
+            governor.onFrameProcessed(msAtLevel0 / (1 << (2 * governor.getAnalysisLevel())));
+        }
+    }
+
+    @Test
+    public void reset_startsAtGivenSetting() throws Exception {
+        AnalysisGovernor governor = new AnalysisGovernor();
+        governor.reset(2, 4);
+        assertEquals(2, governor.getAnalysisLevel());
+        assertEquals(4, governor.getAnalysisFps(), 0);
+        assertEquals(AnalysisGovernor.State.SETTLING, governor.getState());
+    }
+
+    @Test
+    public void ladder_lowersResolutionBeforeRate() throws Exception {
+        AnalysisGovernor governor = new AnalysisGovernor();
+        governor.setSettleFrames(1);
+        governor.setFpsRange(0.5, 4);
+        governor.reset(0, 4);
+        int[] levels = {1, 2, 3, 3, 3, 3};
+        double[] fps = {4, 4, 4, 2, 1, 0.5};
+        for (int i = 0; i < levels.length; i++) {
+            assertTrue(governor.onFrameProcessed(1000));
+            assertEquals(levels[i], governor.getAnalysisLevel());
+            assertEquals(fps[i], governor.getAnalysisFps(), 0);
+        }
+        assertFalse(governor.onFrameProcessed(1000));
+        assertEquals(AnalysisGovernor.State.OVER_BUDGET, governor.getState());
+    }
+
+    @Test
+    public void lockedLevel_onlyLowersRate() throws Exception {
+        AnalysisGovernor governor = new AnalysisGovernor();
+        governor.setSettleFrames(1);
+        governor.setFpsRange(0.5, 4);
+        governor.reset(1, 4);
+        governor.setLevelLocked(true);
+        double[] fps = {2, 1, 0.5};
+        for (int i = 0; i < fps.length; i++) {
+            assertTrue(governor.onFrameProcessed(1000));
+            assertEquals(1, governor.getAnalysisLevel());
+            assertEquals(fps[i], governor.getAnalysisFps(), 0);
+        }
+        assertFalse(governor.onFrameProcessed(1000));
+        //released, the governor continues with the resolution, from the cheapest level at the highest rate
+        governor.setLevelLocked(false);
+        assertEquals(2, governor.getAnalysisLevel());
+        assertTrue(governor.onFrameProcessed(1000));
+        assertEquals(3, governor.getAnalysisLevel());
+    }
+
+    @Test
+    public void hysteresis_preventsOscillation() throws Exception {
+        AnalysisGovernor governor = new AnalysisGovernor();
+        governor.reset(0, 4);
+        //300 ms at level 0 exceed the target at 4 fps, 75 ms at level 1 are within the band above the target
+        run(governor, 300, 200);
+        assertEquals(1, governor.getAnalysisLevel());
+        assertEquals(1, governor.getChangeCount());
+        assertEquals(AnalysisGovernor.State.STEADY, governor.getState());
+        assertEquals(0.3, governor.getDutyCycle(), 1e-9);
+    }
+
+    @Test
+    public void steppingUp_needsHeadroom() throws Exception {
+        AnalysisGovernor governor = new AnalysisGovernor();
+        governor.reset(2, 4);
+        //level 1 would take 0.16 of the core, below the target minus the hysteresis
+        run(governor, 160, 8);
+        assertEquals(1, governor.getAnalysisLevel());
+        //level 0 would take 0.64
+        run(governor, 160, 100);
+        assertEquals(1, governor.getAnalysisLevel());
+        assertEquals(1, governor.getChangeCount());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BlobLabelerTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    private static void fill(byte[] map, int left, int top, int width, int height, int value) {
+        for (int y = top; y < top + height; y++) Arrays.fill(map, y * WIDTH + left, y * WIDTH + left + width, (byte) value);
+    }
+
+    @Test
+    public void label_findsConnectedRegions() throws Exception {
+        byte[] map = new byte[WIDTH * HEIGHT];
+        //a U shape, its arms are only joined at the bottom
+        fill(map, 2, 2, 3, 10, 200);
+        fill(map, 10, 2, 3, 10, 200);
+        fill(map, 2, 12, 11, 2, 200);
+        //a square below the threshold and one above
+        fill(map, 20, 20, 5, 5, 30);
+        fill(map, 30, 20, 4, 5, 31);
+        //a speck
+        fill(map, 38, 0, 1, 1, 255);
+
+        BlobLabeler labeler = new BlobLabeler();
+        MotionBlobs blobs = new MotionBlobs(8);
+        labeler.label(map, WIDTH, HEIGHT, blobs);
+
+        assertEquals(2, blobs.getCount());
+        assertEquals(WIDTH, blobs.getMapWidth());
+        assertEquals(2, blobs.getLeft(0));
+        assertEquals(2, blobs.getTop(0));
+        assertEquals(11, blobs.getWidth(0));
+        assertEquals(12, blobs.getHeight(0));
+        assertEquals(82, blobs.getArea(0), 0);
+        assertEquals(7, blobs.getCentroidX(0), 1e-9);
+        assertEquals(30, blobs.getLeft(1));
+        assertEquals(20, blobs.getArea(1), 0);
+        assertEquals(31.5, blobs.getCentroidX(1), 1e-9);
+        assertEquals(22, blobs.getCentroidY(1), 1e-9);
+
+        labeler.setMinArea(1);
+        labeler.label(map, WIDTH, HEIGHT, blobs);
+        assertEquals(3, blobs.getCount());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlobTrackerTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    private static void addBox(MotionBlobs blobs, int left, int top, int width, int height) {
+        blobs.add(left, top, width, height, width * height, left + (width - 1) / 2d, top + (height - 1) / 2d);
+    }
+
+    @Test
+    public void update_confirmsMovingBlob() throws Exception {
+        BlobTracker tracker = new BlobTracker(8);
+        MotionBlobs blobs = new MotionBlobs(8);
+        boolean[] confirmed = new boolean[6];
+        for (int f = 0; f < confirmed.length; f++) {
+            blobs.clear(WIDTH, HEIGHT);
+            addBox(blobs, 20 + 6 * f, 40, 12, 20);
+            confirmed[f] = tracker.update(blobs);
+        }
+        //the third hit is 12 pixels, 7.5% of the width, away from the start
+        assertArrayEquals(new boolean[] {false, false, true, true, true, true}, confirmed);
+        assertEquals(1, tracker.getTrackCount());
+        assertEquals(6, tracker.getHits(0));
+        assertEquals(30d / WIDTH, tracker.getDisplacement(0), 1e-9);
+    }
+
+    @Test
+    public void update_doesNotConfirmBlobInPlace() throws Exception {
+        BlobTracker tracker = new BlobTracker(8);
+        MotionBlobs blobs = new MotionBlobs(8);
+        for (int f = 0; f < 20; f++) {
+            blobs.clear(WIDTH, HEIGHT);
+            //flicker that changes its shape but stays in place
+            addBox(blobs, 50 + f % 2, 50, 10 + 2 * (f % 3), 10);
+            assertFalse(tracker.update(blobs));
+        }
+        assertEquals(1, tracker.getTrackCount());
+        assertEquals(20, tracker.getHits(0));
+
+        tracker.setMinDisplacement(0);
+        blobs.clear(WIDTH, HEIGHT);
+        addBox(blobs, 50, 50, 10, 10);
+        assertTrue(tracker.update(blobs));
+    }
+
+    @Test
+    public void update_doesNotConfirmRandomSpecks() throws Exception {
+        BlobTracker tracker = new BlobTracker(16);
+        MotionBlobs blobs = new MotionBlobs(16);
+        Random random = new Random(5);
+        for (int f = 0; f < 1000; f++) {
+            blobs.clear(WIDTH, HEIGHT);
+            for (int i = 0; i < 3; i++) addBox(blobs, random.nextInt(WIDTH - 4), random.nextInt(HEIGHT - 4), 3, 3);
+            assertFalse("frame " + f, tracker.update(blobs));
+        }
+    }
+
+    @Test
+    public void update_keepsTrackOverMissesAndDropsItAfterwards() throws Exception {
+        BlobTracker tracker = new BlobTracker(4);
+        MotionBlobs blobs = new MotionBlobs(4);
+        blobs.clear(WIDTH, HEIGHT);
+        addBox(blobs, 10, 10, 10, 10);
+        tracker.update(blobs);
+        final int id = tracker.getId(0);
+
+        blobs.clear(WIDTH, HEIGHT);
+        tracker.update(blobs);
+        tracker.update(blobs);
+        assertEquals(1, tracker.getTrackCount());
+        assertEquals(2, tracker.getMisses(0));
+
+        //the blob reappears at a distance, only the center is close enough
+        addBox(blobs, 20, 10, 10, 10);
+        tracker.update(blobs);
+        assertEquals(id, tracker.getId(0));
+        assertEquals(2, tracker.getHits(0));
+        assertEquals(0, tracker.getMisses(0));
+
+        blobs.clear(WIDTH, HEIGHT);
+        for (int f = 0; f < 3; f++) tracker.update(blobs);
+        assertEquals(0, tracker.getTrackCount());
+        assertFalse(tracker.isActive(0));
+
+        //positions are fractions of the map, whatever its resolution
+        blobs.clear(WIDTH / 2, HEIGHT / 2);
+        addBox(blobs, 11, 5, 5, 5);
+        tracker.update(blobs);
+        assertTrue(tracker.getId(0) > id);
+        assertEquals(22d / WIDTH, tracker.getLeft(0), 1e-9);
+        assertEquals(32d / WIDTH, tracker.getRight(0), 1e-9);
+        assertEquals(27d / WIDTH, tracker.getCenterX(0), 1e-9);
+    }
+
+    @Test
+    public void update_doesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        BlobTracker tracker = new BlobTracker(16);
+        MotionBlobs[] frames = new MotionBlobs[32];
+        Random random = new Random(7);
+        for (int f = 0; f < frames.length; f++) {
+            frames[f] = new MotionBlobs(16);
+            frames[f].clear(WIDTH, HEIGHT);
+            addBox(frames[f], 4 * f, 60, 12, 20);
+            for (int i = 0; i < 5; i++) addBox(frames[f], random.nextInt(WIDTH - 8), random.nextInt(HEIGHT - 8), 4, 4);
+        }
+        final int warmUp = 1000;
+        final int frameCount = 10000;
+        long allocatedAt = 0;
+        for (int i = 0; i < warmUp + frameCount; i++) {
+            if (i == warmUp) allocatedAt = threadBean.getThreadAllocatedBytes(threadId);
+            tracker.update(frames[i % frames.length]);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedAt;
+        //the measurement itself may allocate a few bytes, an allocation per frame would be at least 16 bytes
+        assertEquals(0, allocated / frameCount);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CalibrationProfileTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    private static CalibrationProfile createProfile(byte[] frame, String mask) {
+        int[] fingerprint = new int[CalibrationProfile.FINGERPRINT_COLS * CalibrationProfile.FINGERPRINT_ROWS];
+        CalibrationProfile.fingerprint(frame, WIDTH, HEIGHT, fingerprint);
+        return new CalibrationProfile(WIDTH, HEIGHT, 2, mask, 1.5d, 0.25d, 2, 1, new double[] {1d, 2d}, new double[] {0.5d, 0.125d}, fingerprint);
+    }
+
+    @Test
+    public void decode_restoresEncodedProfile() throws Exception {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) frame[i] = (byte) (i % WIDTH);
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(false, 0f, 0f, 0.5f, 0f, 0.5f, 0.5f));
+        mask.addPolygon(new MotionMask.Polygon(false, 0.5f, 0.5f, 1f, 0.5f, 1f, 1f));
+        CalibrationProfile profile = CalibrationProfile.decode(createProfile(frame, mask.encode()).encode());
+        assertEquals(WIDTH, profile.getWidth());
+        assertEquals(HEIGHT, profile.getHeight());
+        assertEquals(2, profile.getAnalysisLevel());
+        assertEquals(1.5d, profile.getAbsDiffAvg(), 0);
+        assertEquals(0.25d, profile.getDiffAvg(), 0);
+        assertArrayEquals(new double[] {1d, 2d}, profile.getCellAbsDiffAvgs(), 0);
+        assertArrayEquals(new double[] {0.5d, 0.125d}, profile.getCellDiffAvgs(), 0);
+        assertEquals(0, profile.getFingerprintDistance(frame, WIDTH, HEIGHT), 0);
+        assertTrue(profile.isCompatible(WIDTH, HEIGHT, MotionMask.decode(mask.encode()), new MotionGrid(2, 1)));
+        assertFalse(profile.isCompatible(WIDTH, HEIGHT, null, new MotionGrid(2, 1)));
+        assertFalse(profile.isCompatible(WIDTH, HEIGHT, mask, new MotionGrid(8, 6)));
+        assertFalse(profile.isCompatible(WIDTH / 2, HEIGHT / 2, mask, null));
+    }
+
+    @Test
+    public void getFingerprintDistance_isMeanLumaChange() throws Exception {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        Arrays.fill(frame, (byte) 100);
+        CalibrationProfile profile = createProfile(frame, "");
+        Arrays.fill(frame, (byte) 130);
+        assertEquals(30, profile.getFingerprintDistance(frame, WIDTH, HEIGHT), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsOtherVersion() throws Exception {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        CalibrationProfile.decode("0" + createProfile(frame, "").encode().substring(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsMalformedValues() throws Exception {
+        CalibrationProfile.decode("1/160,120,x/1,1/0,0////");
+    }
+}
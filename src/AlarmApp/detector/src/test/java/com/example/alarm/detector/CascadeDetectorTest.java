@@ -0,0 +1,112 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds a noisy 160x120 scene into the cascade, the trigger analyses it at level 2 and the confirmation at level 0.
+ */
+public class CascadeDetectorTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int TRIGGER_LEVEL = 2;
+    private static final long FRAME_INTERVAL = 250;
+    private static final int FRAME_COUNT = 400;
+    private static final int FLASH_FRAME = 250;
+    private static final int EVENT_START = 300;
+    private static final int EVENT_END = 320;
+
+    /**
+     * @param flash true to brighten a single frame, like a passing headlight
+     * @param event true to move an object through the scene
+     */
+    private static void draw(Random random, byte[] background, int index, boolean flash, boolean event, byte[] frame) {
+        int brightness = flash && index == FLASH_FRAME ? 40 : 0;
+        for (int i = 0; i < frame.length; i++) frame[i] = (byte) ((background[i] & 0xFF) + brightness + random.nextInt(4));
+        if (event && index >= EVENT_START && index < EVENT_END) {
+            int x = (index - EVENT_START) * 6;
+            for (int y = 40; y < 70; y++) {
+                for (int col = x; col < x + 20; col++) frame[y * WIDTH + col] = (byte) 250;
+            }
+        }
+    }
+
+    private static byte[] background() {
+        Random random = new Random(13);
+        byte[] background = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < background.length; i++) background[i] = (byte) (60 + random.nextInt(120));
+        return background;
+    }
+
+    private static boolean[] runCascade(CascadeDetector cascade, boolean flash, boolean event) {
+        Random random = new Random(17);
+        byte[] background = background();
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        LumaPyramid pyramid = new LumaPyramid();
+        pyramid.ensureSize(WIDTH, HEIGHT, TRIGGER_LEVEL);
+        boolean[] alarms = new boolean[FRAME_COUNT];
+        cascade.setTimeToCalibrate(10000);
+        cascade.start(0);
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            draw(random, background, f, flash, event, frame);
+            long timestamp = f * FRAME_INTERVAL;
+            byte[] low = pyramid.build(frame, TRIGGER_LEVEL);
+            if (cascade.trigger(low, pyramid.getLevelWidth(TRIGGER_LEVEL), pyramid.getLevelHeight(TRIGGER_LEVEL), timestamp)) {
+                alarms[f] = cascade.confirm(frame, WIDTH, HEIGHT, timestamp);
+            }
+        }
+        return alarms;
+    }
+
+    private static boolean[] runSingleStage(boolean flash, boolean event) {
+        Random random = new Random(17);
+        byte[] background = background();
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        boolean[] alarms = new boolean[FRAME_COUNT];
+        MotionDetector detector = new MotionDetector();
+        detector.setTimeToCalibrate(10000);
+        detector.start(0);
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            draw(random, background, f, flash, event, frame);
+            alarms[f] = detector.process(frame, WIDTH, HEIGHT, f * FRAME_INTERVAL);
+        }
+        return alarms;
+    }
+
+    private static boolean any(boolean[] alarms, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (alarms[i]) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void event_isConfirmed() throws Exception {
+        CascadeDetector cascade = new CascadeDetector();
+        boolean[] alarms = runCascade(cascade, false, true);
+        assertFalse(any(alarms, 0, EVENT_START));
+        //the third frame of the event confirms it
+        assertTrue(any(alarms, EVENT_START, EVENT_START + 3));
+        //10 s of calibration, a maintenance frame per second and the confirmation windows of the event
+        assertTrue("confirmation ratio " + cascade.getConfirmationRatio(), cascade.getConfirmationRatio() < 0.4);
+    }
+
+    @Test
+    public void flash_firesTriggerButIsNotConfirmed() throws Exception {
+        assertTrue(any(runSingleStage(true, false), FLASH_FRAME, FLASH_FRAME + 2));
+        boolean[] alarms = runCascade(new CascadeDetector(), true, false);
+        assertFalse(any(alarms, 0, FRAME_COUNT));
+    }
+
+    @Test
+    public void quietScene_onlyMaintenanceFrames() throws Exception {
+        CascadeDetector cascade = new CascadeDetector();
+        boolean[] alarms = runCascade(cascade, false, false);
+        assertFalse(any(alarms, 0, FRAME_COUNT));
+        //40 calibration frames, a maintenance frame per second and a few windows opened by noise
+        assertTrue("confirmation ratio " + cascade.getConfirmationRatio(), cascade.getConfirmationRatio() < 0.4);
+    }
+}
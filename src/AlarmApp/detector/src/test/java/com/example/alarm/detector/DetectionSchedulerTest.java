@@ -0,0 +1,97 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds simulated preview frame timestamps into the DetectionScheduler.
+ */
+public class DetectionSchedulerTest {
+    private static final long PREVIEW_INTERVAL = 33;
+
+    private static int countProcessed(DetectionScheduler scheduler, long from, long duration) {
+        int processed = 0;
+        for (long now = from; now < from + duration; now += PREVIEW_INTERVAL) {
+            if (scheduler.shouldProcess(now)) processed++;
+        }
+        return processed;
+    }
+
+    @Test
+    public void fixedRate_samplesAtAnalysisRate() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(4);
+        int processed = countProcessed(scheduler, 0, 10000);
+        assertEquals(40, processed, 1);
+    }
+
+    @Test
+    public void fixedRate_reportsIntervalBetweenAnalysedFrames() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(4);
+        assertTrue(scheduler.shouldProcess(0));
+        assertEquals(0, scheduler.getLastInterval());
+        long now = PREVIEW_INTERVAL;
+        while (!scheduler.shouldProcess(now)) now += PREVIEW_INTERVAL;
+        assertEquals(264, scheduler.getLastInterval());
+    }
+
+    @Test
+    public void fixedRate_previewSlowerThanAnalysis_processesEveryFrame() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(60);
+        assertEquals(304, countProcessed(scheduler, 0, 10000));
+    }
+
+    @Test
+    public void adaptive_stretchesIntervalOnSlowProcessing() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(4);
+        scheduler.setMode(DetectionScheduler.Mode.ADAPTIVE);
+        scheduler.setMaxLoad(0.25d);
+        scheduler.onFrameProcessed(200);
+        assertEquals(800, scheduler.getCurrentInterval(0));
+        assertEquals(13, countProcessed(scheduler, 0, 10000), 1);
+    }
+
+    @Test
+    public void fixedRate_ignoresProcessingTime() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(4);
+        scheduler.onFrameProcessed(200);
+        assertEquals(250, scheduler.getCurrentInterval(0));
+    }
+
+    @Test
+    public void burst_increasesRateAfterSuspicion() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(4);
+        scheduler.setMode(DetectionScheduler.Mode.BURST);
+        scheduler.setBurstFps(15);
+        scheduler.setBurstDuration(2000);
+        assertEquals(8, countProcessed(scheduler, 0, 2000), 1);
+
+        scheduler.onSuspicion(2000);
+        assertTrue(scheduler.isBursting(2000));
+        assertEquals(30, countProcessed(scheduler, 2000, 2000), 1);
+
+        assertFalse(scheduler.isBursting(4000));
+        assertEquals(8, countProcessed(scheduler, 4000, 2000), 1);
+    }
+
+    @Test
+    public void fixedRate_ignoresSuspicion() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(4);
+        scheduler.onSuspicion(0);
+        assertFalse(scheduler.isBursting(0));
+    }
+
+    @Test
+    public void reset_processesNextFrame() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(4);
+        assertTrue(scheduler.shouldProcess(0));
+        assertFalse(scheduler.shouldProcess(PREVIEW_INTERVAL));
+        scheduler.reset();
+        assertTrue(scheduler.shouldProcess(2 * PREVIEW_INTERVAL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAnalysisFps_rejectsZero() throws Exception {
+        new DetectionScheduler(0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IlluminationNormalizerTest {
+    private static final int PIXELS = 80 * 60;
+
+    private static byte[] frame(Random random, double gain, double offset) {
+        byte[] frame = new byte[PIXELS];
+        Random scene = new Random(1);
+        for (int i = 0; i < PIXELS; i++) {
+            frame[i] = (byte) Math.round((40 + scene.nextInt(150)) * gain + offset + random.nextInt(3));
+        }
+        return frame;
+    }
+
+    @Test
+    public void normalize_mapsPreviousFrameToIlluminationOfCurrent() throws Exception {
+        Random random = new Random(2);
+        byte[] previous = frame(random, 1, 0);
+        byte[] current = frame(random, 1.25, 10);
+        byte[] normalized = new byte[PIXELS];
+        IlluminationNormalizer normalizer = new IlluminationNormalizer();
+
+        assertTrue(normalizer.normalize(previous, current, PIXELS, normalized));
+        assertEquals(1.25, normalizer.getGain(), 0.02);
+        assertEquals(10, normalizer.getOffset(), 3);
+        long before = 0, after = 0;
+        for (int i = 0; i < PIXELS; i++) {
+            before += Math.abs((current[i] & 0xFF) - (previous[i] & 0xFF));
+            after += Math.abs((current[i] & 0xFF) - (normalized[i] & 0xFF));
+        }
+        //the light changed the frame by about 40 per pixel, the noise is 1 per pixel
+        assertTrue("before " + before / PIXELS, before / PIXELS > 30);
+        assertTrue("after " + (double) after / PIXELS, (double) after / PIXELS < 2);
+    }
+
+    @Test
+    public void normalize_ignoresNoise() throws Exception {
+        Random random = new Random(3);
+        IlluminationNormalizer normalizer = new IlluminationNormalizer();
+        assertFalse(normalizer.normalize(frame(random, 1, 0), frame(random, 1, 0), PIXELS, new byte[PIXELS]));
+        assertEquals(1, normalizer.getGain(), 0);
+        assertEquals(0, normalizer.getOffset(), 0);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LumaPyramidTest {
+
+    @Test
+    public void build_averagesBlocks() throws Exception {
+        LumaPyramid pyramid = new LumaPyramid();
+        pyramid.ensureSize(4, 2, 1);
+        byte[] luma = {0, 2, (byte) 200, (byte) 200, 4, 6, (byte) 255, (byte) 255};
+        byte[] level = pyramid.build(luma, 1);
+        assertEquals(2, pyramid.getLevelWidth(1));
+        assertEquals(1, pyramid.getLevelHeight(1));
+        assertEquals(3, level[0] & 0xFF);
+        assertEquals(228, level[1] & 0xFF);
+    }
+
+    @Test
+    public void build_oddSize_roundsUp() throws Exception {
+        LumaPyramid pyramid = new LumaPyramid();
+        pyramid.ensureSize(641, 481, 3);
+        assertEquals(81, pyramid.getLevelWidth(3));
+        assertEquals(61, pyramid.getLevelHeight(3));
+        byte[] luma = new byte[641 * 481 * 3 / 2];
+        Arrays.fill(luma, (byte) 90);
+        byte[] level = pyramid.build(luma, 3);
+        for (int i = 0; i < 81 * 61; i++) assertEquals(90, level[i]);
+    }
+
+    @Test
+    public void build_levelZero_referencesPlane() throws Exception {
+        LumaPyramid pyramid = new LumaPyramid();
+        pyramid.ensureSize(4, 4, 0);
+        byte[] luma = new byte[16];
+        assertSame(luma, pyramid.build(luma, 0));
+        assertFalse(pyramid.ensureSize(4, 4, 0));
+        assertTrue(pyramid.ensureSize(4, 4, 1));
+    }
+}
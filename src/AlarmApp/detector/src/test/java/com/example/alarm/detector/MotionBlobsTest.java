@@ -0,0 +1,43 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MotionBlobsTest {
+    @Test
+    public void add_fullReplacesSmallest() throws Exception {
+        MotionBlobs blobs = new MotionBlobs(2);
+        blobs.clear(100, 100);
+        assertTrue(blobs.add(0, 0, 5, 5, 25, 2.5, 2.5));
+        assertTrue(blobs.add(10, 10, 2, 2, 4, 11, 11));
+        assertTrue(blobs.add(20, 20, 3, 3, 9, 21.5, 21.5));
+        assertFalse(blobs.add(30, 30, 1, 1, 1, 30.5, 30.5));
+        assertEquals(2, blobs.getCount());
+        assertEquals(25, blobs.getArea(0), 0);
+        assertEquals(9, blobs.getArea(1), 0);
+        assertEquals(20, blobs.getLeft(1));
+
+        blobs.clear(50, 40);
+        assertEquals(0, blobs.getCount());
+        assertEquals(50, blobs.getMapWidth());
+    }
+
+    @Test
+    public void rule_countsOnlyLargeEnoughBlobs() throws Exception {
+        MotionBlobs blobs = new MotionBlobs(8);
+        blobs.clear(100, 100);
+        //1% and 0.5% of the frame, and a speck
+        blobs.add(0, 0, 10, 10, 100, 5, 5);
+        blobs.add(50, 50, 10, 5, 50, 55, 52.5);
+        blobs.add(90, 90, 1, 1, 1, 90.5, 90.5);
+
+        assertTrue(new BlobAlarmRule(0.004, 2, 0.015).matches(blobs));
+        assertFalse(new BlobAlarmRule(0.004, 3, 0).matches(blobs));
+        assertFalse(new BlobAlarmRule(0.006, 2, 0).matches(blobs));
+        assertFalse(new BlobAlarmRule(0.004, 1, 0.02).matches(blobs));
+
+        blobs.clear(100, 100);
+        assertFalse(new BlobAlarmRule(0, 1, 0).matches(blobs));
+    }
+}
@@ -0,0 +1,468 @@
+package com.example.alarm.detector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs synthetic luma planes through the MotionDetector.
+ */
+public class MotionDetectorTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final long FRAME_INTERVAL = 250;
+
+    private MotionDetector mDetector;
+    private CountingListener mListener;
+    private Random mRandom;
+    private byte[] mFrame;
+
+    @Before
+    public void setUp() throws Exception {
+        mDetector = new MotionDetector();
+        mListener = new CountingListener();
+        mDetector.setListener(mListener);
+        mRandom = new Random(42);
+        mFrame = new byte[WIDTH * HEIGHT];
+    }
+
+    private void nextNoiseFrame() {
+        nextNoiseFrame(5);
+    }
+
+    private void nextNoiseFrame(int noise) {
+        for (int i = 0; i < mFrame.length; i++) {
+            mFrame[i] = (byte) (100 + mRandom.nextInt(noise));
+        }
+    }
+
+    private void drawObject(int x, int y, int size) {
+        for (int row = y; row < Math.min(HEIGHT, y + size); row++) {
+            for (int col = x; col < Math.min(WIDTH, x + size); col++) {
+                mFrame[row * WIDTH + col] = (byte) 250;
+            }
+        }
+    }
+
+    /**
+     * Processes noise frames from the given time on.
+     * @return the timestamp of the next frame
+     */
+    private long processNoise(long from, int frames) {
+        long timestamp = from;
+        for (int i = 0; i < frames; i++) {
+            nextNoiseFrame();
+            mDetector.process(mFrame, WIDTH, HEIGHT, timestamp);
+            timestamp += FRAME_INTERVAL;
+        }
+        return timestamp;
+    }
+
+    @Test
+    public void idle_ignoresFrames() throws Exception {
+        processNoise(0, 10);
+        assertEquals(MotionDetector.State.IDLE, mDetector.getState());
+        assertFalse(mDetector.hasDiff());
+    }
+
+    @Test
+    public void start_switchesToRunningAfterCalibration() throws Exception {
+        mDetector.setTimeToCalibrate(10000);
+        mDetector.start(0);
+        assertEquals(1, mListener.mCalibrating);
+        long timestamp = processNoise(0, 40);
+        assertEquals(MotionDetector.State.CALIBRATING, mDetector.getState());
+        processNoise(timestamp, 1);
+        assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+        assertEquals(1, mListener.mRun);
+    }
+
+    @Test
+    public void staticScene_doesNotTriggerAlarm() throws Exception {
+        mDetector.start(0);
+        processNoise(0, 400);
+        assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+        assertEquals(0, mListener.mAlarm);
+    }
+
+    @Test
+    public void movingObject_triggersAlarm() throws Exception {
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        nextNoiseFrame();
+        drawObject(40, 40, 40);
+        assertTrue(mDetector.process(mFrame, WIDTH, HEIGHT, timestamp));
+        assertTrue(mDetector.isAlarm());
+        assertEquals(1, mListener.mAlarm);
+    }
+
+    @Test
+    public void movingObject_duringCalibration_doesNotTriggerAlarm() throws Exception {
+        mDetector.start(0);
+        long timestamp = processNoise(0, 10);
+        nextNoiseFrame();
+        drawObject(40, 40, 40);
+        assertFalse(mDetector.process(mFrame, WIDTH, HEIGHT, timestamp));
+        assertTrue(mDetector.isSuspicious());
+        assertEquals(0, mListener.mAlarm);
+    }
+
+    /**
+     * Calibrates with a flash of light in the middle of the calibration, then moves a small object.
+     * @return true if the object triggered the alarm
+     */
+    private boolean detectAfterCalibrationSpike() {
+        mDetector.start(0);
+        long timestamp = processNoise(0, 35);
+        java.util.Arrays.fill(mFrame, (byte) 250);
+        mDetector.process(mFrame, WIDTH, HEIGHT, timestamp);
+        timestamp = processNoise(timestamp + FRAME_INTERVAL, 8);
+        assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+        nextNoiseFrame();
+        drawObject(40, 40, 12);
+        return mDetector.process(mFrame, WIDTH, HEIGHT, timestamp);
+    }
+
+    @Test
+    public void calibrationSpike_skewsMovingAverageThreshold() throws Exception {
+        assertFalse(detectAfterCalibrationSpike());
+    }
+
+    @Test
+    public void quantileThreshold_ignoresCalibrationSpike() throws Exception {
+        mDetector.setQuantileThreshold(0.9d, 6d);
+        assertTrue(detectAfterCalibrationSpike());
+    }
+
+    @Test
+    public void quantileThreshold_staticScene_doesNotTriggerAlarm() throws Exception {
+        mDetector.setQuantileThreshold(0.9d, 6d);
+        mDetector.start(0);
+        processNoise(0, 400);
+        assertEquals(0, mListener.mAlarm);
+        assertTrue(mDetector.getCurrAlarmThreshold() > mDetector.getLastDiff());
+    }
+
+    @Test
+    public void quantileThreshold_isFixedAfterCalibration() throws Exception {
+        mDetector.setQuantileThreshold(0.9d, 6d);
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        final double threshold = mDetector.getCurrAlarmThreshold();
+        //a lasting event doesn't raise the threshold
+        for (int f = 0; f < 200; f++, timestamp += FRAME_INTERVAL) {
+            nextNoiseFrame();
+            drawObject((f % 2) * 60, 40, 40);
+            mDetector.process(mFrame, WIDTH, HEIGHT, timestamp);
+        }
+        assertEquals(threshold, mDetector.getCurrAlarmThreshold(), 0);
+        assertEquals(200, mListener.mAlarm);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void quantileThreshold_withGrid_isRejected() throws Exception {
+        mDetector.setGrid(new MotionGrid(8, 6));
+        mDetector.setQuantileThreshold(0.999d, 6d);
+    }
+
+    /**
+     * Calibrates fully in front of the noise scene and stops.
+     * @return the profile of the calibration, passed through its encoding like a stored one
+     * @param timestamp receives the timestamp of the next frame
+     */
+    private CalibrationProfile calibrateProfile(long[] timestamp) {
+        mDetector.setGrid(new MotionGrid(8, 6));
+        mDetector.start(0);
+        timestamp[0] = processNoise(0, 60);
+        CalibrationProfile profile = mDetector.createProfile(2);
+        assertNotNull(profile);
+        mDetector.stop();
+        return CalibrationProfile.decode(profile.encode());
+    }
+
+    @Test
+    public void warmStart_armsAfterVerification() throws Exception {
+        long[] timestamp = new long[1];
+        CalibrationProfile profile = calibrateProfile(timestamp);
+        assertEquals(2, profile.getAnalysisLevel());
+        final long startedAt = timestamp[0];
+        mDetector.start(startedAt, profile);
+        long next = processNoise(startedAt, 8);
+        assertEquals(MotionDetector.State.CALIBRATING, mDetector.getState());
+        next = processNoise(next, 1);
+        assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+        assertTrue(mDetector.isWarmStart());
+        assertEquals(mDetector.getVerificationTime(), next - FRAME_INTERVAL - startedAt);
+        nextNoiseFrame();
+        drawObject(40, 40, 40);
+        assertTrue(mDetector.process(mFrame, WIDTH, HEIGHT, next));
+    }
+
+    @Test
+    public void warmStart_withSlidingWindow_keepsRestoredStatistics() throws Exception {
+        mDetector.setSlidingWindow(6250, 26);
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        CalibrationProfile profile = mDetector.createProfile(2);
+        mDetector.stop();
+        mDetector.start(timestamp, profile);
+        timestamp = processNoise(timestamp, 2);
+        //the window holds the restored statistics, not only the frames since the start
+        assertEquals(profile.getDiffAvg(), mDetector.getMovingDiffAvg(), profile.getDiffAvg() * 0.2);
+        processNoise(timestamp, 38);
+        assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+        assertTrue(mDetector.isWarmStart());
+        assertEquals(0, mListener.mAlarm);
+    }
+
+    @Test
+    public void warmStart_differentScene_calibratesFully() throws Exception {
+        long[] timestamp = new long[1];
+        CalibrationProfile profile = calibrateProfile(timestamp);
+        mDetector.start(timestamp[0], profile);
+        //the lights were switched on since the profile was saved
+        long next = timestamp[0];
+        for (int i = 0; i < 20; i++, next += FRAME_INTERVAL) {
+            nextNoiseFrame();
+            for (int p = 0; p < mFrame.length; p++) mFrame[p] = (byte) (mFrame[p] + 60);
+            mDetector.process(mFrame, WIDTH, HEIGHT, next);
+        }
+        assertFalse(mDetector.isWarmStart());
+        assertEquals(MotionDetector.State.CALIBRATING, mDetector.getState());
+    }
+
+    @Test
+    public void warmStart_changedMask_calibratesFully() throws Exception {
+        long[] timestamp = new long[1];
+        CalibrationProfile profile = calibrateProfile(timestamp);
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(false, 0f, 0f, 0.5f, 0f, 0.5f, 0.5f));
+        mDetector.setMask(mask);
+        mDetector.start(timestamp[0], profile);
+        processNoise(timestamp[0], 20);
+        assertFalse(mDetector.isWarmStart());
+        assertEquals(MotionDetector.State.CALIBRATING, mDetector.getState());
+    }
+
+    @Test
+    public void createProfile_duringCalibration_returnsNull() throws Exception {
+        mDetector.start(0);
+        processNoise(0, 10);
+        assertNull(mDetector.createProfile(2));
+    }
+
+    /**
+     * Moves an object through the scene for 10 seconds after the calibration.
+     * @return the number of frames of the event that triggered the alarm
+     */
+    private int countEventAlarms() {
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        int alarms = 0;
+        for (int f = 0; f < 40; f++, timestamp += FRAME_INTERVAL) {
+            nextNoiseFrame();
+            drawObject(3 * f, 40, 30);
+            if (mDetector.process(mFrame, WIDTH, HEIGHT, timestamp)) alarms++;
+        }
+        return alarms;
+    }
+
+    @Test
+    public void suspectedEvent_freezesStatistics() throws Exception {
+        assertEquals(40, countEventAlarms());
+        assertTrue(mDetector.isFrozen());
+        assertTrue("absorbed " + mDetector.getMovingAbsDiffAvg(), mDetector.getMovingAbsDiffAvg() < 2);
+    }
+
+    @Test
+    public void suspectedEvent_withoutFreezing_isAbsorbed() throws Exception {
+        mDetector.setFreezeTimes(0, 0);
+        assertTrue(countEventAlarms() < 20);
+        assertFalse(mDetector.isFrozen());
+    }
+
+    @Test
+    public void lastingChange_isAdoptedAfterMaxFreezeTime() throws Exception {
+        mDetector.setFreezeTimes(2000, 20000);
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        //the sensor noise rises for good, e.g. at dusk
+        int lateAlarms = 0;
+        for (int f = 0; f < 200; f++, timestamp += FRAME_INTERVAL) {
+            nextNoiseFrame(15);
+            if (mDetector.process(mFrame, WIDTH, HEIGHT, timestamp) && f >= 100) lateAlarms++;
+            assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+        }
+        assertEquals(0, lateAlarms);
+        assertFalse(mDetector.isFrozen());
+    }
+
+    @Test
+    public void newGrid_whileRunning_isNotFrozenBeforeItHasHistory() throws Exception {
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        //the cells start without a deviation, their first frames alarm on noise
+        mDetector.setGrid(new MotionGrid(8, 6));
+        int lateAlarms = 0;
+        for (int f = 0; f < 40; f++, timestamp += FRAME_INTERVAL) {
+            nextNoiseFrame();
+            if (mDetector.process(mFrame, WIDTH, HEIGHT, timestamp) && f >= 20) lateAlarms++;
+        }
+        assertEquals(0, lateAlarms);
+        assertFalse(mDetector.isFrozen());
+    }
+
+    @Test
+    public void flash_endsFreezeOnceFastStatisticsSettle() throws Exception {
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        nextNoiseFrame();
+        drawObject(60, 40, 4);
+        assertTrue(mDetector.process(mFrame, WIDTH, HEIGHT, timestamp));
+        assertTrue(mDetector.isFrozen());
+        timestamp += FRAME_INTERVAL;
+        //the hold time would keep the statistics frozen for 8 more frames
+        int frozenFrames = 0;
+        for (int f = 0; f < 8; f++, timestamp += FRAME_INTERVAL) {
+            nextNoiseFrame();
+            mDetector.process(mFrame, WIDTH, HEIGHT, timestamp);
+            if (mDetector.isFrozen()) frozenFrames++;
+        }
+        assertTrue("frozen for " + frozenFrames, frozenFrames < 8);
+        assertFalse(mDetector.isFrozen());
+    }
+
+    @Test
+    public void lastingChange_withSlidingWindow_isAdoptedAfterMaxFreezeTime() throws Exception {
+        mDetector.setSlidingWindow(6250, 26);
+        mDetector.setFreezeTimes(2000, 20000);
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        int lateAlarms = 0;
+        for (int f = 0; f < 200; f++, timestamp += FRAME_INTERVAL) {
+            nextNoiseFrame(15);
+            final boolean wasFrozen = mDetector.isFrozen();
+            if (mDetector.process(mFrame, WIDTH, HEIGHT, timestamp) && f >= 100) lateAlarms++;
+            //the window continues with the fast moving averages, not with the single frame after them
+            if (wasFrozen && !mDetector.isFrozen()) assertTrue(mDetector.getMovingDiffAvg() > 0);
+        }
+        assertEquals(0, lateAlarms);
+        assertFalse(mDetector.isFrozen());
+    }
+
+    @Test
+    public void slowDrift_isFollowedWithoutAlarms() throws Exception {
+        mDetector.start(0);
+        long timestamp = 0;
+        //calibrates for 15 s, then the noise doubles over half an hour of analysed frames, e.g. at dusk
+        for (int f = -60; f < 7200; f++, timestamp += FRAME_INTERVAL) {
+            final double sigma = 1.5d * (1 + Math.max(0, f) / 7200d);
+            for (int i = 0; i < mFrame.length; i++) mFrame[i] = (byte) (100 + Math.round(sigma * mRandom.nextGaussian()));
+            mDetector.process(mFrame, WIDTH, HEIGHT, timestamp);
+        }
+        assertEquals(0, mListener.mAlarm);
+        assertEquals(1, mListener.mRun);
+    }
+
+    @Test
+    public void diff_holdsPerPixelDifferences() throws Exception {
+        mDetector.start(0);
+        byte[] first = new byte[WIDTH * HEIGHT];
+        byte[] second = new byte[WIDTH * HEIGHT];
+        second[5] = (byte) 200;
+        first[7] = (byte) 30;
+        mDetector.process(first, WIDTH, HEIGHT, 0);
+        assertFalse(mDetector.hasDiff());
+        mDetector.process(second, WIDTH, HEIGHT, FRAME_INTERVAL);
+        assertTrue(mDetector.hasDiff());
+        assertEquals(200, mDetector.getDiff()[5] & 0xFF);
+        assertEquals(30, mDetector.getDiff()[7] & 0xFF);
+        assertEquals(230d / (WIDTH * HEIGHT), mDetector.getLastDiff(), 1e-9);
+    }
+
+    @Test
+    public void sizeChange_restartsFromNextFrame() throws Exception {
+        mDetector.start(0);
+        processNoise(0, 5);
+        mDetector.process(new byte[80 * 60], 80, 60, 5 * FRAME_INTERVAL);
+        assertFalse(mDetector.hasDiff());
+        mDetector.process(new byte[80 * 60], 80, 60, 6 * FRAME_INTERVAL);
+        assertTrue(mDetector.hasDiff());
+    }
+
+    @Test
+    public void sizeChange_whileRunning_recalibrates() throws Exception {
+        mDetector.setGrid(new MotionGrid(8, 6));
+        mDetector.start(0);
+        long timestamp = processNoise(0, 60);
+        assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+        byte[] half = new byte[80 * 60];
+        mDetector.process(half, 80, 60, timestamp);
+        assertEquals(MotionDetector.State.CALIBRATING, mDetector.getState());
+        assertEquals(2, mListener.mCalibrating);
+        //the calibration restarted with the frame of the new size
+        mDetector.process(half, 80, 60, timestamp + mDetector.getTimeToCalibrate() - 1);
+        assertEquals(MotionDetector.State.CALIBRATING, mDetector.getState());
+        mDetector.process(half, 80, 60, timestamp + mDetector.getTimeToCalibrate());
+        assertEquals(MotionDetector.State.RUNNING, mDetector.getState());
+    }
+
+    @Test
+    public void stop_resetsStatistics() throws Exception {
+        mDetector.start(0);
+        processNoise(0, 20);
+        mDetector.stop();
+        assertEquals(MotionDetector.State.IDLE, mDetector.getState());
+        mDetector.start(10000);
+        processNoise(10000, 1);
+        assertEquals(-1d, mDetector.getMovingAbsDiffAvg(), 0d);
+        assertEquals(0d, mDetector.getMaxDiff(), 0d);
+    }
+
+    @Test
+    public void movingAverages_dependOnTimeNotFrameCount() throws Exception {
+        MotionDetector slow = new MotionDetector();
+        MotionDetector fast = new MotionDetector();
+        slow.start(0);
+        fast.start(0);
+        byte[] dark = new byte[WIDTH * HEIGHT];
+        byte[] bright = new byte[WIDTH * HEIGHT];
+        java.util.Arrays.fill(bright, (byte) 10);
+        slow.process(dark, WIDTH, HEIGHT, 0);
+        fast.process(dark, WIDTH, HEIGHT, 0);
+        slow.process(dark, WIDTH, HEIGHT, 1);
+        fast.process(dark, WIDTH, HEIGHT, 1);
+        //both see a constant difference of 10 for one second, once with 4 and once with 20 fps
+        for (long t = 250; t <= 1000; t += 250) {
+            slow.process((t / 250) % 2 == 0 ? dark : bright, WIDTH, HEIGHT, t);
+        }
+        for (long t = 50; t <= 1000; t += 50) {
+            fast.process((t / 50) % 2 == 0 ? dark : bright, WIDTH, HEIGHT, t);
+        }
+        assertEquals(slow.getMovingAbsDiffAvg(), fast.getMovingAbsDiffAvg(), 0.1d);
+    }
+
+    private static class CountingListener implements MotionDetector.IMotionDetectorListener {
+        int mCalibrating = 0;
+        int mRun = 0;
+        int mAlarm = 0;
+
+        @Override
+        public void onCalibrating() {
+            mCalibrating++;
+        }
+
+        @Override
+        public void onRun() {
+            mRun++;
+        }
+
+        @Override
+        public void onAlarm() {
+            mAlarm++;
+        }
+    }
+}
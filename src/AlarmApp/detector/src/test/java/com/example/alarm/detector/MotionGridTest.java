@@ -0,0 +1,109 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds a noisy 160x120 scene with a global brightness flicker into detectors with and without a grid.
+ */
+public class MotionGridTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final long FRAME_INTERVAL = 250;
+
+    private interface IScene {
+        void draw(int index, byte[] frame);
+    }
+
+    private static boolean[] run(MotionDetector detector, int frameCount, IScene scene) {
+        Random random = new Random(11);
+        byte[] background = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < background.length; i++) background[i] = (byte) (60 + random.nextInt(120));
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        boolean[] alarms = new boolean[frameCount];
+        //the moving averages settle during the calibration
+        detector.setTimeToCalibrate(10000);
+        detector.start(0);
+        for (int f = 0; f < frameCount; f++) {
+            int flicker = random.nextInt(7) - 3;
+            for (int i = 0; i < frame.length; i++) frame[i] = (byte) ((background[i] & 0xFF) + flicker + random.nextInt(4));
+            scene.draw(f, frame);
+            alarms[f] = detector.process(frame, WIDTH, HEIGHT, f * FRAME_INTERVAL);
+        }
+        return alarms;
+    }
+
+    private static void fill(byte[] frame, int x, int y, int w, int h, int value) {
+        for (int row = y; row < y + h; row++) {
+            for (int col = x; col < x + w; col++) frame[row * WIDTH + col] = (byte) value;
+        }
+    }
+
+    private static boolean any(boolean[] alarms, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (alarms[i]) return true;
+        }
+        return false;
+    }
+
+    private static final IScene SMALL_OBJECT = new IScene() {
+        @Override
+        public void draw(int index, byte[] frame) {
+            //a 6x6 object crossing the top left cell
+            if (index >= 200 && index < 205) fill(frame, 2 + (index - 200) * 2, 4, 6, 6, 250);
+        }
+    };
+
+    @Test
+    public void smallObject_globalMeanMisses_gridDetects() throws Exception {
+        boolean[] global = run(new MotionDetector(), 260, SMALL_OBJECT);
+        assertFalse(any(global, 0, 260));
+
+        MotionDetector detector = new MotionDetector();
+        MotionGrid grid = new MotionGrid(8, 6);
+        grid.setMinAdjacentCells(1);
+        detector.setGrid(grid);
+        boolean[] cells = run(detector, 260, SMALL_OBJECT);
+        assertTrue(any(cells, 200, 206));
+        assertFalse(any(cells, 0, 200));
+    }
+
+    @Test
+    public void adjacencyRule_needsAdjacentCells() throws Exception {
+        MotionDetector detector = new MotionDetector();
+        MotionGrid grid = new MotionGrid(8, 6);
+        grid.setMinAdjacentCells(2);
+        detector.setGrid(grid);
+        //the run ends with the frame of the second change
+        boolean[] alarms = run(detector, 261, new IScene() {
+            @Override
+            public void draw(int index, byte[] frame) {
+                //a change inside a single cell
+                if (index == 200) fill(frame, 42, 42, 16, 16, 250);
+                //a change spanning two horizontally adjacent cells
+                if (index == 260) fill(frame, 90, 62, 30, 16, 250);
+            }
+        });
+        assertFalse(any(alarms, 0, 260));
+        assertTrue(alarms[260]);
+        assertEquals(2, grid.getLargestCluster());
+    }
+
+    @Test
+    public void absDiff_matchesWholeFrame() throws Exception {
+        Random random = new Random(5);
+        byte[] a = new byte[101 * 77];
+        byte[] b = new byte[101 * 77];
+        random.nextBytes(a);
+        random.nextBytes(b);
+        byte[] gridDiff = new byte[a.length];
+        byte[] globalDiff = new byte[a.length];
+        MotionGrid grid = new MotionGrid(8, 6);
+        grid.ensureSize(101, 77);
+        assertEquals(MotionDetector.absDiff(a, b, globalDiff, a.length), grid.absDiff(a, b, gridDiff));
+        assertArrayEquals(globalDiff, gridDiff);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MotionMaskTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final long FRAME_INTERVAL = 250;
+
+    @Test
+    public void rasterise_rectangleIsSingleRect() throws Exception {
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(true, 0.25f, 0.25f, 0.75f, 0.25f, 0.75f, 0.75f, 0.25f, 0.75f));
+        assertTrue(mask.ensureSize(WIDTH, HEIGHT));
+        assertEquals(1, mask.getRectCount());
+        assertArrayEquals(new int[]{40, 30, 120, 90}, mask.getRects());
+        assertEquals(80 * 60, mask.getPixelCount());
+        assertTrue(mask.contains(40, 30));
+        assertFalse(mask.contains(120, 30));
+    }
+
+    @Test
+    public void rasterise_excludeWithoutIncludeKeepsRest() throws Exception {
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(false, 0f, 0f, 0.5f, 0f, 0.5f, 1f, 0f, 1f));
+        mask.ensureSize(WIDTH, HEIGHT);
+        assertEquals(WIDTH / 2 * HEIGHT, mask.getPixelCount());
+        assertFalse(mask.contains(0, 0));
+        assertTrue(mask.contains(WIDTH - 1, HEIGHT - 1));
+    }
+
+    @Test
+    public void rasterise_onlyWhenResolutionChanges() throws Exception {
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(false, 0.1f, 0.1f, 0.4f, 0.2f, 0.2f, 0.6f));
+        assertTrue(mask.ensureSize(WIDTH, HEIGHT));
+        assertFalse(mask.ensureSize(WIDTH, HEIGHT));
+        assertEquals(1, mask.getRasteriseCount());
+        assertTrue(mask.ensureSize(WIDTH / 2, HEIGHT / 2));
+        assertEquals(2, mask.getRasteriseCount());
+    }
+
+    @Test
+    public void sum_matchesPerPixelSum() throws Exception {
+        Random random = new Random(3);
+        byte[] a = new byte[WIDTH * HEIGHT];
+        byte[] b = new byte[WIDTH * HEIGHT];
+        random.nextBytes(a);
+        random.nextBytes(b);
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(true, 0.05f, 0.1f, 0.9f, 0.2f, 0.7f, 0.95f, 0.2f, 0.8f));
+        mask.addPolygon(new MotionMask.Polygon(false, 0.3f, 0.3f, 0.6f, 0.35f, 0.45f, 0.7f));
+        mask.ensureSize(WIDTH, HEIGHT);
+        SummedAreaTable table = new SummedAreaTable();
+        table.ensureSize(WIDTH, HEIGHT);
+        byte[] diff = new byte[a.length];
+        assertEquals(MotionDetector.absDiff(a, b, null, a.length), table.absDiff(a, b, diff));
+
+        long expected = 0;
+        int pixels = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (!mask.contains(x, y)) continue;
+                expected += diff[y * WIDTH + x] & 0xFF;
+                pixels++;
+            }
+        }
+        assertEquals(pixels, mask.getPixelCount());
+        assertEquals(expected, mask.sum(table));
+        //the slanted edges need a rectangle per row at most, far fewer lookups than pixels
+        assertTrue(mask.getRectCount() < 4 * HEIGHT);
+    }
+
+    @Test
+    public void encode_roundTrip() throws Exception {
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(true, 0f, 0f, 1f, 0f, 1f, 1f));
+        mask.addPolygon(new MotionMask.Polygon(false, 0.125f, 0.25f, 0.5f, 0.25f, 0.5f, 0.75f));
+        MotionMask decoded = MotionMask.decode(mask.encode());
+        assertEquals(mask.encode(), decoded.encode());
+        assertEquals(2, decoded.getPolygons().size());
+        assertFalse(decoded.getPolygons().get(1).isInclude());
+        assertEquals(0, MotionMask.decode("").getPolygons().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsMalformed() throws Exception {
+        MotionMask.decode("x:0,0;1,1");
+    }
+
+    @Test
+    public void excludedFan_doesNotTriggerAlarm() throws Exception {
+        MotionDetector unmasked = new MotionDetector();
+        assertTrue(any(run(unmasked, null), 200, 260));
+
+        MotionMask mask = new MotionMask();
+        mask.addPolygon(new MotionMask.Polygon(false, 0.5f, 0f, 1f, 0f, 1f, 0.5f, 0.5f, 0.5f));
+        MotionDetector masked = new MotionDetector();
+        masked.setMask(mask);
+        assertFalse(any(run(masked, null), 0, 260));
+
+        MotionDetector maskedGrid = new MotionDetector();
+        maskedGrid.setMask(mask);
+        maskedGrid.setGrid(new MotionGrid(8, 6));
+        assertFalse(any(run(maskedGrid, null), 0, 260));
+        //motion outside the excluded region is still detected
+        MotionDetector intruder = new MotionDetector();
+        intruder.setMask(mask);
+        intruder.setGrid(new MotionGrid(8, 6));
+        assertTrue(any(run(intruder, new int[]{10, 70}), 240, 260));
+    }
+
+    /**
+     * A quiet scene with a fan spinning up in the top right quarter from frame 200.
+     * @param intruder the top left corner of a block appearing from frame 240, null for none
+     */
+    private static boolean[] run(MotionDetector detector, int[] intruder) {
+        Random random = new Random(7);
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        boolean[] alarms = new boolean[260];
+        detector.setTimeToCalibrate(10000);
+        detector.start(0);
+        for (int f = 0; f < alarms.length; f++) {
+            for (int i = 0; i < frame.length; i++) frame[i] = (byte) (100 + random.nextInt(4));
+            if (f >= 200) {
+                //alternating blades
+                for (int y = 10; y < 50; y++) {
+                    for (int x = 100; x < 150; x++) {
+                        if (((x / 5 + y / 5 + f) & 1) == 0) frame[y * WIDTH + x] = (byte) 220;
+                    }
+                }
+            }
+            if (intruder != null && f >= 240) {
+                for (int y = intruder[1]; y < intruder[1] + 30; y++) {
+                    for (int x = intruder[0] + (f - 240); x < intruder[0] + (f - 240) + 30; x++) frame[y * WIDTH + x] = (byte) 240;
+                }
+            }
+            alarms[f] = detector.process(frame, WIDTH, HEIGHT, f * FRAME_INTERVAL);
+        }
+        return alarms;
+    }
+
+    private static boolean any(boolean[] alarms, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (alarms[i]) return true;
+        }
+        return false;
+    }
+}
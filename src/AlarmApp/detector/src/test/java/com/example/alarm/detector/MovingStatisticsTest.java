@@ -0,0 +1,100 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MovingStatisticsTest {
+    private static final double TIME_CONSTANT = 1000d;
+
+    private static double stepResponse(long interval) {
+        MovingStatistics statistics = new MovingStatistics(TIME_CONSTANT);
+        statistics.update(0, 0);
+        for (long t = interval; t <= TIME_CONSTANT; t += interval) statistics.update(1, t);
+        return statistics.getMean();
+    }
+
+    @Test
+    public void update_firstValueIsMeanWithoutDeviation() throws Exception {
+        MovingStatistics statistics = new MovingStatistics(TIME_CONSTANT);
+        assertFalse(statistics.hasValues());
+        statistics.update(5, 100);
+        assertTrue(statistics.hasValues());
+        assertEquals(5, statistics.getMean(), 0);
+        assertEquals(0, statistics.getDeviation(), 0);
+    }
+
+    @Test
+    public void update_stepResponseDependsOnTimeNotRate() throws Exception {
+        //after one time constant 1 - 1/e of a step is covered, at any rate
+        for (long interval : new long[] {10, 50, 250, 500}) {
+            assertEquals("interval " + interval, 1 - Math.exp(-1), stepResponse(interval), 1e-9);
+        }
+    }
+
+    @Test
+    public void slidingWindow_isExactMeanOfWindow() throws Exception {
+        MovingStatistics statistics = new MovingStatistics(TIME_CONSTANT);
+        statistics.setSlidingWindow(1000, 100);
+        for (int t = 0; t < 20; t++) statistics.update(t, t * 100);
+        //the window ending at 1900 ms holds the values of 1000 to 1900 ms
+        assertEquals(10, statistics.getCount());
+        assertEquals(14.5, statistics.getMean(), 1e-9);
+    }
+
+    @Test
+    public void slidingWindow_dropsOldestValueWhenFull() throws Exception {
+        MovingStatistics statistics = new MovingStatistics(TIME_CONSTANT);
+        statistics.setSlidingWindow(1000, 4);
+        for (int t = 0; t < 10; t++) statistics.update(t, t);
+        assertEquals(4, statistics.getCount());
+        assertEquals(7.5, statistics.getMean(), 1e-9);
+    }
+
+    @Test
+    public void slidingWindow_deviationOfConstantIsZero() throws Exception {
+        MovingStatistics statistics = new MovingStatistics(TIME_CONSTANT);
+        statistics.setSlidingWindow(1000, 8);
+        for (int t = 0; t < 1000; t++) statistics.update(3, t * 100);
+        assertEquals(3, statistics.getMean(), 1e-9);
+        assertEquals(0, statistics.getDeviation(), 1e-9);
+        statistics.reset();
+        assertEquals(0, statistics.getCount());
+        assertFalse(statistics.hasValues());
+    }
+
+    @Test
+    public void restore_fillsSlidingWindow() throws Exception {
+        MovingStatistics statistics = new MovingStatistics(TIME_CONSTANT);
+        statistics.setSlidingWindow(1000, 10);
+        statistics.restore(2, 0.5, 5000);
+        assertEquals(10, statistics.getCount());
+        //the new value replaces one of the restored ones instead of making up the whole window
+        statistics.update(4, 5100);
+        assertEquals(10, statistics.getCount());
+        assertEquals(2.2, statistics.getMean(), 1e-9);
+        assertEquals(0.63, statistics.getDeviation(), 1e-9);
+        //a window later only new values are left
+        for (int t = 5200; t <= 6100; t += 100) statistics.update(4, t);
+        assertEquals(4, statistics.getMean(), 1e-9);
+    }
+
+    @Test
+    public void revert_takesBackLastValue() throws Exception {
+        MovingStatistics statistics = new MovingStatistics(TIME_CONSTANT);
+        for (int t = 0; t < 10; t++) statistics.update(2, t * 100);
+        statistics.update(50, 1000);
+        statistics.revert();
+        assertEquals(2, statistics.getMean(), 1e-9);
+        assertEquals(0, statistics.getDeviation(), 1e-9);
+
+        statistics.setSlidingWindow(1000, 100);
+        for (int t = 0; t < 10; t++) statistics.update(t, t * 100);
+        statistics.update(50, 1000);
+        statistics.revert();
+        //the value of 0 ms left the window with the taken back value
+        assertEquals(9, statistics.getCount());
+        statistics.update(10, 1100);
+        assertEquals(6, statistics.getMean(), 1e-9);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileHistogramTest {
+    private static final double[] QUANTILES = {0.5d, 0.9d, 0.99d, 0.999d};
+
+    private static double exactQuantile(double[] values, int count, double quantile) {
+        double[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.floor(quantile * (count - 1))];
+    }
+
+    @Test
+    public void getValue_matchesExactQuantilesWithinResolution() throws Exception {
+        Random random = new Random(1);
+        QuantileHistogram histogram = new QuantileHistogram(QUANTILES, 255d, 0.001d, 0.001d);
+        double[] values = new double[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.abs(10 + 2 * random.nextGaussian());
+            histogram.add(values[i]);
+            //the cursors are exact after every value, not only at the end
+            if (i % 997 == 0 || i == values.length - 1) {
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    double exact = exactQuantile(values, i + 1, QUANTILES[q]);
+                    assertEquals("quantile " + QUANTILES[q] + " of " + (i + 1), exact, histogram.getValue(q), exact * 0.001d + 0.001d);
+                }
+            }
+        }
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void getValue_ignoresRareOutliers() throws Exception {
+        Random random = new Random(2);
+        QuantileHistogram histogram = new QuantileHistogram(new double[] {0.9d}, 255d, 0.001d, 0.001d);
+        for (int i = 0; i < 1000; i++) histogram.add(i % 100 == 50 ? 1e6 : random.nextDouble());
+        assertEquals(0.9d, histogram.getValue(0), 0.05d);
+    }
+
+    @Test
+    public void getValue_ofFewValues() throws Exception {
+        QuantileHistogram histogram = new QuantileHistogram(new double[] {0d, 0.5d, 1d}, 255d, 0.001d, 0.001d);
+        assertEquals(0, histogram.getValue(1), 0);
+        histogram.add(7);
+        histogram.add(1);
+        histogram.add(4);
+        assertEquals(1, histogram.getValue(0), 0.01d);
+        assertEquals(4, histogram.getValue(1), 0.01d);
+        assertEquals(7, histogram.getValue(2), 0.01d);
+    }
+
+    @Test
+    public void reset_forgetsValues() throws Exception {
+        QuantileHistogram histogram = new QuantileHistogram(new double[] {0.5d}, 255d, 0.001d, 0.001d);
+        for (int i = 0; i < 100; i++) histogram.add(i);
+        histogram.reset();
+        histogram.add(3);
+        assertEquals(3, histogram.getValue(0), 0.01d);
+        assertEquals(1, histogram.getCount());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ShakeCompensatorTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+    private static final int MARGIN = 10;
+
+    /**
+     * @return a random scene larger than the frame by the margin on every side
+     */
+    private static byte[] scene(long seed) {
+        Random random = new Random(seed);
+        byte[] scene = new byte[(WIDTH + 2 * MARGIN) * (HEIGHT + 2 * MARGIN)];
+        for (int i = 0; i < scene.length; i++) scene[i] = (byte) (40 + random.nextInt(150));
+        return scene;
+    }
+
+    /**
+     * @return the frame of a camera, which is translated by the given shift and sees the content move the opposite way
+     */
+    private static byte[] view(byte[] scene, int shiftX, int shiftY, int brightness) {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        final int sceneWidth = WIDTH + 2 * MARGIN;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                frame[y * WIDTH + x] = (byte) ((scene[(y + MARGIN - shiftY) * sceneWidth + x + MARGIN - shiftX] & 0xFF) + brightness);
+            }
+        }
+        return frame;
+    }
+
+    @Test
+    public void align_estimatesShiftAndAlignsPreviousFrame() throws Exception {
+        byte[] scene = scene(1);
+        byte[] previous = view(scene, 0, 0, 0);
+        byte[] current = view(scene, 3, -2, 0);
+        byte[] aligned = new byte[WIDTH * HEIGHT];
+        ShakeCompensator compensator = new ShakeCompensator(4);
+
+        assertTrue(compensator.align(previous, current, WIDTH, HEIGHT, aligned));
+        assertEquals(3, compensator.getShiftX());
+        assertEquals(-2, compensator.getShiftY());
+        //the aligned frame equals the current one, also where the current frame was used to fill the border
+        assertArrayEquals(current, aligned);
+    }
+
+    @Test
+    public void align_ignoresBrightnessAndSmallObjects() throws Exception {
+        byte[] scene = scene(2);
+        byte[] previous = view(scene, 0, 0, 0);
+        byte[] aligned = new byte[WIDTH * HEIGHT];
+        ShakeCompensator compensator = new ShakeCompensator(4);
+
+        assertFalse(compensator.align(previous, view(scene, 0, 0, 30), WIDTH, HEIGHT, aligned));
+        assertEquals(0, compensator.getShiftX());
+        assertEquals(0, compensator.getShiftY());
+
+        byte[] current = view(scene, 0, 0, 0);
+        for (int y = 20; y < 30; y++) {
+            for (int x = 30; x < 38; x++) current[y * WIDTH + x] = (byte) 250;
+        }
+        assertFalse(compensator.align(previous, current, WIDTH, HEIGHT, aligned));
+    }
+
+    @Test
+    public void detector_doesNotAlarmOnShake() throws Exception {
+        byte[] scene = scene(3);
+        Random random = new Random(4);
+        MotionDetector plain = new MotionDetector();
+        MotionDetector compensated = new MotionDetector();
+        compensated.setShakeCompensator(new ShakeCompensator(4));
+        plain.setTimeToCalibrate(0);
+        compensated.setTimeToCalibrate(0);
+        plain.start(0);
+        compensated.start(0);
+        int plainAlarms = 0, compensatedAlarms = 0;
+        for (int f = 0; f < 100; f++) {
+            //a tremor every 25 frames
+            final boolean shaking = f >= 40 && f % 25 < 3;
+            byte[] frame = view(scene, shaking ? random.nextInt(7) - 3 : 0, shaking ? random.nextInt(7) - 3 : 0, 0);
+            if (plain.process(frame, WIDTH, HEIGHT, f * 250L)) plainAlarms++;
+            if (compensated.process(frame, WIDTH, HEIGHT, f * 250L)) compensatedAlarms++;
+        }
+        assertTrue(plainAlarms > 0);
+        assertEquals(0, compensatedAlarms);
+    }
+}
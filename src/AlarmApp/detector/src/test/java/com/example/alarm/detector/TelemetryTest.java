@@ -0,0 +1,101 @@
+package com.example.alarm.detector;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TelemetryTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+
+    private static class CountingSink implements Telemetry.ISampleSink {
+        int count = 0;
+        long lastTimestamp = -1;
+        int alarms = 0;
+
+        @Override
+        public void onSample(long timestamp, double diff, double movingAbsDiffAvg, double movingDiffAvg, double alarmThreshold,
+                             double maxDiff, boolean suspicious, boolean alarm) {
+            assertTrue(timestamp > lastTimestamp);
+            lastTimestamp = timestamp;
+            count++;
+            if (alarm) alarms++;
+        }
+    }
+
+    @Test
+    public void drain_returnsSamplesInOrder() throws Exception {
+        Telemetry telemetry = new Telemetry(Telemetry.Level.FRAMES, 8);
+        for (int i = 0; i < 5; i++) telemetry.record(i, i, 0, 0, 0, 0, false, i == 3);
+        CountingSink sink = new CountingSink();
+        assertEquals(5, telemetry.drain(sink));
+        assertEquals(4, sink.lastTimestamp);
+        assertEquals(1, sink.alarms);
+        assertEquals(0, telemetry.drain(sink));
+    }
+
+    @Test
+    public void record_full_dropsSamples() throws Exception {
+        Telemetry telemetry = new Telemetry(Telemetry.Level.FRAMES, 4);
+        for (int i = 0; i < 6; i++) telemetry.record(i, 0, 0, 0, 0, 0, false, false);
+        assertEquals(2, telemetry.getDroppedCount());
+        CountingSink sink = new CountingSink();
+        assertEquals(4, telemetry.drain(sink));
+        assertEquals(3, sink.lastTimestamp);
+        assertTrue(telemetry.record(10, 0, 0, 0, 0, 0, false, false));
+    }
+
+    @Test
+    public void levels_gateFrames() throws Exception {
+        Telemetry telemetry = new Telemetry(Telemetry.Level.OFF, 4);
+        assertFalse(telemetry.accepts(true, true));
+        telemetry.setLevel(Telemetry.Level.EVENTS);
+        assertFalse(telemetry.accepts(false, false));
+        assertTrue(telemetry.accepts(true, false));
+        telemetry.setLevel(Telemetry.Level.FRAMES);
+        assertTrue(telemetry.accepts(false, false));
+    }
+
+    @Test
+    public void detector_telemetryDisabled_doesNotAllocate() throws Exception {
+        assertEquals(0, allocatedBytesPerFrame(Telemetry.Level.OFF), 0);
+    }
+
+    @Test
+    public void detector_telemetryEnabled_doesNotAllocate() throws Exception {
+        assertEquals(0, allocatedBytesPerFrame(Telemetry.Level.FRAMES), 0);
+    }
+
+    /**
+     * Measures the bytes the detection thread allocates per analysed frame, the telemetry gets drained in between.
+     */
+    private static long allocatedBytesPerFrame(Telemetry.Level level) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        byte[][] frames = new byte[16][WIDTH * HEIGHT];
+        Random random = new Random(1);
+        for (byte[] frame : frames) random.nextBytes(frame);
+
+        Telemetry telemetry = new Telemetry(level, 64);
+        CountingSink sink = new CountingSink();
+        MotionDetector detector = new MotionDetector();
+        detector.setTimeToCalibrate(0);
+        detector.setTelemetry(telemetry);
+        detector.start(0);
+        final int warmUp = 20000;
+        final int frameCount = 20000;
+        long allocatedAt = 0;
+        for (int i = 0; i < warmUp + frameCount; i++) {
+            if (i == warmUp) allocatedAt = threadBean.getThreadAllocatedBytes(threadId);
+            detector.process(frames[i % frames.length], WIDTH, HEIGHT, i * 250L);
+            if (i % 32 == 0) telemetry.drain(sink);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedAt;
+        if (level != Telemetry.Level.OFF) assertTrue(sink.count > 0);
+        //the measurement itself may allocate a few bytes, an allocation per frame would be at least 16 bytes
+        return allocated / frameCount;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.alarm.detector.replay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameRecordingTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static byte[][] frames(int count, int frameSize) {
+        Random random = new Random(7);
+        byte[][] frames = new byte[count][frameSize];
+        random.nextBytes(frames[0]);
+        for (int f = 1; f < count; f++) {
+            for (int i = 0; i < frameSize; i++) {
+                frames[f][i] = (byte) (frames[f - 1][i] + random.nextInt(5) - 2);
+            }
+        }
+        return frames;
+    }
+
+    private static byte[] record(byte[][] frames, int frameSize, boolean delta, int keyFrameInterval) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameRecordingWriter writer = new FrameRecordingWriter(out, WIDTH, HEIGHT, frameSize, delta);
+        writer.setKeyFrameInterval(keyFrameInterval);
+        for (int f = 0; f < frames.length; f++) {
+            writer.write(frames[f], 1000 + f * 33);
+        }
+        assertEquals(frames.length, writer.getFrameCount());
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static void assertReplays(byte[][] frames, int frameSize, byte[] recording) throws IOException {
+        FrameRecordingReader reader = new FrameRecordingReader(new ByteArrayInputStream(recording));
+        assertEquals(WIDTH, reader.getWidth());
+        assertEquals(HEIGHT, reader.getHeight());
+        assertEquals(frameSize, reader.getFrameSize());
+        for (int f = 0; f < frames.length; f++) {
+            assertTrue(reader.next());
+            assertEquals(f, reader.getFrameIndex());
+            assertEquals(1000 + f * 33, reader.getTimestamp());
+            assertArrayEquals(frames[f], reader.getFrame());
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void raw_roundTrip() throws Exception {
+        byte[][] frames = frames(10, WIDTH * HEIGHT);
+        assertReplays(frames, WIDTH * HEIGHT, record(frames, WIDTH * HEIGHT, false, 4));
+    }
+
+    @Test
+    public void delta_roundTrip() throws Exception {
+        byte[][] frames = frames(10, WIDTH * HEIGHT * 3 / 2);
+        assertReplays(frames, WIDTH * HEIGHT * 3 / 2, record(frames, WIDTH * HEIGHT * 3 / 2, true, 4));
+    }
+
+    @Test
+    public void delta_isSmallerForSimilarFrames() throws Exception {
+        byte[][] frames = frames(10, WIDTH * HEIGHT);
+        assertTrue(record(frames, WIDTH * HEIGHT, true, 100).length < record(frames, WIDTH * HEIGHT, false, 100).length / 2);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFile_throws() throws Exception {
+        new FrameRecordingReader(new ByteArrayInputStream(new byte[32]));
+    }
+}
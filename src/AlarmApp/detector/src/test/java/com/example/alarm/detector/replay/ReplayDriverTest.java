@@ -0,0 +1,414 @@
+package com.example.alarm.detector.replay;
+
+import com.example.alarm.detector.AnalysisGovernor;
+import com.example.alarm.detector.BlobTracker;
+import com.example.alarm.detector.DetectionScheduler;
+import com.example.alarm.detector.IlluminationNormalizer;
+import com.example.alarm.detector.MotionDetector;
+import com.example.alarm.detector.MotionGrid;
+import com.example.alarm.detector.ShakeCompensator;
+import com.example.alarm.detector.Telemetry;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a synthetic 30 fps recording of a noisy static scene, which an object moves through during one event,
+ * or in which a light flickers in place instead, or which a vibrating camera shakes at times,
+ * or in which the lights are switched on and off, or whose sensor noise rises at once.
+ */
+public class ReplayDriverTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final long PREVIEW_INTERVAL = 33;
+    private static final int FRAME_COUNT = 3000;
+    private static final long EVENT_START = 60000;
+    private static final long EVENT_END = 63000;
+    //the frame after the object left differs from the last one with it, so the event lasts one analysed frame longer
+    private static final long[][] EVENTS = {{EVENT_START, EVENT_END + 250}};
+    private static final long NOISE_STEP = 30000;
+
+    private static byte[] recording() throws IOException {
+        return recording(false);
+    }
+
+    private static byte[] recording(boolean flicker) throws IOException {
+        Random random = new Random(3);
+        byte[] background = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < background.length; i++) background[i] = (byte) (40 + random.nextInt(150));
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameRecordingWriter writer = new FrameRecordingWriter(out, WIDTH, HEIGHT, WIDTH * HEIGHT, true);
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            long timestamp = f * PREVIEW_INTERVAL;
+            for (int i = 0; i < frame.length; i++) frame[i] = (byte) ((background[i] & 0xFF) + random.nextInt(6));
+            if (flicker && timestamp >= EVENT_START && timestamp < EVENT_END && (f / 10) % 2 == 0) {
+                for (int y = 40; y < 80; y++) Arrays.fill(frame, y * WIDTH + 60, y * WIDTH + 90, (byte) 250);
+            } else if (!flicker && timestamp >= EVENT_START && timestamp < EVENT_END) {
+                int x = (int) ((timestamp - EVENT_START) * (WIDTH - 30) / (EVENT_END - EVENT_START));
+                for (int y = 40; y < 80; y++) Arrays.fill(frame, y * WIDTH + x, y * WIDTH + x + 30, (byte) 250);
+            }
+            writer.write(frame, timestamp);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the recording of the object event, the camera shakes for a second every 15 seconds from 20 seconds on
+     */
+    private static byte[] shakenRecording() throws IOException {
+        Random random = new Random(5);
+        final int margin = 8;
+        final int sceneWidth = WIDTH + 2 * margin;
+        byte[] scene = new byte[sceneWidth * (HEIGHT + 2 * margin)];
+        for (int i = 0; i < scene.length; i++) scene[i] = (byte) (40 + random.nextInt(150));
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameRecordingWriter writer = new FrameRecordingWriter(out, WIDTH, HEIGHT, WIDTH * HEIGHT, true);
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            long timestamp = f * PREVIEW_INTERVAL;
+            int shiftX = 0, shiftY = 0;
+            if (timestamp >= 20000 && timestamp % 15000 < 1000) {
+                shiftX = 4 * (random.nextInt(5) - 2);
+                shiftY = 4 * (random.nextInt(5) - 2);
+            }
+            for (int y = 0; y < HEIGHT; y++) {
+                final int sceneRow = (y + margin - shiftY) * sceneWidth + margin - shiftX;
+                for (int x = 0; x < WIDTH; x++) frame[y * WIDTH + x] = (byte) ((scene[sceneRow + x] & 0xFF) + random.nextInt(6));
+            }
+            if (timestamp >= EVENT_START && timestamp < EVENT_END) {
+                int x = (int) ((timestamp - EVENT_START) * (WIDTH - 30) / (EVENT_END - EVENT_START));
+                for (int y = 40; y < 80; y++) Arrays.fill(frame, y * WIDTH + x, y * WIDTH + x + 30, (byte) 250);
+            }
+            writer.write(frame, timestamp);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the recording of the object event, the lights are on from 30 to 45 and from 75 to 90 seconds
+     */
+    private static byte[] lightsRecording() throws IOException {
+        Random random = new Random(6);
+        byte[] background = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < background.length; i++) background[i] = (byte) (40 + random.nextInt(150));
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameRecordingWriter writer = new FrameRecordingWriter(out, WIDTH, HEIGHT, WIDTH * HEIGHT, true);
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            long timestamp = f * PREVIEW_INTERVAL;
+            final boolean lightsOn = (timestamp >= 30000 && timestamp < 45000) || (timestamp >= 75000 && timestamp < 90000);
+            for (int i = 0; i < frame.length; i++) {
+                //the lamp brightens the scene, the sensor noise stays the same
+                int value = background[i] & 0xFF;
+                frame[i] = (byte) ((lightsOn ? value * 5 / 4 + 10 : value) + random.nextInt(6));
+            }
+            if (timestamp >= EVENT_START && timestamp < EVENT_END) {
+                int x = (int) ((timestamp - EVENT_START) * (WIDTH - 30) / (EVENT_END - EVENT_START));
+                for (int y = 40; y < 80; y++) Arrays.fill(frame, y * WIDTH + x, y * WIDTH + x + 30, (byte) 250);
+            }
+            writer.write(frame, timestamp);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the recording of the static scene, whose sensor noise more than doubles at the noise step
+     */
+    private static byte[] noiseStepRecording() throws IOException {
+        Random random = new Random(8);
+        byte[] background = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < background.length; i++) background[i] = (byte) (40 + random.nextInt(150));
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameRecordingWriter writer = new FrameRecordingWriter(out, WIDTH, HEIGHT, WIDTH * HEIGHT, true);
+        for (int f = 0; f < FRAME_COUNT; f++) {
+            long timestamp = f * PREVIEW_INTERVAL;
+            //the noise is centered, so the brightness doesn't change with it
+            final int noise = timestamp < NOISE_STEP ? 6 : 14;
+            for (int i = 0; i < frame.length; i++) frame[i] = (byte) ((background[i] & 0xFF) + random.nextInt(noise) - noise / 2);
+            writer.write(frame, timestamp);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static ReplayResult replay(byte[] recording) throws IOException {
+        return replay(recording, null);
+    }
+
+    private static ReplayResult replay(byte[] recording, BlobTracker tracker) throws IOException {
+        return replay(recording, tracker, new MotionDetector());
+    }
+
+    private static ReplayResult replay(byte[] recording, BlobTracker tracker, MotionDetector detector) throws IOException {
+        ReplayDriver driver = new ReplayDriver(detector, new DetectionScheduler(4));
+        driver.setTracker(tracker);
+        FrameRecordingReader reader = new FrameRecordingReader(new ByteArrayInputStream(recording));
+        try {
+            return driver.run(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void replay_detectsEventWithoutFalseAlarms() throws Exception {
+        ReplayResult result = replay(recording());
+        assertEquals(FRAME_COUNT, result.getFrameCount());
+        assertEquals(result.getDuration() / 250d, result.getAnalysedCount(), 2);
+        long latency = result.getDetectionLatency(EVENT_START, EVENT_END);
+        assertTrue("event missed", latency >= 0);
+        assertTrue("latency " + latency, latency <= 500);
+        assertEquals(0, result.getFalseAlarmCount(EVENTS));
+    }
+
+    @Test
+    public void tracker_confirmsMovingObjectButNotFlicker() throws Exception {
+        BlobTracker tracker = new BlobTracker(16);
+        ReplayResult result = replay(recording(), tracker);
+        long latency = result.getDetectionLatency(EVENT_START, EVENT_END);
+        assertTrue("event missed", latency >= 0);
+        //the track needs three analysed frames
+        assertTrue("latency " + latency, latency <= 1000);
+        assertEquals(0, result.getFalseAlarmCount(EVENTS));
+
+        //the detector alone alarms on the flicker, the tracker sees it stay in place
+        byte[] flicker = recording(true);
+        assertTrue(replay(flicker).getAlarms().length > 0);
+        assertEquals(0, replay(flicker, tracker).getAlarms().length);
+    }
+
+    @Test
+    public void shakeCompensator_removesFalseAlarmsOfShakenCamera() throws Exception {
+        byte[] recording = shakenRecording();
+        final long[][] events = EVENTS;
+        ReplayResult plain = replay(recording);
+        assertTrue("the shake caused no false alarms", plain.getFalseAlarmCount(events) > 0);
+
+        MotionDetector detector = new MotionDetector();
+        //a shift of 8 pixels at the full resolution is 2 pixels at the analysis level
+        detector.setShakeCompensator(new ShakeCompensator(4));
+        ReplayResult compensated = replay(recording, null, detector);
+        assertEquals(0, compensated.getFalseAlarmCount(events));
+        long latency = compensated.getDetectionLatency(EVENT_START, EVENT_END);
+        assertTrue("event missed", latency >= 0);
+        assertTrue("latency " + latency, latency <= 500);
+    }
+
+    @Test
+    public void illuminationNormalizer_removesFalseAlarmsOfLightSwitches() throws Exception {
+        byte[] recording = lightsRecording();
+        final long[][] events = EVENTS;
+        //every switch of the lights triggers the plain detector
+        ReplayResult plain = replay(recording);
+        assertEquals(4, plain.getFalseAlarmCount(events));
+
+        MotionDetector detector = new MotionDetector();
+        detector.setIlluminationNormalizer(new IlluminationNormalizer());
+        ReplayResult normalized = replay(recording, null, detector);
+        assertEquals(0, normalized.getFalseAlarmCount(events));
+        long latency = normalized.getDetectionLatency(EVENT_START, EVENT_END);
+        assertTrue("event missed", latency >= 0);
+        assertTrue("latency " + latency, latency <= 500);
+    }
+
+    /**
+     * Replays the recording on a simulated device, which takes a fixed time plus a time per pixel for every frame.
+     */
+    private static AnalysisGovernor replayGoverned(byte[] recording, final double msPerPixel, ReplayResult[] result) throws IOException {
+        ReplayDriver driver = new ReplayDriver(new MotionDetector(), new DetectionScheduler(4));
+        AnalysisGovernor governor = new AnalysisGovernor();
+        driver.setGovernor(governor);
+        driver.setProcessingTimeModel(new ReplayDriver.IProcessingTimeModel() {
+            @Override
+            public double getProcessingTime(int width, int height, double measuredTime) {
+                return 2 + width * height * msPerPixel;
+            }
+        });
+        FrameRecordingReader reader = new FrameRecordingReader(new ByteArrayInputStream(recording));
+        try {
+            result[0] = driver.run(reader);
+        } finally {
+            reader.close();
+        }
+        return governor;
+    }
+
+    @Test
+    public void governor_convergesOnSlowAndFastDevices() throws Exception {
+        byte[] recording = recording();
+        ReplayResult[] result = new ReplayResult[1];
+
+        //a slow device only keeps up at the lowest resolution and half the rate
+        AnalysisGovernor slow = replayGoverned(recording, 0.4, result);
+        assertEquals(3, slow.getAnalysisLevel());
+        assertEquals(2, slow.getAnalysisFps(), 0);
+        assertEquals(AnalysisGovernor.State.STEADY, slow.getState());
+        assertEquals(2, slow.getChangeCount());
+        assertTrue(slow.getDutyCycle() <= slow.getTargetDutyCycle() * 1.25);
+        assertTrue("event missed on the slow device", result[0].getDetectionLatency(EVENT_START, EVENT_END) >= 0);
+
+        //a fast device analyses the full resolution at the full rate
+        AnalysisGovernor fast = replayGoverned(recording, 0.001, result);
+        assertEquals(0, fast.getAnalysisLevel());
+        assertEquals(4, fast.getAnalysisFps(), 0);
+        assertEquals(AnalysisGovernor.State.STEADY, fast.getState());
+        assertEquals(2, fast.getChangeCount());
+        assertTrue("event missed on the fast device", result[0].getDetectionLatency(EVENT_START, EVENT_END) >= 0);
+        assertEquals(0, result[0].getFalseAlarmCount(EVENTS));
+
+        //a device that is too slow for every setting ends at the cheapest one
+        AnalysisGovernor tooSlow = replayGoverned(recording, 10, result);
+        assertEquals(3, tooSlow.getAnalysisLevel());
+        assertEquals(1, tooSlow.getAnalysisFps(), 0);
+        assertEquals(AnalysisGovernor.State.OVER_BUDGET, tooSlow.getState());
+    }
+
+    @Test
+    public void governor_whileRunning_keepsLevelWithoutFalseAlarms() throws Exception {
+        MotionDetector detector = new MotionDetector();
+        detector.setGrid(new MotionGrid(8, 6));
+        ReplayDriver driver = new ReplayDriver(detector, new DetectionScheduler(4));
+        AnalysisGovernor governor = new AnalysisGovernor();
+        driver.setGovernor(governor);
+        //the device keeps up with the full resolution until it slows down after 30 s, e.g. because it heats up
+        driver.setProcessingTimeModel(new ReplayDriver.IProcessingTimeModel() {
+            private int mFrames = 0;
+
+            @Override
+            public double getProcessingTime(int width, int height, double measuredTime) {
+                return 2 + width * height * (mFrames++ < 120 ? 0.001 : 0.4);
+            }
+        });
+        ReplayResult result;
+        FrameRecordingReader reader = new FrameRecordingReader(new ByteArrayInputStream(recording()));
+        try {
+            result = driver.run(reader);
+        } finally {
+            reader.close();
+        }
+        //the detector is armed when the device slows down, only the rate follows it
+        assertEquals(0, governor.getAnalysisLevel());
+        assertEquals(1, governor.getAnalysisFps(), 0);
+        assertEquals(MotionDetector.State.RUNNING, detector.getState());
+        //the frame after the object left comes up to a second later at the lowest rate
+        assertEquals(0, result.getFalseAlarmCount(new long[][] {{EVENT_START, EVENT_END + 1000}}));
+        assertTrue("event missed", result.getDetectionLatency(EVENT_START, EVENT_END) >= 0);
+    }
+
+    /**
+     * Replays the recording at the analysis rate and records the statistics of every analysed frame.
+     * @return the timestamps, the moving averages and the alarm thresholds of the analysed frames
+     */
+    private static double[][] replayStatistics(byte[] recording, double fps, long windowTime) throws IOException {
+        MotionDetector detector = new MotionDetector();
+        //compares the averaging itself, the noise step would freeze the statistics as a suspected event
+        detector.setFreezeTimes(0, 0);
+        if (windowTime > 0) detector.setSlidingWindow(windowTime, (int) (windowTime * fps / 1000) + 1);
+        Telemetry telemetry = new Telemetry(Telemetry.Level.FRAMES, FRAME_COUNT);
+        detector.setTelemetry(telemetry);
+        ReplayDriver driver = new ReplayDriver(detector, new DetectionScheduler(fps));
+        FrameRecordingReader reader = new FrameRecordingReader(new ByteArrayInputStream(recording));
+        try {
+            driver.run(reader);
+        } finally {
+            reader.close();
+        }
+        final int count = (int) (FRAME_COUNT * PREVIEW_INTERVAL * fps / 1000) + 2;
+        final double[][] statistics = new double[3][count];
+        final int[] index = {0};
+        telemetry.drain(new Telemetry.ISampleSink() {
+            @Override
+            public void onSample(long timestamp, double diff, double movingAbsDiffAvg, double movingDiffAvg, double alarmThreshold,
+                                 double maxDiff, boolean suspicious, boolean alarm) {
+                statistics[0][index[0]] = timestamp;
+                statistics[1][index[0]] = movingAbsDiffAvg;
+                statistics[2][index[0]] = alarmThreshold;
+                index[0]++;
+            }
+        });
+        for (int series = 0; series < statistics.length; series++) statistics[series] = Arrays.copyOf(statistics[series], index[0]);
+        return statistics;
+    }
+
+    /**
+     * @return the value of the series at the last analysed frame before the time
+     */
+    private static double valueAt(double[][] statistics, int series, long time) {
+        double value = Double.NaN;
+        for (int i = 0; i < statistics[0].length && statistics[0][i] <= time; i++) {
+            value = statistics[series][i];
+        }
+        return value;
+    }
+
+    /**
+     * @return the time after the noise step until the moving average covered half of the way to its new level
+     */
+    private static long halfwayTime(double[][] statistics) {
+        final double before = valueAt(statistics, 1, NOISE_STEP - 1);
+        final double after = valueAt(statistics, 1, FRAME_COUNT * PREVIEW_INTERVAL);
+        for (int i = 0; i < statistics[0].length; i++) {
+            if (statistics[0][i] >= NOISE_STEP && statistics[1][i] >= (before + after) / 2) return (long) statistics[0][i] - NOISE_STEP;
+        }
+        return -1;
+    }
+
+    @Test
+    public void statistics_agreeAcrossFrameRates() throws Exception {
+        byte[] recording = noiseStepRecording();
+        double[][] reference = replayStatistics(recording, 4, 0);
+        //an exponential moving average covers half of a step after the time constant times ln 2
+        assertEquals(6250 * Math.log(2), halfwayTime(reference), 500);
+        for (double fps : new double[] {2, 8}) {
+            double[][] statistics = replayStatistics(recording, fps, 0);
+            for (long time : new long[] {NOISE_STEP - 1, NOISE_STEP + 5000, FRAME_COUNT * PREVIEW_INTERVAL}) {
+                assertEquals(fps + " fps at " + time, valueAt(reference, 2, time), valueAt(statistics, 2, time), valueAt(reference, 2, time) * 0.1);
+            }
+            assertEquals(fps + " fps", halfwayTime(reference), halfwayTime(statistics), 500);
+        }
+    }
+
+    @Test
+    public void slidingWindow_agreesAcrossFrameRates() throws Exception {
+        byte[] recording = noiseStepRecording();
+        double[][] reference = replayStatistics(recording, 4, 6000);
+        //the mean over a window covers half of a step after half of the window
+        assertEquals(3000, halfwayTime(reference), 500);
+        for (double fps : new double[] {2, 8}) {
+            double[][] statistics = replayStatistics(recording, fps, 6000);
+            for (long time : new long[] {NOISE_STEP - 1, NOISE_STEP + 3000, FRAME_COUNT * PREVIEW_INTERVAL}) {
+                assertEquals(fps + " fps at " + time, valueAt(reference, 2, time), valueAt(statistics, 2, time), valueAt(reference, 2, time) * 0.1);
+            }
+            assertEquals(fps + " fps", halfwayTime(reference), halfwayTime(statistics), 500);
+        }
+    }
+
+    @Test
+    public void slidingWindow_detectsEventWithoutFalseAlarms() throws Exception {
+        MotionDetector detector = new MotionDetector();
+        detector.setSlidingWindow(6250, 64);
+        ReplayResult result = replay(recording(), null, detector);
+        long latency = result.getDetectionLatency(EVENT_START, EVENT_END);
+        assertTrue("event missed", latency >= 0);
+        assertTrue("latency " + latency, latency <= 500);
+        assertEquals(0, result.getFalseAlarmCount(EVENTS));
+    }
+
+    @Test
+    public void replay_isDeterministic() throws Exception {
+        byte[] recording = recording();
+        assertArrayEquals(replay(recording).getAlarms(), replay(recording).getAlarms());
+    }
+}
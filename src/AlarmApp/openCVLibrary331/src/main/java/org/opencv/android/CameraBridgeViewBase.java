@@ -1,6 +1,8 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.opencv.BuildConfig;
 import org.opencv.R;
@@ -40,6 +42,25 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
 
+    /**
+     * A frame returned by the listener waiting to be drawn, the listener's mat is copied, so it can be reused right away.
+     */
+    private static class RenderSlot {
+        final Mat mat = new Mat();
+        long queuedAt;
+    }
+
+    private boolean mRenderThreadEnabled = true;
+    private int mRenderQueueDepth = 1;
+    private ArrayBlockingQueue<RenderSlot> mFreeRenderSlots;
+    private ArrayBlockingQueue<RenderSlot> mPendingRenderSlots;
+    private Thread mRenderThread;
+    private volatile boolean mStopRenderThread;
+    private volatile long mSkippedRenderFrameCount = 0;
+    private final LatencyHistogram mProcessingTime = new LatencyHistogram();
+    private final LatencyHistogram mRenderWaitTime = new LatencyHistogram();
+    private final LatencyHistogram mRenderTime = new LatencyHistogram();
+
     protected int mFrameWidth;
     protected int mFrameHeight;
     protected int mMaxHeight;
@@ -107,7 +128,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
         /**
          * This method is invoked when delivery of the frame needs to be done.
-         * The returned values - is a modified frame which needs to be displayed on the screen.
+         * The returned values - is a modified frame which needs to be displayed on the screen, or null to draw nothing.
          * TODO: pass the parameters specifying the format of the frame (BPP, YUV or RGB and etc)
          */
         public Mat onCameraFrame(Mat inputFrame);
@@ -130,7 +151,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
         /**
          * This method is invoked when delivery of the frame needs to be done.
-         * The returned values - is a modified frame which needs to be displayed on the screen.
+         * The returned values - is a modified frame which needs to be displayed on the screen, or null to draw nothing.
          * TODO: pass the parameters specifying the format of the frame (BPP, YUV or RGB and etc)
          */
         public Mat onCameraFrame(CvCameraViewFrame inputFrame);
@@ -185,7 +206,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public Mat rgba();
 
         /**
-         * This method returns single channel gray scale Mat with frame
+         * This method returns single channel gray scale Mat with frame.
+         * The returned Mat is owned by the frame and reused for every frame, so it must not be released.
          */
         public Mat gray();
     };
@@ -356,6 +378,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        /* The renderer has to run before the camera delivers the first frame */
+        startRenderThread();
         /* Connect camera */
         if (!connectCamera(getWidth(), getHeight())) {
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
@@ -374,6 +398,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
+        stopRenderThread();
         if (mCacheBitmap != null) {
             mCacheBitmap.recycle();
         }
@@ -383,27 +408,52 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * This method shall be called by the subclasses when they have valid
      * object and want it to be delivered to external client (via callback) and
      * then displayed on the screen.
+     * With the render thread enabled the returned frame is only queued for drawing, so the next
+     * frame can be delivered while the previous one is still drawn.
      * @param frame - the current frame to be delivered
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
 
+        long startedAt = System.nanoTime();
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
         } else {
             modified = frame.rgba();
         }
+        mProcessingTime.recordNanos(System.nanoTime() - startedAt);
+
+        /* A listener returning null wants nothing drawn, the screen keeps the last frame */
+        if (modified == null)
+            return;
+        if (mRenderThread == null) {
+            drawFrame(modified);
+            return;
+        }
 
+        /* If the renderer is behind, the oldest waiting frame is stale and gets replaced */
+        RenderSlot slot = mFreeRenderSlots.poll();
+        if (slot == null) {
+            slot = mPendingRenderSlots.poll();
+            mSkippedRenderFrameCount++;
+        }
+        if (slot == null)
+            return; // all slots are being drawn
+        modified.copyTo(slot.mat);
+        slot.queuedAt = System.nanoTime();
+        mPendingRenderSlots.offer(slot);
+    }
+
+    private void drawFrame(Mat modified) {
+        long startedAt = System.nanoTime();
         boolean bmpValid = true;
-        if (modified != null) {
-            try {
-                Utils.matToBitmap(modified, mCacheBitmap);
-            } catch(Exception e) {
-                Log.e(TAG, "Mat type: " + modified);
-                Log.e(TAG, "Bitmap type: " + mCacheBitmap.getWidth() + "*" + mCacheBitmap.getHeight());
-                Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
-                bmpValid = false;
-            }
+        try {
+            Utils.matToBitmap(modified, mCacheBitmap);
+        } catch(Exception e) {
+            Log.e(TAG, "Mat type: " + modified);
+            Log.e(TAG, "Bitmap type: " + mCacheBitmap.getWidth() + "*" + mCacheBitmap.getHeight());
+            Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
+            bmpValid = false;
         }
 
         if (bmpValid && mCacheBitmap != null) {
@@ -434,6 +484,110 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 getHolder().unlockCanvasAndPost(canvas);
             }
         }
+        mRenderTime.recordNanos(System.nanoTime() - startedAt);
+    }
+
+    private void startRenderThread() {
+        mProcessingTime.reset();
+        mRenderWaitTime.reset();
+        mRenderTime.reset();
+        mSkippedRenderFrameCount = 0;
+        if (!mRenderThreadEnabled)
+            return;
+
+        /* One slot more than the queue depth, so the renderer can draw while the queue is full */
+        mFreeRenderSlots = new ArrayBlockingQueue<RenderSlot>(mRenderQueueDepth + 1);
+        mPendingRenderSlots = new ArrayBlockingQueue<RenderSlot>(mRenderQueueDepth + 1);
+        for (int i = 0; i <= mRenderQueueDepth; i++)
+            mFreeRenderSlots.add(new RenderSlot());
+        mStopRenderThread = false;
+        mRenderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mStopRenderThread) {
+                    RenderSlot slot;
+                    try {
+                        slot = mPendingRenderSlots.poll(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    if (slot == null)
+                        continue;
+                    mRenderWaitTime.recordNanos(System.nanoTime() - slot.queuedAt);
+                    drawFrame(slot.mat);
+                    mFreeRenderSlots.offer(slot);
+                }
+                Log.d(TAG, "Finish render thread");
+            }
+        }, "CameraRenderer");
+        mRenderThread.start();
+    }
+
+    private void stopRenderThread() {
+        if (mRenderThread == null)
+            return;
+        mStopRenderThread = true;
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        mRenderThread = null;
+        for (RenderSlot slot : mFreeRenderSlots)
+            slot.mat.release();
+        for (RenderSlot slot : mPendingRenderSlots)
+            slot.mat.release();
+        mFreeRenderSlots = null;
+        mPendingRenderSlots = null;
+    }
+
+    /**
+     * Draws the frames on a separate thread, takes effect when the camera is started the next time.
+     * Otherwise the thread delivering the frames also draws them and waits for the display.
+     */
+    public void setRenderThreadEnabled(boolean enabled) {
+        mRenderThreadEnabled = enabled;
+    }
+
+    /**
+     * Sets how many frames may wait for the render thread, takes effect when the camera is started the next time.
+     * The default of 1 always draws the latest frame, frames that got stale while waiting are skipped.
+     */
+    public void setRenderQueueDepth(int depth) {
+        if (depth < 1) throw new IllegalArgumentException("the render queue depth has to be at least 1: " + depth);
+        mRenderQueueDepth = depth;
+    }
+
+    public int getRenderQueueDepth() {
+        return mRenderQueueDepth;
+    }
+
+    /**
+     * @return the number of frames that were not drawn because the render thread was behind
+     */
+    public long getSkippedRenderFrameCount() {
+        return mSkippedRenderFrameCount;
+    }
+
+    /**
+     * @return the time the listener took to process a frame
+     */
+    public LatencyHistogram getProcessingTime() {
+        return mProcessingTime;
+    }
+
+    /**
+     * @return the time a processed frame waited for the render thread
+     */
+    public LatencyHistogram getRenderWaitTime() {
+        return mRenderWaitTime;
+    }
+
+    /**
+     * @return the time converting a frame into the bitmap and drawing it took
+     */
+    public LatencyHistogram getRenderTime() {
+        return mRenderTime;
     }
 
     /**
@@ -1,6 +1,8 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import android.content.Context;
 import android.graphics.ImageFormat;
@@ -32,14 +34,43 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
     private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "JavaCameraView";
 
-    private byte mBuffer[];
-    private Mat[] mFrameChain;
-    private int mChainIdx = 0;
-    private Thread mThread;
-    private boolean mStopThread;
+    /**
+     * What happens to a preview frame that arrives while another frame is still waiting for the worker.
+     */
+    public enum FrameDropPolicy {
+        /** the waiting frame is dropped, the worker always gets the most recent frame */
+        DROP_OLDEST,
+        /** the arriving frame is dropped, the worker gets the frame that waited longest */
+        DROP_NEWEST
+    }
+
+    /**
+     * A callback buffer of the camera with the time its frame arrived.
+     */
+    private static class PreviewBuffer {
+        final byte[] data;
+        long timestamp;
+
+        PreviewBuffer(int size) {
+            data = new byte[size];
+        }
+    }
+
+    private int mCallbackBufferCount = 3;
+    private volatile FrameDropPolicy mFrameDropPolicy = FrameDropPolicy.DROP_OLDEST;
+    private volatile PreviewBuffer[] mPreviewBuffers = new PreviewBuffer[0];
+    /* The frame waiting for the worker. The camera thread is the only producer and the worker the only consumer,
+     * they exchange the slot atomically and never share a lock, the worker parks while the slot is empty */
+    private final AtomicReference<PreviewBuffer> mPendingFrame = new AtomicReference<PreviewBuffer>();
+    private final LatencyHistogram mFrameLatency = new LatencyHistogram();
+    private volatile long mReceivedFrameCount = 0;
+    private volatile long mDroppedFrameCount = 0;
+    private Mat mFrame;
+    private volatile Thread mThread;
+    private volatile boolean mStopThread;
 
     protected Camera mCamera;
-    protected JavaCameraFrame[] mCameraFrame;
+    protected JavaCameraFrame mCameraFrame;
     private SurfaceTexture mSurfaceTexture;
     private int mPreviewFormat = ImageFormat.NV21;
 
@@ -190,20 +221,24 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
                     int size = mFrameWidth * mFrameHeight;
                     size  = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                    mBuffer = new byte[size];
 
-                    mCamera.addCallbackBuffer(mBuffer);
+                    /* The camera fills the callback buffers in turn, so it can go on while the worker processes a frame */
+                    mPendingFrame.set(null);
+                    mReceivedFrameCount = 0;
+                    mDroppedFrameCount = 0;
+                    mFrameLatency.reset();
+                    mPreviewBuffers = new PreviewBuffer[mCallbackBufferCount];
+                    for (int i = 0; i < mCallbackBufferCount; i++) {
+                        mPreviewBuffers[i] = new PreviewBuffer(size);
+                        mCamera.addCallbackBuffer(mPreviewBuffers[i].data);
+                    }
                     mCamera.setPreviewCallbackWithBuffer(this);
 
-                    mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                    mFrame = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
 
                     AllocateCache();
 
-                    mCameraFrame = new JavaCameraFrame[2];
-                    mCameraFrame[0] = new JavaCameraFrame(mFrameChain[0], mFrameWidth, mFrameHeight);
-                    mCameraFrame[1] = new JavaCameraFrame(mFrameChain[1], mFrameWidth, mFrameHeight);
+                    mCameraFrame = new JavaCameraFrame(mFrame, mFrameWidth, mFrameHeight);
 
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                         mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
@@ -235,18 +270,55 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                 mCamera.release();
             }
             mCamera = null;
-            if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
-            }
-            if (mCameraFrame != null) {
-                mCameraFrame[0].release();
-                mCameraFrame[1].release();
-            }
+            mPendingFrame.set(null);
+            if (mFrame != null)
+                mFrame.release();
+            if (mCameraFrame != null)
+                mCameraFrame.release();
         }
     }
 
-    private boolean mCameraFrameReady = false;
+    /**
+     * Sets the number of preview buffers the camera fills in turn, takes effect when the camera is connected the next time.
+     * At most one frame waits for the worker, the other buffers let the camera go on while the worker copies a frame.
+     */
+    public void setCallbackBufferCount(int count) {
+        if (count < 2) throw new IllegalArgumentException("at least 2 callback buffers are needed: " + count);
+        mCallbackBufferCount = count;
+    }
+
+    public int getCallbackBufferCount() {
+        return mCallbackBufferCount;
+    }
+
+    public void setFrameDropPolicy(FrameDropPolicy policy) {
+        mFrameDropPolicy = policy;
+    }
+
+    public FrameDropPolicy getFrameDropPolicy() {
+        return mFrameDropPolicy;
+    }
+
+    /**
+     * @return the number of preview frames the camera delivered since it was connected
+     */
+    public long getReceivedFrameCount() {
+        return mReceivedFrameCount;
+    }
+
+    /**
+     * @return the number of preview frames that were dropped because the worker fell behind, see {@link FrameDropPolicy}
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * @return the latencies from the arrival of a preview frame to the start of its delivery to the listener
+     */
+    public LatencyHistogram getFrameLatency() {
+        return mFrameLatency;
+    }
 
     @Override
     protected boolean connectCamera(int width, int height) {
@@ -259,8 +331,6 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         if (!initializeCamera(width, height))
             return false;
 
-        mCameraFrameReady = false;
-
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
         mStopThread = false;
@@ -279,9 +349,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         try {
             mStopThread = true;
             Log.d(TAG, "Notify thread");
-            synchronized (this) {
-                this.notify();
-            }
+            LockSupport.unpark(mThread);
             Log.d(TAG, "Waiting for thread");
             if (mThread != null)
                 mThread.join();
@@ -293,27 +361,45 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         /* Now release camera */
         releaseCamera();
-
-        mCameraFrameReady = false;
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
-        synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
+        PreviewBuffer buffer = findPreviewBuffer(frame);
+        if (buffer == null)
+            return; // a buffer of a previous connection
+        buffer.timestamp = System.nanoTime();
+        mReceivedFrameCount++;
+
+        /* Only the buffer is handed over, the worker copies it and gives it back to the camera afterwards */
+        PreviewBuffer dropped;
+        if (mFrameDropPolicy == FrameDropPolicy.DROP_OLDEST)
+            dropped = mPendingFrame.getAndSet(buffer);
+        else
+            dropped = mPendingFrame.compareAndSet(null, buffer) ? null : buffer;
+        if (dropped != null) {
+            mDroppedFrameCount++;
+            if (arg1 != null)
+                arg1.addCallbackBuffer(dropped.data);
         }
-        if (mCamera != null)
-            mCamera.addCallbackBuffer(mBuffer);
+        LockSupport.unpark(mThread);
+    }
+
+    private PreviewBuffer findPreviewBuffer(byte[] frame) {
+        PreviewBuffer[] buffers = mPreviewBuffers;
+        for (PreviewBuffer buffer : buffers) {
+            if (buffer.data == frame)
+                return buffer;
+        }
+        return null;
     }
 
     private class JavaCameraFrame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            return mYuvFrameData.submat(0, mHeight, 0, mWidth);
+            return mGray;
         }
 
         @Override
@@ -333,14 +419,17 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             mWidth = width;
             mHeight = height;
             mYuvFrameData = Yuv420sp;
+            mGray = mYuvFrameData.submat(0, mHeight, 0, mWidth);
             mRgba = new Mat();
         }
 
         public void release() {
+            mGray.release();
             mRgba.release();
         }
 
         private Mat mYuvFrameData;
+        private Mat mGray;
         private Mat mRgba;
         private int mWidth;
         private int mHeight;
@@ -350,29 +439,21 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         @Override
         public void run() {
-            do {
-                boolean hasFrame = false;
-                synchronized (JavaCameraView.this) {
-                    try {
-                        while (!mCameraFrameReady && !mStopThread) {
-                            JavaCameraView.this.wait();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    if (mCameraFrameReady)
-                    {
-                        mChainIdx = 1 - mChainIdx;
-                        mCameraFrameReady = false;
-                        hasFrame = true;
-                    }
+            while (!mStopThread) {
+                PreviewBuffer buffer = mPendingFrame.getAndSet(null);
+                if (buffer == null) {
+                    LockSupport.park(this);
+                    continue;
                 }
 
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
-                }
-            } while (!mStopThread);
+                /* The copy into native memory can't be avoided, but it happens outside of any lock
+                 * and the buffer goes back to the camera before the frame gets processed */
+                mFrame.put(0, 0, buffer.data);
+                long receivedAt = buffer.timestamp;
+                mCamera.addCallbackBuffer(buffer.data);
+                mFrameLatency.recordNanos(System.nanoTime() - receivedAt);
+                deliverAndDrawFrame(mCameraFrame);
+            }
             Log.d(TAG, "Finish processing thread");
         }
     }
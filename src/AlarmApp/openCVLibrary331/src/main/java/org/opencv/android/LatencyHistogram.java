@@ -0,0 +1,84 @@
+package org.opencv.android;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in microseconds with a bounded relative error of 1/8.
+ * Values below 8 us get a bucket each, above that every power of two is split into 8 buckets.
+ * Recording does not allocate or lock, it must only be done from a single thread, reading works from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    //the largest recordable value is just below 2^MAX_EXPONENT us, about 33 s
+    private static final int MAX_EXPONENT = 25;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long mCount = 0;
+    private volatile long mMax = 0;
+
+    /**
+     * Records a latency, larger values than the histogram covers are recorded in the last bucket.
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int index = Math.min(bucketIndex(micros), BUCKET_COUNT - 1);
+        //only the recording thread writes, so the increments need no atomic read modify write
+        mCounts.lazySet(index, mCounts.get(index) + 1);
+        if (micros > mMax) mMax = micros;
+        mCount = mCount + 1;
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @param percentile the percentile in [0, 100]
+     * @return the upper bound of the bucket holding the percentile in microseconds, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = mCount;
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) return Math.min(mMax, bucketLowerBound(i + 1) - 1);
+        }
+        return mMax;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMaxMicros() {
+        return mMax;
+    }
+
+    /**
+     * Clears the histogram, samples recorded at the same time may get lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) mCounts.set(i, 0);
+        mCount = 0;
+        mMax = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " p50=" + getPercentileMicros(50) + "us p90=" + getPercentileMicros(90)
+                + "us p99=" + getPercentileMicros(99) + "us max=" + getMaxMicros() + "us";
+    }
+}